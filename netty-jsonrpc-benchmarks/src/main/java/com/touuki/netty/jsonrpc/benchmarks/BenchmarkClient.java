@@ -0,0 +1,23 @@
+package com.touuki.netty.jsonrpc.benchmarks;
+
+import java.util.Map;
+
+import com.touuki.netty.jsonrpc.JsonRpcMethod;
+import com.touuki.netty.jsonrpc.JsonRpcRequestMode;
+
+import io.netty.channel.Channel;
+
+/**
+ * The client interface used by the benchmarks.
+ */
+public interface BenchmarkClient {
+
+	int echo(Channel channel, int value);
+
+	Map<String, Object> echoObject(Channel channel, Map<String, Object> value);
+
+	boolean overload(Channel channel, int param1, Boolean param2, Object... params);
+
+	@JsonRpcMethod(requestMode = JsonRpcRequestMode.NOTIFICATION)
+	void notify(Channel channel, String value);
+}
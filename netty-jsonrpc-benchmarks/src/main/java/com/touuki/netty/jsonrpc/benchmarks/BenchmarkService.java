@@ -0,0 +1,28 @@
+package com.touuki.netty.jsonrpc.benchmarks;
+
+import java.util.Map;
+
+import io.netty.channel.Channel;
+
+/**
+ * The server interface used by the benchmarks, with overloaded and varargs
+ * methods to exercise the dispatch.
+ */
+public interface BenchmarkService {
+
+	int echo(int value);
+
+	Map<String, Object> echoObject(Map<String, Object> value);
+
+	boolean overload(int param1);
+
+	boolean overload(Channel channel, int param1, Boolean param2);
+
+	boolean overload(int param1, Boolean param2, Object... params);
+
+	int sum(int... values);
+
+	String concat(String prefix, String... values);
+
+	void notify(String value);
+}
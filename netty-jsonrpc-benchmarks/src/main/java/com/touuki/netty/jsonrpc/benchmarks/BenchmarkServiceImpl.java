@@ -0,0 +1,55 @@
+package com.touuki.netty.jsonrpc.benchmarks;
+
+import java.util.Map;
+
+import io.netty.channel.Channel;
+
+public class BenchmarkServiceImpl implements BenchmarkService {
+
+	@Override
+	public int echo(int value) {
+		return value;
+	}
+
+	@Override
+	public Map<String, Object> echoObject(Map<String, Object> value) {
+		return value;
+	}
+
+	@Override
+	public boolean overload(int param1) {
+		return true;
+	}
+
+	@Override
+	public boolean overload(Channel channel, int param1, Boolean param2) {
+		return param2;
+	}
+
+	@Override
+	public boolean overload(int param1, Boolean param2, Object... params) {
+		return params.length > 0;
+	}
+
+	@Override
+	public int sum(int... values) {
+		int sum = 0;
+		for (int value : values) {
+			sum += value;
+		}
+		return sum;
+	}
+
+	@Override
+	public String concat(String prefix, String... values) {
+		StringBuilder sb = new StringBuilder(prefix);
+		for (String value : values) {
+			sb.append(value);
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public void notify(String value) {
+	}
+}
@@ -0,0 +1,80 @@
+package com.touuki.netty.jsonrpc.benchmarks;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.touuki.netty.jsonrpc.JsonRpcClientHandler;
+import com.touuki.netty.jsonrpc.ProxyUtils;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * Proxy calls through the client invocation handler, served by a loopback
+ * server channel so the whole round trip runs on the benchmark thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ClientProxyBenchmark {
+
+	private ScheduledExecutorService executor;
+	private EmbeddedChannel server;
+	private EmbeddedChannel client;
+	private BenchmarkClient proxy;
+	private Map<String, Object> object;
+
+	@Setup
+	public void setup() {
+		executor = Loopback.timeoutExecutor();
+		JsonRpcClientHandler clientHandler = Loopback.clientHandler(executor);
+		server = Loopback.tcpServer(Loopback.serverHandler());
+		client = Loopback.tcpClient(clientHandler, server);
+		proxy = ProxyUtils.createClientProxy(BenchmarkClient.class.getClassLoader(), BenchmarkClient.class,
+				clientHandler);
+		object = Collections.singletonMap("name", "netty-jsonrpc");
+	}
+
+	@TearDown
+	public void tearDown() {
+		client.finishAndReleaseAll();
+		server.finishAndReleaseAll();
+		executor.shutdownNow();
+	}
+
+	@Benchmark
+	public int request() {
+		return proxy.echo(client, 1);
+	}
+
+	@Benchmark
+	public Map<String, Object> requestObject() {
+		return proxy.echoObject(client, object);
+	}
+
+	@Benchmark
+	public boolean requestVarArgs() {
+		return proxy.overload(client, 1, true, object, object);
+	}
+
+	@Benchmark
+	public void notification() {
+		proxy.notify(client, "netty-jsonrpc");
+	}
+}
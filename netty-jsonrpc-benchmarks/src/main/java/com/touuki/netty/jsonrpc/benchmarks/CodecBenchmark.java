@@ -0,0 +1,117 @@
+package com.touuki.netty.jsonrpc.benchmarks;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.touuki.netty.jsonrpc.JsonRpcClientHandler;
+import com.touuki.netty.jsonrpc.JsonRpcProtocolHandler;
+import com.touuki.netty.jsonrpc.JsonRpcProtocolPassWebSocketHandler;
+import com.touuki.netty.jsonrpc.JsonRpcServerHandler;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Decode and encode through {@link JsonRpcProtocolHandler} and
+ * {@link JsonRpcProtocolPassWebSocketHandler}. The notifications measure the
+ * decoding and a trivial dispatch, the requests add the encoding of the
+ * response.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+	private static final byte[] REQUEST = Loopback.bytes("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"echoObject\","
+			+ "\"params\":[{\"name\":\"netty-jsonrpc\",\"values\":[1,2,3,4,5],\"nested\":{\"enabled\":true}}]}");
+	private static final byte[] NOTIFICATION = Loopback
+			.bytes("{\"jsonrpc\":\"2.0\",\"method\":\"notify\",\"params\":[\"netty-jsonrpc\"]}");
+
+	private ScheduledExecutorService executor;
+	private JsonRpcClientHandler clientHandler;
+	private EmbeddedChannel tcpServer;
+	private EmbeddedChannel webSocketServer;
+	private EmbeddedChannel tcpClient;
+	private EmbeddedChannel webSocketClient;
+	private Object[] params;
+
+	@Setup
+	public void setup() {
+		executor = Loopback.timeoutExecutor();
+		JsonRpcServerHandler serverHandler = Loopback.serverHandler();
+		clientHandler = Loopback.clientHandler(executor);
+		tcpServer = Loopback.tcpServer(serverHandler);
+		webSocketServer = new EmbeddedChannel(new JsonRpcProtocolPassWebSocketHandler(serverHandler));
+		tcpClient = new EmbeddedChannel(new JsonRpcProtocolHandler(clientHandler));
+		webSocketClient = new EmbeddedChannel(new JsonRpcProtocolPassWebSocketHandler(clientHandler));
+
+		Map<String, Object> param = new LinkedHashMap<>();
+		param.put("name", "netty-jsonrpc");
+		param.put("values", Arrays.asList(1, 2, 3, 4, 5));
+		param.put("nested", Collections.singletonMap("enabled", true));
+		params = new Object[] { param };
+	}
+
+	@TearDown
+	public void tearDown() {
+		tcpServer.finishAndReleaseAll();
+		webSocketServer.finishAndReleaseAll();
+		tcpClient.finishAndReleaseAll();
+		webSocketClient.finishAndReleaseAll();
+		executor.shutdownNow();
+	}
+
+	@Benchmark
+	public boolean tcpDecodeNotification() {
+		return tcpServer.writeInbound(Unpooled.wrappedBuffer(NOTIFICATION));
+	}
+
+	@Benchmark
+	public boolean tcpRequest() {
+		tcpServer.writeInbound(Unpooled.wrappedBuffer(REQUEST));
+		return ReferenceCountUtil.release(tcpServer.readOutbound());
+	}
+
+	@Benchmark
+	public boolean tcpEncodeNotification() {
+		clientHandler.sendNotification(tcpClient, "echoObject", params);
+		return ReferenceCountUtil.release(tcpClient.readOutbound());
+	}
+
+	@Benchmark
+	public boolean webSocketDecodeNotification() {
+		return webSocketServer.writeInbound(new TextWebSocketFrame(Unpooled.wrappedBuffer(NOTIFICATION)));
+	}
+
+	@Benchmark
+	public boolean webSocketRequest() {
+		webSocketServer.writeInbound(new TextWebSocketFrame(Unpooled.wrappedBuffer(REQUEST)));
+		return ReferenceCountUtil.release(webSocketServer.readOutbound());
+	}
+
+	@Benchmark
+	public boolean webSocketEncodeNotification() {
+		clientHandler.sendNotification(webSocketClient, "echoObject", params);
+		return ReferenceCountUtil.release(webSocketClient.readOutbound());
+	}
+}
@@ -0,0 +1,90 @@
+package com.touuki.netty.jsonrpc.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.touuki.netty.jsonrpc.JsonRpcServerHandler;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * {@link JsonRpcServerHandler} dispatch of a request to overloaded and varargs
+ * methods, including the decoding of the request and the encoding of the
+ * response.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+
+	@Param({ "echo", "overload", "overloadChannel", "overloadVarArgs", "sumVarArgs", "concatVarArgs" })
+	private String call;
+
+	private EmbeddedChannel server;
+	private byte[] request;
+
+	@Setup
+	public void setup() {
+		server = Loopback.tcpServer(Loopback.serverHandler());
+		String method;
+		String params;
+		switch (call) {
+		case "echo":
+			method = "echo";
+			params = "[1]";
+			break;
+		case "overload":
+			method = "overload";
+			params = "[1]";
+			break;
+		case "overloadChannel":
+			method = "overload";
+			params = "[1,true]";
+			break;
+		case "overloadVarArgs":
+			method = "overload";
+			params = "[1,true,{\"a\":2},{\"b\":3}]";
+			break;
+		case "sumVarArgs":
+			method = "sum";
+			params = "[1,2,3,4,5,6,7,8]";
+			break;
+		case "concatVarArgs":
+			method = "concat";
+			params = "[\"a\",\"b\",\"c\",\"d\"]";
+			break;
+		default:
+			throw new IllegalArgumentException(call);
+		}
+		request = Loopback
+				.bytes("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"" + method + "\",\"params\":" + params + "}");
+	}
+
+	@TearDown
+	public void tearDown() {
+		server.finishAndReleaseAll();
+	}
+
+	@Benchmark
+	public boolean dispatch() {
+		server.writeInbound(Unpooled.wrappedBuffer(request));
+		return ReferenceCountUtil.release(server.readOutbound());
+	}
+}
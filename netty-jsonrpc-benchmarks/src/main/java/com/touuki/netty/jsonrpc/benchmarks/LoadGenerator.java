@@ -0,0 +1,330 @@
+package com.touuki.netty.jsonrpc.benchmarks;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.touuki.netty.jsonrpc.JsonRpcClient;
+import com.touuki.netty.jsonrpc.JsonRpcClientHandler;
+import com.touuki.netty.jsonrpc.JsonRpcServer;
+import com.touuki.netty.jsonrpc.JsonRpcServerHandler;
+import com.touuki.netty.jsonrpc.JsonRpcTransport;
+import com.touuki.netty.jsonrpc.LatencyHistogram;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.util.ResourceLeakDetector;
+
+/**
+ * End-to-end load over loopback: starts a {@link JsonRpcServerHandler} and
+ * many {@link JsonRpcClientHandler} connections over TCP, WebSocket or a unix
+ * domain socket, drives a mix of requests and notifications with several
+ * payload sizes, and reports the throughput and the latency percentiles. The
+ * unix domain socket needs the epoll transport, and its numbers compare with
+ * the TCP ones for co-located peers.
+ * <p>
+ * In the closed-loop mode each connection keeps {@code --concurrency} calls
+ * outstanding. In the open-loop mode calls are issued at {@code --rate} per
+ * second whatever the responses, and the latency is measured from the intended
+ * start time, so a stalled server shows up in the percentiles.
+ * <p>
+ * Options, with their defaults: {@code --transport=tcp|websocket|uds
+ * --mode=closed|open --connections=16 --concurrency=4 --rate=10000
+ * --duration=10 --warmup=3 --notifications=0.1 --payloads=16,256,4096
+ * --threads=<cores> --paranoid=false}. With {@code --paranoid=true} Netty's
+ * {@link ResourceLeakDetector} tracks every buffer, to catch leaks while soak
+ * testing.
+ */
+public class LoadGenerator {
+	private static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+	private static final String WEBSOCKET_PATH = "/jsonrpc";
+
+	private final Options options;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder notifications = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final List<String> payloads = new ArrayList<>();
+	private volatile boolean running = true;
+
+	private JsonRpcServer server;
+	private JsonRpcClient client;
+	private ExecutorService senders;
+	private ScheduledExecutorService timeoutExecutor;
+	private JsonRpcClientHandler clientHandler;
+
+	public LoadGenerator(Options options) {
+		this.options = options;
+		for (int size : options.payloads) {
+			char[] chars = new char[size];
+			Arrays.fill(chars, 'x');
+			payloads.add(new String(chars));
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options options = Options.parse(args);
+		if (options.paranoid) {
+			ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+		}
+		new LoadGenerator(options).run();
+	}
+
+	public void run() throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		JsonRpcServerHandler serverHandler = new JsonRpcServerHandler(mapper, new LoadServiceImpl(),
+				LoadService.class);
+		timeoutExecutor = Executors.newSingleThreadScheduledExecutor();
+		clientHandler = new JsonRpcClientHandler(mapper, false, timeoutExecutor);
+		String webSocketPath = options.webSocket() ? WEBSOCKET_PATH : null;
+		SocketAddress localAddress = new InetSocketAddress("127.0.0.1", 0);
+		JsonRpcTransport transport = null;
+		if (options.domainSocket()) {
+			File socketFile = new File(Files.createTempDirectory("jsonrpc-load").toFile(), "jsonrpc.sock");
+			socketFile.getParentFile().deleteOnExit();
+			localAddress = new DomainSocketAddress(socketFile);
+			transport = JsonRpcTransport.best(localAddress);
+		}
+		server = JsonRpcServer.builder(serverHandler).transport(transport).eventLoopThreads(options.threads)
+				.webSocketPath(webSocketPath).maxObjectLength(MAX_FRAME_LENGTH).bind(localAddress);
+		client = JsonRpcClient.builder(clientHandler).transport(transport).eventLoopThreads(options.threads)
+				.webSocketPath(webSocketPath).maxObjectLength(MAX_FRAME_LENGTH).build();
+		// sendRequest waits for the write, so it must not run on an event loop
+		senders = Executors.newFixedThreadPool(options.threads * 2);
+		try {
+			SocketAddress address = server.getLocalAddress();
+			List<Channel> channels = new ArrayList<>();
+			for (int i = 0; i < options.connections; i++) {
+				channels.add(client.connect(address).get(10, TimeUnit.SECONDS));
+			}
+			System.out.println("Connected " + channels.size() + " " + options.transport + " connections to "
+					+ address + " on " + server.getTransport() + ", leak detection " + ResourceLeakDetector.getLevel());
+
+			Thread driver = new Thread(() -> drive(channels), "jsonrpc-load-driver");
+			driver.start();
+			TimeUnit.SECONDS.sleep(options.warmup);
+			latency.reset();
+			requests.reset();
+			notifications.reset();
+			errors.reset();
+			long start = System.nanoTime();
+			TimeUnit.SECONDS.sleep(options.duration);
+			long elapsed = System.nanoTime() - start;
+			running = false;
+			report(elapsed);
+			driver.join();
+
+			for (Channel channel : channels) {
+				channel.close().sync();
+			}
+		} finally {
+			senders.shutdownNow();
+			timeoutExecutor.shutdownNow();
+			client.close();
+			server.close();
+		}
+		if (options.paranoid) {
+			// leaks are reported when a tracked buffer is collected and another one is
+			// allocated afterwards
+			System.gc();
+			TimeUnit.MILLISECONDS.sleep(500);
+			ByteBufAllocator.DEFAULT.buffer(1).release();
+		}
+	}
+
+	private void drive(List<Channel> channels) {
+		if (options.openLoop()) {
+			long interval = TimeUnit.SECONDS.toNanos(1) / options.rate;
+			long next = System.nanoTime();
+			int i = 0;
+			while (running) {
+				next += interval;
+				long delay = next - System.nanoTime();
+				if (delay > 0) {
+					LockSupport.parkNanos(delay);
+				}
+				Channel channel = channels.get(i++ % channels.size());
+				long intendedStart = next;
+				senders.execute(() -> send(channel, intendedStart));
+			}
+		} else {
+			for (Channel channel : channels) {
+				for (int i = 0; i < options.concurrency; i++) {
+					senders.execute(() -> closedLoop(channel));
+				}
+			}
+		}
+	}
+
+	private void closedLoop(Channel channel) {
+		if (running) {
+			send(channel, System.nanoTime()).whenCompleteAsync((result, cause) -> closedLoop(channel), senders);
+		}
+	}
+
+	private CompletableFuture<?> send(Channel channel, long startNanos) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		Object params = Collections.singletonList(payloads.get(random.nextInt(payloads.size())));
+		CompletableFuture<Object> future = new CompletableFuture<>();
+		try {
+			if (random.nextDouble() < options.notificationRatio) {
+				clientHandler.sendNotification(channel, "sink", params).addListener(written -> {
+					if (written.isSuccess()) {
+						notifications.increment();
+						future.complete(null);
+					} else {
+						errors.increment();
+						future.completeExceptionally(written.cause());
+					}
+				});
+			} else {
+				clientHandler.sendRequest(channel, "echo", params, String.class).whenComplete((result, cause) -> {
+					if (cause == null) {
+						latency.record(System.nanoTime() - startNanos);
+						requests.increment();
+						future.complete(result);
+					} else {
+						errors.increment();
+						future.completeExceptionally(cause);
+					}
+				});
+			}
+		} catch (Exception e) {
+			errors.increment();
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	private void report(long elapsedNanos) {
+		double seconds = (double) elapsedNanos / TimeUnit.SECONDS.toNanos(1);
+		System.out.println(options);
+		System.out.printf("requests:      %d (%.1f/s)%n", requests.sum(), requests.sum() / seconds);
+		System.out.printf("notifications: %d (%.1f/s)%n", notifications.sum(), notifications.sum() / seconds);
+		System.out.printf("errors:        %d%n", errors.sum());
+		System.out.printf("latency (us):  p50=%.1f p99=%.1f p999=%.1f max=%.1f mean=%.1f%n",
+				latency.getValueAtPercentile(50, TimeUnit.MICROSECONDS),
+				latency.getValueAtPercentile(99, TimeUnit.MICROSECONDS),
+				latency.getValueAtPercentile(99.9, TimeUnit.MICROSECONDS), latency.getMax(TimeUnit.MICROSECONDS),
+				latency.getMean(TimeUnit.MICROSECONDS));
+	}
+
+	public interface LoadService {
+
+		String echo(String payload);
+
+		void sink(String payload);
+	}
+
+	public static class LoadServiceImpl implements LoadService {
+
+		@Override
+		public String echo(String payload) {
+			return payload;
+		}
+
+		@Override
+		public void sink(String payload) {
+		}
+	}
+
+	public static class Options {
+		private String transport = "tcp";
+		private String mode = "closed";
+		private int connections = 16;
+		private int concurrency = 4;
+		private long rate = 10000;
+		private long duration = 10;
+		private long warmup = 3;
+		private double notificationRatio = 0.1;
+		private int[] payloads = { 16, 256, 4096 };
+		private int threads = Runtime.getRuntime().availableProcessors();
+		private boolean paranoid = false;
+
+		public static Options parse(String[] args) {
+			Map<String, String> values = new HashMap<>();
+			for (String arg : args) {
+				if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+					throw new IllegalArgumentException("Expected --name=value but got " + arg);
+				}
+				values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+			}
+			Options options = new Options();
+			options.transport = values.getOrDefault("transport", options.transport);
+			options.mode = values.getOrDefault("mode", options.mode);
+			if (values.containsKey("connections")) {
+				options.connections = Integer.parseInt(values.get("connections"));
+			}
+			if (values.containsKey("concurrency")) {
+				options.concurrency = Integer.parseInt(values.get("concurrency"));
+			}
+			if (values.containsKey("rate")) {
+				options.rate = Long.parseLong(values.get("rate"));
+			}
+			if (values.containsKey("duration")) {
+				options.duration = Long.parseLong(values.get("duration"));
+			}
+			if (values.containsKey("warmup")) {
+				options.warmup = Long.parseLong(values.get("warmup"));
+			}
+			if (values.containsKey("notifications")) {
+				options.notificationRatio = Double.parseDouble(values.get("notifications"));
+			}
+			if (values.containsKey("payloads")) {
+				options.payloads = Arrays.stream(values.get("payloads").split(",")).map(String::trim)
+						.mapToInt(Integer::parseInt).toArray();
+			}
+			if (values.containsKey("threads")) {
+				options.threads = Integer.parseInt(values.get("threads"));
+			}
+			if (values.containsKey("paranoid")) {
+				options.paranoid = Boolean.parseBoolean(values.get("paranoid"));
+			}
+			if (!"tcp".equals(options.transport) && !"websocket".equals(options.transport)
+					&& !"uds".equals(options.transport)) {
+				throw new IllegalArgumentException("Unknown transport " + options.transport);
+			}
+			if (!"closed".equals(options.mode) && !"open".equals(options.mode)) {
+				throw new IllegalArgumentException("Unknown mode " + options.mode);
+			}
+			return options;
+		}
+
+		private boolean webSocket() {
+			return "websocket".equals(transport);
+		}
+
+		private boolean domainSocket() {
+			return "uds".equals(transport);
+		}
+
+		private boolean openLoop() {
+			return "open".equals(mode);
+		}
+
+		@Override
+		public String toString() {
+			return "Options [transport=" + transport + ", mode=" + mode + ", connections=" + connections
+					+ ", concurrency=" + concurrency + ", rate=" + rate + ", duration=" + duration + ", warmup="
+					+ warmup + ", notificationRatio=" + notificationRatio + ", payloads="
+					+ Arrays.toString(payloads) + ", threads=" + threads + ", paranoid=" + paranoid + "]";
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.touuki.netty.jsonrpc.benchmarks;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.touuki.netty.jsonrpc.JsonRpcClientHandler;
+import com.touuki.netty.jsonrpc.JsonRpcProtocolHandler;
+import com.touuki.netty.jsonrpc.JsonRpcServerHandler;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Helpers to build {@link EmbeddedChannel}s for the benchmarks. A loopback
+ * client channel hands every written buffer synchronously to a server channel
+ * and feeds the responses back, so a blocking proxy call completes on the
+ * calling thread.
+ */
+final class Loopback {
+
+	private Loopback() {
+	}
+
+	static ObjectMapper mapper() {
+		return new ObjectMapper();
+	}
+
+	static JsonRpcServerHandler serverHandler() {
+		return new JsonRpcServerHandler(mapper(), new BenchmarkServiceImpl(), BenchmarkService.class);
+	}
+
+	static ScheduledExecutorService timeoutExecutor() {
+		return Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "jsonrpc-benchmark-timeout");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	static JsonRpcClientHandler clientHandler(ScheduledExecutorService executor) {
+		JsonRpcClientHandler clientHandler = new JsonRpcClientHandler(mapper(), false, executor);
+		// the timeout tasks are never cancelled, keep the queue short
+		clientHandler.setMaxTimeoutSecond(1);
+		return clientHandler;
+	}
+
+	static EmbeddedChannel tcpServer(JsonRpcServerHandler serverHandler) {
+		return new EmbeddedChannel(new JsonRpcProtocolHandler(serverHandler));
+	}
+
+	static EmbeddedChannel tcpClient(JsonRpcClientHandler clientHandler, EmbeddedChannel server) {
+		return new EmbeddedChannel(new LoopbackHandler(server), new JsonRpcProtocolHandler(clientHandler));
+	}
+
+	static byte[] bytes(String json) {
+		return json.getBytes(CharsetUtil.UTF_8);
+	}
+
+	/**
+	 * Release everything written by the channel.
+	 */
+	static void drainOutbound(EmbeddedChannel channel) {
+		Object msg;
+		while ((msg = channel.readOutbound()) != null) {
+			ReferenceCountUtil.release(msg);
+		}
+	}
+
+	private static class LoopbackHandler extends ChannelOutboundHandlerAdapter {
+		private final EmbeddedChannel server;
+
+		private LoopbackHandler(EmbeddedChannel server) {
+			this.server = server;
+		}
+
+		@Override
+		public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+			promise.setSuccess();
+			server.writeInbound(msg);
+			Object response;
+			while ((response = server.readOutbound()) != null) {
+				ctx.fireChannelRead(response);
+			}
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package com.touuki.netty.jsonrpc.benchmarks;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.touuki.netty.jsonrpc.JsonRpcClientHandler;
+import com.touuki.netty.jsonrpc.JsonRpcProtocolHandler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * Response correlation in {@link JsonRpcClientHandler}: a request is sent and
+ * the matching response is written back into the channel. The request ids
+ * start from 0 on a new channel, so the response id is predicted.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseCorrelationBenchmark {
+	private static final byte[] RESPONSE_PREFIX = Loopback.bytes("{\"jsonrpc\":\"2.0\",\"result\":1,\"id\":");
+
+	private ScheduledExecutorService executor;
+	private JsonRpcClientHandler clientHandler;
+	private EmbeddedChannel client;
+	private long nextId;
+
+	@Setup
+	public void setup() {
+		executor = Loopback.timeoutExecutor();
+		clientHandler = Loopback.clientHandler(executor);
+		client = new EmbeddedChannel(new JsonRpcProtocolHandler(clientHandler));
+		nextId = 0;
+	}
+
+	@TearDown
+	public void tearDown() {
+		client.finishAndReleaseAll();
+		executor.shutdownNow();
+	}
+
+	@Benchmark
+	public Object correlate() throws Exception {
+		CompletableFuture<Integer> future = clientHandler.sendRequest(client, "echo", null, Integer.class);
+		Loopback.drainOutbound(client);
+		ByteBuf response = Unpooled.buffer(RESPONSE_PREFIX.length + 21);
+		response.writeBytes(RESPONSE_PREFIX);
+		ByteBufUtil.writeAscii(response, Long.toString(nextId++));
+		response.writeByte('}');
+		client.writeInbound(response);
+		return future.getNow(null);
+	}
+}
@@ -0,0 +1,520 @@
+package com.touuki.netty.jsonrpc.codegen;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.IntersectionType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import com.touuki.netty.jsonrpc.JsonRpcCacheable;
+import com.touuki.netty.jsonrpc.JsonRpcDispatcher;
+import com.touuki.netty.jsonrpc.JsonRpcHedging;
+import com.touuki.netty.jsonrpc.JsonRpcMethod;
+import com.touuki.netty.jsonrpc.JsonRpcParam;
+import com.touuki.netty.jsonrpc.JsonRpcRequestMode;
+import com.touuki.netty.jsonrpc.JsonRpcRoutingKey;
+
+/**
+ * Generates for every interface declaring a {@link JsonRpcMethod} a client stub
+ * {@code <Interface>JsonRpcStub}, which implements the interface like the
+ * proxies of {@code ProxyUtils} without reflection, and a server dispatcher
+ * {@code <Interface>JsonRpcDispatcher}, which switches on the method name to
+ * direct typed calls of the declared methods. The dispatchers are registered
+ * for {@link java.util.ServiceLoader}, and the interfaces in a
+ * {@code reflect-config.json} for GraalVM native-image, since the server still
+ * reads their annotations.
+ */
+@SupportedAnnotationTypes("com.touuki.netty.jsonrpc.JsonRpcMethod")
+public class JsonRpcProcessor extends AbstractProcessor {
+	private static final String STUB_SUFFIX = "JsonRpcStub";
+	private static final String DISPATCHER_SUFFIX = "JsonRpcDispatcher";
+
+	private final Set<String> processed = new LinkedHashSet<>();
+	private final List<String> dispatchers = new ArrayList<>();
+	private final List<TypeElement> originatingElements = new ArrayList<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (Element element : roundEnv.getElementsAnnotatedWith(JsonRpcMethod.class)) {
+			Element enclosing = element.getEnclosingElement();
+			if (element.getKind() != ElementKind.METHOD || enclosing.getKind() != ElementKind.INTERFACE) {
+				continue;
+			}
+			TypeElement type = (TypeElement) enclosing;
+			if (processed.add(type.getQualifiedName().toString())) {
+				try {
+					generate(type);
+				} catch (IOException e) {
+					error(type, "Failed to generate the stub and dispatcher: " + e);
+				}
+			}
+		}
+		if (roundEnv.processingOver() && !dispatchers.isEmpty()) {
+			try {
+				writeServices();
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"Failed to register the dispatchers: " + e);
+			}
+		}
+		return false;
+	}
+
+	private void generate(TypeElement type) throws IOException {
+		if (type.getModifiers().contains(Modifier.PRIVATE)) {
+			error(type, "A private interface can't be implemented by a generated stub");
+			return;
+		}
+		if (!type.getTypeParameters().isEmpty()) {
+			warning(type, "Generic interfaces are not supported, no stub or dispatcher is generated");
+			return;
+		}
+		String packageName = getPackageName(type);
+		String baseName = getBaseName(type);
+		writeSource(type, packageName, baseName + STUB_SUFFIX, stub(type, packageName, baseName + STUB_SUFFIX));
+		writeSource(type, packageName, baseName + DISPATCHER_SUFFIX,
+				dispatcher(type, packageName, baseName + DISPATCHER_SUFFIX));
+		dispatchers.add(packageName.isEmpty() ? baseName + DISPATCHER_SUFFIX
+				: packageName + "." + baseName + DISPATCHER_SUFFIX);
+		originatingElements.add(type);
+		writeReflectConfig(type);
+	}
+
+	private String stub(TypeElement type, String packageName, String className) {
+		DeclaredType declaredType = (DeclaredType) type.asType();
+		// the abstract methods, inherited ones included, by their erased signature
+		Map<String, ExecutableElement> methods = new LinkedHashMap<>();
+		for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+			if (method.getModifiers().contains(Modifier.ABSTRACT) && !isObjectMethod(method)) {
+				methods.putIfAbsent(signature(method, declaredType), method);
+			}
+		}
+
+		StringBuilder source = header(type, packageName);
+		source.append("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n");
+		source.append("public final class ").append(className)
+				.append(" extends com.touuki.netty.jsonrpc.JsonRpcClientStub implements ")
+				.append(type.getQualifiedName()).append(" {\n");
+		int index = 0;
+		for (ExecutableElement method : methods.values()) {
+			clientMethodField(source, method, declaredType, index++);
+		}
+		source.append("\n");
+		source.append("\tpublic ").append(className).append("(com.touuki.netty.jsonrpc.JsonRpcClientHandler client) {\n");
+		source.append("\t\tthis(client, null);\n");
+		source.append("\t}\n\n");
+		source.append("\tpublic ").append(className).append(
+				"(com.touuki.netty.jsonrpc.JsonRpcClientHandler client, com.touuki.netty.jsonrpc.JsonRpcChannelSelector selector) {\n");
+		source.append("\t\tsuper(client, selector);\n");
+		source.append("\t}\n");
+		index = 0;
+		for (ExecutableElement method : methods.values()) {
+			stubMethod(source, method, declaredType, index++);
+		}
+		source.append("}\n");
+		return source.toString();
+	}
+
+	private void clientMethodField(StringBuilder source, ExecutableElement method, DeclaredType declaredType,
+			int index) {
+		ExecutableType methodType = (ExecutableType) processingEnv.getTypeUtils().asMemberOf(declaredType, method);
+		JsonRpcMethod jsonRpcMethod = method.getAnnotation(JsonRpcMethod.class);
+		String name = method.getSimpleName().toString();
+		if (jsonRpcMethod != null && !jsonRpcMethod.value().isEmpty()) {
+			name = jsonRpcMethod.value();
+		}
+		source.append("\tprivate final com.touuki.netty.jsonrpc.JsonRpcClientMethod method").append(index)
+				.append(" = com.touuki.netty.jsonrpc.JsonRpcClientMethod\n");
+		source.append("\t\t\t.builder(").append(literal(name)).append(", ")
+				.append(typeExpression(methodType.getReturnType())).append(")\n");
+		if (jsonRpcMethod != null) {
+			if (jsonRpcMethod.requestMode() != JsonRpcRequestMode.AUTO) {
+				source.append("\t\t\t.requestMode(com.touuki.netty.jsonrpc.JsonRpcRequestMode.")
+						.append(jsonRpcMethod.requestMode().name()).append(")\n");
+			}
+			if (jsonRpcMethod.timeoutMilliseconds() >= 0) {
+				source.append("\t\t\t.timeoutMilliseconds(").append(jsonRpcMethod.timeoutMilliseconds())
+						.append("L)\n");
+			}
+			if (jsonRpcMethod.paramsPassByObject()) {
+				source.append("\t\t\t.paramsPassByObject(true)\n");
+			}
+		}
+		List<? extends VariableElement> parameters = method.getParameters();
+		for (int i = 0; i < parameters.size(); i++) {
+			VariableElement parameter = parameters.get(i);
+			JsonRpcParam jsonRpcParam = parameter.getAnnotation(JsonRpcParam.class);
+			String paramName = jsonRpcParam != null ? jsonRpcParam.value() : parameter.getSimpleName().toString();
+			source.append(parameter.getAnnotation(JsonRpcRoutingKey.class) != null ? "\t\t\t.routingKeyParam("
+					: "\t\t\t.param(").append(literal(paramName)).append(", ")
+					.append(erasure(methodType.getParameterTypes().get(i))).append(".class)\n");
+		}
+		if (method.isVarArgs()) {
+			source.append("\t\t\t.varArgs(true)\n");
+		}
+		JsonRpcCacheable cacheable = method.getAnnotation(JsonRpcCacheable.class);
+		if (cacheable != null) {
+			source.append("\t\t\t.cacheable(").append(cacheable.maxSize()).append(", ")
+					.append(cacheable.ttlMilliseconds()).append("L)\n");
+		}
+		JsonRpcHedging hedging = method.getAnnotation(JsonRpcHedging.class);
+		if (hedging != null) {
+			source.append("\t\t\t.hedging(").append(hedging.delayMilliseconds()).append("L, ")
+					.append(hedging.delayPercentile()).append(", ").append(hedging.maxHedges()).append(", ")
+					.append(hedging.maxRetries()).append(")\n");
+		}
+		source.append("\t\t\t.build();\n");
+	}
+
+	private void stubMethod(StringBuilder source, ExecutableElement method, DeclaredType declaredType, int index) {
+		ExecutableType methodType = (ExecutableType) processingEnv.getTypeUtils().asMemberOf(declaredType, method);
+		TypeMirror returnType = methodType.getReturnType();
+		List<? extends VariableElement> parameters = method.getParameters();
+
+		source.append("\n\t@Override\n\tpublic ");
+		if (!method.getTypeParameters().isEmpty()) {
+			source.append("<");
+			String separator = "";
+			for (TypeParameterElement typeParameter : method.getTypeParameters()) {
+				source.append(separator).append(typeParameter.getSimpleName());
+				String boundSeparator = " extends ";
+				for (TypeMirror bound : typeParameter.getBounds()) {
+					if (!bound.toString().equals("java.lang.Object")) {
+						source.append(boundSeparator).append(bound);
+						boundSeparator = " & ";
+					}
+				}
+				separator = ", ";
+			}
+			source.append("> ");
+		}
+		source.append(returnType).append(" ").append(method.getSimpleName()).append("(");
+		for (int i = 0; i < parameters.size(); i++) {
+			TypeMirror parameterType = methodType.getParameterTypes().get(i);
+			if (i > 0) {
+				source.append(", ");
+			}
+			if (method.isVarArgs() && i == parameters.size() - 1) {
+				source.append(((ArrayType) parameterType).getComponentType()).append("...");
+			} else {
+				source.append(parameterType);
+			}
+			source.append(" ").append(parameters.get(i).getSimpleName());
+		}
+		source.append(")");
+		List<TypeMirror> thrownTypes = rethrownTypes(methodType.getThrownTypes());
+		if (!methodType.getThrownTypes().isEmpty()) {
+			String separator = " throws ";
+			for (TypeMirror thrownType : methodType.getThrownTypes()) {
+				source.append(separator).append(thrownType);
+				separator = ", ";
+			}
+		}
+		source.append(" {\n");
+
+		source.append("\t\ttry {\n\t\t\t");
+		if (returnType.getKind() != TypeKind.VOID) {
+			source.append("return (").append(boxed(returnType)).append(") ");
+		}
+		source.append("invoke(this.method").append(index);
+		for (VariableElement parameter : parameters) {
+			source.append(", ").append(parameter.getSimpleName());
+		}
+		source.append(");\n");
+		// the exceptions a proxy would throw as they are
+		source.append("\t\t} catch (RuntimeException | Error e) {\n\t\t\tthrow e;\n");
+		boolean throwable = false;
+		for (TypeMirror thrownType : thrownTypes) {
+			source.append("\t\t} catch (").append(thrownType).append(" e) {\n\t\t\tthrow e;\n");
+			throwable |= thrownType.toString().equals("java.lang.Throwable");
+		}
+		if (!throwable) {
+			source.append("\t\t} catch (Throwable e) {\n")
+					.append("\t\t\tthrow new java.lang.reflect.UndeclaredThrowableException(e);\n");
+		}
+		source.append("\t\t}\n\t}\n");
+	}
+
+	/**
+	 * @return the declared checked exceptions which can be caught after
+	 *         {@link RuntimeException} and {@link Error}, without the subtypes of
+	 *         the others.
+	 */
+	private List<TypeMirror> rethrownTypes(List<? extends TypeMirror> thrownTypes) {
+		TypeMirror runtimeException = getType("java.lang.RuntimeException");
+		TypeMirror error = getType("java.lang.Error");
+		List<TypeMirror> rethrownTypes = new ArrayList<>();
+		outer: for (TypeMirror thrownType : thrownTypes) {
+			if (thrownType.getKind() != TypeKind.DECLARED
+					|| processingEnv.getTypeUtils().isSubtype(thrownType, runtimeException)
+					|| processingEnv.getTypeUtils().isSubtype(thrownType, error)) {
+				continue;
+			}
+			for (TypeMirror other : thrownTypes) {
+				if (other != thrownType && processingEnv.getTypeUtils().isSubtype(thrownType, other)
+						&& !processingEnv.getTypeUtils().isSameType(thrownType, other)) {
+					continue outer;
+				}
+			}
+			rethrownTypes.add(thrownType);
+		}
+		return rethrownTypes;
+	}
+
+	private String dispatcher(TypeElement type, String packageName, String className) {
+		// the methods declared by the interface, which are the ones the server gets the invokers of
+		Map<String, List<ExecutableElement>> methodsForName = new LinkedHashMap<>();
+		for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+			if (!method.getModifiers().contains(Modifier.STATIC) && !method.getModifiers().contains(Modifier.PRIVATE)) {
+				methodsForName.computeIfAbsent(method.getSimpleName().toString(), key -> new ArrayList<>())
+						.add(method);
+			}
+		}
+
+		String interfaceName = type.getQualifiedName().toString();
+		StringBuilder source = header(type, packageName);
+		source.append("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n");
+		source.append("public final class ").append(className)
+				.append(" implements com.touuki.netty.jsonrpc.JsonRpcDispatcher {\n\n");
+		source.append("\t@Override\n\tpublic Class<?> getServiceInterface() {\n");
+		source.append("\t\treturn ").append(interfaceName).append(".class;\n\t}\n\n");
+		source.append("\t@Override\n\tpublic Invoker getInvoker(String methodName, Class<?>[] parameterTypes) {\n");
+		source.append("\t\tswitch (methodName) {\n");
+		for (Map.Entry<String, List<ExecutableElement>> entry : methodsForName.entrySet()) {
+			source.append("\t\tcase ").append(literal(entry.getKey())).append(":\n");
+			for (ExecutableElement method : entry.getValue()) {
+				List<? extends VariableElement> parameters = method.getParameters();
+				source.append("\t\t\tif (java.util.Arrays.equals(parameterTypes, new Class<?>[] {");
+				for (int i = 0; i < parameters.size(); i++) {
+					source.append(i == 0 ? " " : ", ").append(erasure(parameters.get(i).asType())).append(".class");
+				}
+				source.append(parameters.isEmpty() ? "})) {\n" : " })) {\n");
+				StringBuilder call = new StringBuilder();
+				call.append("((").append(interfaceName).append(") target).").append(method.getSimpleName())
+						.append("(");
+				for (int i = 0; i < parameters.size(); i++) {
+					call.append(i == 0 ? "" : ", ").append("(").append(erasure(parameters.get(i).asType()))
+							.append(") args[").append(i).append("]");
+				}
+				call.append(")");
+				if (method.getReturnType().getKind() == TypeKind.VOID) {
+					source.append("\t\t\t\treturn (target, args) -> {\n");
+					source.append("\t\t\t\t\t").append(call).append(";\n");
+					source.append("\t\t\t\t\treturn null;\n");
+					source.append("\t\t\t\t};\n");
+				} else {
+					source.append("\t\t\t\treturn (target, args) -> ").append(call).append(";\n");
+				}
+				source.append("\t\t\t}\n");
+			}
+			source.append("\t\t\tbreak;\n");
+		}
+		source.append("\t\tdefault:\n\t\t\tbreak;\n");
+		source.append("\t\t}\n\t\treturn null;\n\t}\n}\n");
+		return source.toString();
+	}
+
+	private StringBuilder header(TypeElement type, String packageName) {
+		StringBuilder source = new StringBuilder();
+		if (!packageName.isEmpty()) {
+			source.append("package ").append(packageName).append(";\n\n");
+		}
+		source.append("/**\n * Generated by netty-jsonrpc-codegen from {@link ").append(type.getQualifiedName())
+				.append("}, do not edit.\n */\n");
+		return source;
+	}
+
+	/**
+	 * @return the expression of the {@link java.lang.reflect.Type} the result is
+	 *         read as, a class literal unless the type is parameterized.
+	 */
+	private String typeExpression(TypeMirror type) {
+		if (hasTypeArguments(type) && !hasTypeVariables(type)) {
+			return "new com.fasterxml.jackson.core.type.TypeReference<" + type + ">() {}.getType()";
+		}
+		return erasure(type) + ".class";
+	}
+
+	private boolean hasTypeArguments(TypeMirror type) {
+		if (type.getKind() == TypeKind.ARRAY) {
+			return hasTypeArguments(((ArrayType) type).getComponentType());
+		}
+		return type.getKind() == TypeKind.DECLARED && !((DeclaredType) type).getTypeArguments().isEmpty();
+	}
+
+	private boolean hasTypeVariables(TypeMirror type) {
+		switch (type.getKind()) {
+		case TYPEVAR:
+			return true;
+		case ARRAY:
+			return hasTypeVariables(((ArrayType) type).getComponentType());
+		case DECLARED:
+			for (TypeMirror typeArgument : ((DeclaredType) type).getTypeArguments()) {
+				if (hasTypeVariables(typeArgument)) {
+					return true;
+				}
+			}
+			return hasTypeVariables(((DeclaredType) type).getEnclosingType());
+		case WILDCARD:
+			WildcardType wildcardType = (WildcardType) type;
+			return wildcardType.getExtendsBound() != null && hasTypeVariables(wildcardType.getExtendsBound())
+					|| wildcardType.getSuperBound() != null && hasTypeVariables(wildcardType.getSuperBound());
+		case INTERSECTION:
+			for (TypeMirror bound : ((IntersectionType) type).getBounds()) {
+				if (hasTypeVariables(bound)) {
+					return true;
+				}
+			}
+			return false;
+		default:
+			return false;
+		}
+	}
+
+	private String erasure(TypeMirror type) {
+		return processingEnv.getTypeUtils().erasure(type).toString();
+	}
+
+	private String boxed(TypeMirror type) {
+		if (type.getKind().isPrimitive()) {
+			return processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString();
+		}
+		return type.toString();
+	}
+
+	private String signature(ExecutableElement method, DeclaredType declaredType) {
+		ExecutableType methodType = (ExecutableType) processingEnv.getTypeUtils().asMemberOf(declaredType, method);
+		StringBuilder signature = new StringBuilder(method.getSimpleName()).append("(");
+		for (TypeMirror parameterType : methodType.getParameterTypes()) {
+			signature.append(erasure(parameterType)).append(",");
+		}
+		return signature.append(")").toString();
+	}
+
+	/**
+	 * @return whether the method is one of {@link Object}, implemented by the stub
+	 *         even if redeclared by the interface.
+	 */
+	private boolean isObjectMethod(ExecutableElement method) {
+		if (method.getEnclosingElement().equals(processingEnv.getElementUtils().getTypeElement("java.lang.Object"))) {
+			return true;
+		}
+		String name = method.getSimpleName().toString();
+		List<? extends VariableElement> parameters = method.getParameters();
+		return parameters.isEmpty() && (name.equals("toString") || name.equals("hashCode"))
+				|| parameters.size() == 1 && name.equals("equals")
+						&& erasure(parameters.get(0).asType()).equals("java.lang.Object");
+	}
+
+	private String getPackageName(TypeElement type) {
+		PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+		return packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+	}
+
+	/**
+	 * @return the simple name of the interface, prefixed by the ones of the
+	 *         enclosing types if nested.
+	 */
+	private String getBaseName(TypeElement type) {
+		String baseName = type.getSimpleName().toString();
+		Element element = type;
+		while (element instanceof TypeElement && ((TypeElement) element).getNestingKind() == NestingKind.MEMBER) {
+			element = element.getEnclosingElement();
+			baseName = element.getSimpleName() + "_" + baseName;
+		}
+		return baseName;
+	}
+
+	private TypeMirror getType(String className) {
+		return processingEnv.getElementUtils().getTypeElement(className).asType();
+	}
+
+	private String literal(String value) {
+		StringBuilder literal = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				literal.append('\\').append(c);
+			} else if (c < 0x20 || c > 0x7e) {
+				literal.append(String.format("\\u%04x", (int) c));
+			} else {
+				literal.append(c);
+			}
+		}
+		return literal.append('"').toString();
+	}
+
+	private void writeSource(TypeElement type, String packageName, String className, String source)
+			throws IOException {
+		String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+		try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+			writer.write(source);
+		}
+	}
+
+	private void writeServices() throws IOException {
+		FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+				"META-INF/services/" + JsonRpcDispatcher.class.getName(),
+				originatingElements.toArray(new Element[0]));
+		try (Writer writer = file.openWriter()) {
+			for (String dispatcher : dispatchers) {
+				writer.write(dispatcher);
+				writer.write("\n");
+			}
+		}
+	}
+
+	/**
+	 * The server scans the methods of the interface and reads their annotations,
+	 * which native-image only keeps if configured.
+	 */
+	private void writeReflectConfig(TypeElement type) throws IOException {
+		String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+		FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+				"META-INF/native-image/netty-jsonrpc-codegen/" + binaryName + "/reflect-config.json", type);
+		try (Writer writer = file.openWriter()) {
+			writer.write("[\n  {\n    \"name\": \"" + binaryName + "\",\n    \"allPublicMethods\": true\n  }\n]\n");
+		}
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+
+	private void warning(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message, element);
+	}
+}
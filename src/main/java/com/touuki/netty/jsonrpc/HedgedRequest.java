@@ -0,0 +1,240 @@
+package com.touuki.netty.jsonrpc;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import io.netty.channel.Channel;
+
+/**
+ * A call of a method annotated by {@link JsonRpcHedging}, sent to the channels
+ * of a selector. Sending doesn't wait for the write, so the hedges are sent by
+ * the timers of the executor of the client, and the retries by the thread
+ * completing the failed call, an event loop included.
+ */
+class HedgedRequest {
+	private final JsonRpcClientHandler client;
+	private final Policy policy;
+	private final JsonRpcChannelSelector selector;
+	private final Object routingKey;
+	private final String method;
+	private final Object params;
+	private final Type responseType;
+	private final long timeoutMillis;
+	private final CompletableFuture<Object> result = new CompletableFuture<>();
+	private final List<CompletableFuture<Object>> attempts = new ArrayList<>();
+	private final Set<Channel> tried = new HashSet<>();
+	private final long startNanos = System.nanoTime();
+	private int hedgesLeft;
+	private int retriesLeft;
+	private int outstanding;
+	private ScheduledFuture<?> hedgeTimer;
+
+	HedgedRequest(JsonRpcClientHandler client, Policy policy, JsonRpcChannelSelector selector, Object routingKey,
+			String method, Object params, Type responseType, long timeoutMillis) {
+		this.client = client;
+		this.policy = policy;
+		this.selector = selector;
+		this.routingKey = routingKey;
+		this.method = method;
+		this.params = params;
+		this.responseType = responseType;
+		this.timeoutMillis = timeoutMillis;
+		this.hedgesLeft = policy.maxHedges;
+		this.retriesLeft = policy.maxRetries;
+	}
+
+	/**
+	 * @param channel the channel of the first call
+	 * @return the future of the first response, cancelling it cancels all the
+	 *         calls
+	 */
+	CompletableFuture<Object> send(Channel channel) {
+		client.getRetryBudget().deposit();
+		result.whenComplete((response, cause) -> {
+			List<CompletableFuture<Object>> losers;
+			synchronized (this) {
+				if (hedgeTimer != null) {
+					hedgeTimer.cancel(false);
+				}
+				losers = new ArrayList<>(attempts);
+			}
+			for (CompletableFuture<Object> attempt : losers) {
+				attempt.cancel(true);
+			}
+			if (cause == null) {
+				policy.record(System.nanoTime() - startNanos);
+			}
+		});
+		synchronized (this) {
+			tried.add(channel);
+			outstanding++;
+		}
+		send0(channel);
+		scheduleHedge();
+		return result;
+	}
+
+	private void send0(Channel channel) {
+		CompletableFuture<Object> attempt;
+		try {
+			if (timeoutMillis >= 0) {
+				attempt = client.sendRequest(channel, method, params, responseType, timeoutMillis);
+			} else {
+				attempt = client.sendRequest(channel, method, params, responseType);
+			}
+		} catch (Exception e) {
+			attempt = new CompletableFuture<>();
+			attempt.completeExceptionally(e);
+		}
+		synchronized (this) {
+			attempts.add(attempt);
+		}
+		if (result.isDone()) {
+			attempt.cancel(true);
+		}
+		attempt.whenComplete(this::onAttemptComplete);
+	}
+
+	private void scheduleHedge() {
+		long delayNanos = policy.getDelayNanos();
+		if (delayNanos < 0) {
+			return;
+		}
+		synchronized (this) {
+			if (hedgesLeft > 0 && !result.isDone()) {
+				hedgeTimer = client.getExecutor().schedule(this::hedge, delayNanos, TimeUnit.NANOSECONDS);
+			}
+		}
+	}
+
+	private void hedge() {
+		Channel channel;
+		synchronized (this) {
+			if (result.isDone() || hedgesLeft <= 0) {
+				return;
+			}
+			channel = selector.select(routingKey, tried);
+			if (channel == null || !client.getRetryBudget().tryWithdraw()) {
+				return;
+			}
+			hedgesLeft--;
+			tried.add(channel);
+			outstanding++;
+		}
+		send0(channel);
+		scheduleHedge();
+	}
+
+	private void onAttemptComplete(Object response, Throwable cause) {
+		if (cause == null) {
+			result.complete(response);
+			return;
+		}
+		if ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+		if (cause instanceof JsonRpcException) {
+			// an error response is still a response
+			result.completeExceptionally(cause);
+			return;
+		}
+		Channel retry = null;
+		synchronized (this) {
+			outstanding--;
+			if (result.isDone() || cause instanceof CancellationException) {
+				return;
+			}
+			if (retriesLeft > 0 && isConnectionFailure(cause)) {
+				retry = selector.select(routingKey, tried);
+				if (retry != null && client.getRetryBudget().tryWithdraw()) {
+					retriesLeft--;
+					tried.add(retry);
+					outstanding++;
+				} else {
+					retry = null;
+				}
+			}
+			if (retry == null && outstanding > 0) {
+				// wait for the others
+				return;
+			}
+		}
+		if (retry != null) {
+			send0(retry);
+		} else {
+			result.completeExceptionally(cause);
+		}
+	}
+
+	private static boolean isConnectionFailure(Throwable cause) {
+		return cause instanceof ChannelNotFoundException
+				|| cause instanceof IOException && !(cause instanceof JsonProcessingException);
+	}
+
+	/**
+	 * The hedging of a method and its observed latencies.
+	 */
+	static class Policy {
+		private static final long MIN_SAMPLES = 100;
+		private static final long REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+		private final int maxHedges;
+		private final int maxRetries;
+		private final double delayPercentile;
+		private final LatencyHistogram latencies;
+		private volatile long delayNanos;
+		private volatile long refreshNanos;
+
+		Policy(long delayMilliseconds, double delayPercentile, int maxHedges, int maxRetries) {
+			this.maxHedges = maxHedges;
+			this.maxRetries = maxRetries;
+			this.delayPercentile = delayPercentile;
+			if (delayMilliseconds >= 0) {
+				this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMilliseconds);
+				this.latencies = null;
+			} else {
+				this.delayNanos = -1;
+				this.latencies = new LatencyHistogram();
+				this.refreshNanos = System.nanoTime() + REFRESH_NANOS;
+			}
+		}
+
+		/**
+		 * @return the delay before hedging, negative if not known yet.
+		 */
+		long getDelayNanos() {
+			return delayNanos;
+		}
+
+		private void record(long latencyNanos) {
+			if (latencies == null) {
+				return;
+			}
+			latencies.record(latencyNanos);
+			long now = System.nanoTime();
+			if (now - refreshNanos >= 0 && latencies.getCount() >= MIN_SAMPLES) {
+				synchronized (this) {
+					if (now - refreshNanos >= 0) {
+						refreshNanos = now + REFRESH_NANOS;
+						delayNanos = (long) latencies.getValueAtPercentile(delayPercentile, TimeUnit.NANOSECONDS);
+						// a window of the recent latencies
+						latencies.reset();
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package com.touuki.netty.jsonrpc;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.netty.channel.Channel;
+
+/**
+ * A {@link JsonRpcMetrics} keeping everything in memory to be scraped. The
+ * bytes and frames are summed over all the pipelines.
+ */
+public class InMemoryJsonRpcMetrics implements JsonRpcMetrics {
+
+	private final Map<String, MethodMetrics> serverMethods = new ConcurrentHashMap<>();
+	private final Map<String, MethodMetrics> clientMethods = new ConcurrentHashMap<>();
+	private final LongAdder serverInFlight = new LongAdder();
+	private final LongAdder clientPending = new LongAdder();
+	private final LongAdder bytesRead = new LongAdder();
+	private final LongAdder framesRead = new LongAdder();
+	private final LongAdder bytesWritten = new LongAdder();
+	private final LongAdder framesWritten = new LongAdder();
+
+	@Override
+	public void serverCallStarted(String method) {
+		serverInFlight.increment();
+	}
+
+	@Override
+	public void serverCallCompleted(String method, long latencyNanos, boolean error) {
+		serverInFlight.decrement();
+		getMethodMetrics(serverMethods, method).record(latencyNanos, error);
+	}
+
+	@Override
+	public void serverCallRejected(String method) {
+		getMethodMetrics(serverMethods, method).rejected.increment();
+	}
+
+	@Override
+	public void clientCallStarted(String method) {
+		clientPending.increment();
+	}
+
+	@Override
+	public void clientCallCompleted(String method, long latencyNanos, boolean error) {
+		clientPending.decrement();
+		getMethodMetrics(clientMethods, method).record(latencyNanos, error);
+	}
+
+	@Override
+	public void clientCallTimedOut(String method) {
+		clientPending.decrement();
+		getMethodMetrics(clientMethods, method).timeouts.increment();
+	}
+
+	@Override
+	public void clientCallCancelled(String method) {
+		clientPending.decrement();
+		getMethodMetrics(clientMethods, method).cancelled.increment();
+	}
+
+	@Override
+	public void frameRead(Channel channel, int bytes) {
+		framesRead.increment();
+		bytesRead.add(bytes);
+	}
+
+	@Override
+	public void frameWritten(Channel channel, int bytes) {
+		framesWritten.increment();
+		bytesWritten.add(bytes);
+	}
+
+	private MethodMetrics getMethodMetrics(Map<String, MethodMetrics> methods, String method) {
+		MethodMetrics methodMetrics = methods.get(method);
+		if (methodMetrics == null) {
+			methodMetrics = methods.computeIfAbsent(method, key -> new MethodMetrics());
+		}
+		return methodMetrics;
+	}
+
+	public Map<String, MethodMetrics> getServerMethods() {
+		return Collections.unmodifiableMap(serverMethods);
+	}
+
+	public Map<String, MethodMetrics> getClientMethods() {
+		return Collections.unmodifiableMap(clientMethods);
+	}
+
+	public long getServerInFlight() {
+		return serverInFlight.sum();
+	}
+
+	/**
+	 * @return the size of the pending requests maps of all the channels.
+	 */
+	public long getClientPending() {
+		return clientPending.sum();
+	}
+
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	public long getFramesRead() {
+		return framesRead.sum();
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+
+	public long getFramesWritten() {
+		return framesWritten.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "InMemoryJsonRpcMetrics [serverMethods=" + serverMethods + ", clientMethods=" + clientMethods
+				+ ", serverInFlight=" + serverInFlight + ", clientPending=" + clientPending + ", bytesRead="
+				+ bytesRead + ", framesRead=" + framesRead + ", bytesWritten=" + bytesWritten + ", framesWritten="
+				+ framesWritten + "]";
+	}
+
+	public static class MethodMetrics {
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder rejected = new LongAdder();
+		private final LongAdder timeouts = new LongAdder();
+		private final LongAdder cancelled = new LongAdder();
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+		private void record(long latencyNanos, boolean error) {
+			latency.record(latencyNanos);
+			if (error) {
+				errors.increment();
+			}
+		}
+
+		public long getCalls() {
+			return latency.getCount();
+		}
+
+		public long getErrors() {
+			return errors.sum();
+		}
+
+		public long getRejected() {
+			return rejected.sum();
+		}
+
+		public long getTimeouts() {
+			return timeouts.sum();
+		}
+
+		public long getCancelled() {
+			return cancelled.sum();
+		}
+
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		@Override
+		public String toString() {
+			return "MethodMetrics [calls=" + getCalls() + ", errors=" + errors + ", rejected=" + rejected
+					+ ", timeouts=" + timeouts + ", cancelled=" + cancelled + ", latency=" + latency + "]";
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.touuki.netty.jsonrpc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+
+/**
+ * The default {@link JsonRpcCodec}, by Jackson databind with the object mapper
+ * of the handler.
+ */
+public class JacksonJsonRpcCodec implements JsonRpcCodec {
+	static final JacksonJsonRpcCodec DEFAULT = new JacksonJsonRpcCodec(JsonUtils.MAPPER);
+
+	private final ObjectMapper mapper;
+
+	public JacksonJsonRpcCodec(ObjectMapper mapper) {
+		this.mapper = mapper;
+	}
+
+	public ObjectMapper getMapper() {
+		return mapper;
+	}
+
+	@Override
+	public JsonNode readTree(ByteBuf in) throws IOException {
+		// parsed from the buffer without copying the frame
+		return mapper.readTree(new ByteBufInputStream(in));
+	}
+
+	@Override
+	public Object treeToValue(JsonNode node, Type type) throws IOException {
+		return mapper.readerFor(mapper.getTypeFactory().constructType(type))
+				.with(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY).readValue(mapper.treeAsTokens(node));
+	}
+
+	@Override
+	public JsonNode valueToTree(Object value) {
+		return mapper.valueToTree(value);
+	}
+
+	@Override
+	public void writeValue(Object value, ByteBuf out) throws IOException {
+		mapper.writeValue((OutputStream) new ByteBufOutputStream(out), value);
+	}
+}
@@ -1,5 +1,6 @@
 package com.touuki.netty.jsonrpc;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -13,25 +14,36 @@ import com.touuki.netty.jsonrpc.JsonRpcObject;
 import com.touuki.netty.jsonrpc.JsonRpcRequest;
 import com.touuki.netty.jsonrpc.JsonRpcResponse;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPipeline;
 import io.netty.handler.codec.MessageToMessageCodec;
 import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
 import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
 import io.netty.handler.codec.json.JsonObjectDecoder;
 import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.AttributeKey;
 
 @Sharable
-class JsonNodeToJsonRpcObjectDecoder extends MessageToMessageDecoder<JsonNode> {
+class JsonNodeToJsonRpcObjectDecoder extends MessageToMessageDecoder<Object> {
 	private static final Logger log = LoggerFactory.getLogger(JsonNodeToJsonRpcObjectDecoder.class);
+	private static final AttributeKey<PendingAttachments> PENDING_ATTACHMENTS = AttributeKey
+			.valueOf("PENDING_ATTACHMENTS");
 	private final JsonRpcClientHandler jsonRpcClientHandler;
 	private final JsonRpcServerHandler jsonRpcServerHandler;
+	private final int maxObjectLength;
 	
-	JsonNodeToJsonRpcObjectDecoder(JsonRpcClientHandler jsonRpcClientHandler, JsonRpcServerHandler jsonRpcServerHandler) {
+	/**
+	 * @param maxObjectLength the max length in bytes of the segments of an object
+	 */
+	JsonNodeToJsonRpcObjectDecoder(JsonRpcClientHandler jsonRpcClientHandler, JsonRpcServerHandler jsonRpcServerHandler,
+			int maxObjectLength) {
 		this.jsonRpcClientHandler = jsonRpcClientHandler;
 		this.jsonRpcServerHandler = jsonRpcServerHandler;
+		this.maxObjectLength = maxObjectLength;
 	}
 	
 	@Override
@@ -46,22 +58,92 @@ class JsonNodeToJsonRpcObjectDecoder extends MessageToMessageDecoder<JsonNode> {
 	}
 	
 	@Override
-	protected void decode(ChannelHandlerContext ctx, JsonNode msg, List<Object> out) {
+	public boolean acceptInboundMessage(Object msg) throws Exception {
+		return msg instanceof JsonNode || msg instanceof JsonRpcAttachments.Segment;
+	}
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, Object msg, List<Object> out) {
+		if (msg instanceof JsonRpcAttachments.Segment) {
+			ByteBuf content = ((JsonRpcAttachments.Segment) msg).content;
+			PendingAttachments pending = ctx.channel().attr(PENDING_ATTACHMENTS).get();
+			if (pending == null) {
+				pending = new PendingAttachments();
+				ctx.channel().attr(PENDING_ATTACHMENTS).set(pending);
+			}
+			pending.bytes += content.readableBytes();
+			pending.add(content);
+			if (pending.size() > JsonRpcAttachments.MAX_SEGMENTS || pending.bytes > maxObjectLength) {
+				ctx.channel().attr(PENDING_ATTACHMENTS).set(null);
+				JsonRpcAttachments.release(pending);
+				throw new TooLongFrameException("attachments exceed " + JsonRpcAttachments.MAX_SEGMENTS
+						+ " segments or " + maxObjectLength + " bytes: " + pending.size() + " segments of "
+						+ pending.bytes + " bytes");
+			}
+		} else {
+			decode(ctx, (JsonNode) msg, out);
+		}
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		JsonRpcAttachments.release(ctx.channel().attr(PENDING_ATTACHMENTS).getAndSet(null));
+		super.channelInactive(ctx);
+	}
+
+	/**
+	 * @return the attachments received before the object, as many as counted by
+	 *         the object.
+	 */
+	private List<ByteBuf> takeAttachments(ChannelHandlerContext ctx, JsonNode msg) {
+		PendingAttachments pending = ctx.channel().attr(PENDING_ATTACHMENTS).getAndSet(null);
+		JsonNode count = msg.get(JsonRpcAttachments.MEMBER);
+		if (count == null && pending == null) {
+			return null;
+		}
+		if (count == null || pending == null || !count.canConvertToInt() || count.intValue() != pending.size()) {
+			JsonRpcAttachments.release(pending);
+			throw JsonRpcException.INVALID_REQUEST_EXCEPTION;
+		}
+		return pending;
+	}
+
+	private void decode(ChannelHandlerContext ctx, JsonNode msg, List<Object> out) {
+		List<ByteBuf> attachments = takeAttachments(ctx, msg);
 		if (jsonRpcServerHandler != null && msg.has("method")) {
 			try {
-				out.add(JsonUtils.MAPPER.treeToValue(msg, JsonRpcRequest.class));
-			} catch (JsonProcessingException e) {
-				throw new JsonRpcException("Invalid Request", JsonRpcException.INVALID_REQUEST);
+				// the envelope is bound by the library mapper, see JsonRpcCodec
+				JsonRpcRequest request = JsonUtils.MAPPER.treeToValue(msg, JsonRpcRequest.class);
+				if (attachments != null) {
+					request.setAttachments(attachments);
+					JsonRpcAttachments.resolveParams(request.getParams(), attachments);
+				}
+				out.add(request);
+			} catch (JsonProcessingException | JsonRpcException e) {
+				JsonRpcAttachments.release(attachments);
+				throw JsonRpcException.INVALID_REQUEST_EXCEPTION;
 			}
 		} else if (jsonRpcClientHandler != null && ( msg.has("error") || msg.has("result") )) {
 			try {
-				out.add(JsonUtils.MAPPER.treeToValue(msg, JsonRpcResponse.class));
+				JsonRpcResponse response = JsonUtils.MAPPER.treeToValue(msg, JsonRpcResponse.class);
+				response.setAttachments(attachments);
+				out.add(response);
 			} catch (JsonProcessingException e) {
+				JsonRpcAttachments.release(attachments);
 				log.warn("Invalid response received: channel:{}; remoteAddress:{}; cause:{}",
 						ctx.channel().id().asLongText(), ctx.channel().remoteAddress(), e.toString());
 			}
 		} else {
-			throw new JsonRpcException("Invalid Request", JsonRpcException.INVALID_REQUEST);
+			JsonRpcAttachments.release(attachments);
+			throw JsonRpcException.INVALID_REQUEST_EXCEPTION;
 		}
 	}
+
+	/**
+	 * The segments received for the next object, and their length in bytes.
+	 */
+	@SuppressWarnings("serial")
+	private static class PendingAttachments extends ArrayList<ByteBuf> {
+		private long bytes;
+	}
 }
@@ -0,0 +1,298 @@
+package com.touuki.netty.jsonrpc;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+/**
+ * Admission control for {@link JsonRpcServerHandler}. A call is admitted only
+ * if its channel has a token left in its rate limit bucket, its method is below
+ * the max concurrent executions and, if enabled, the server is below the
+ * adaptive concurrency limit. Nothing is allocated when a call is admitted.
+ * <p>
+ * The max concurrent executions of a method is read from
+ * {@link JsonRpcMethod#maxConcurrency()}, or configured by
+ * {@link Builder#maxConcurrency(String, int)}.
+ */
+public class JsonRpcAdmissionControl {
+	private static final AttributeKey<TokenBucket> TOKEN_BUCKET = AttributeKey.valueOf("TOKEN_BUCKET");
+	private static final MethodLimit UNLIMITED = new MethodLimit(-1);
+
+	private final Map<String, Integer> maxConcurrencyForName;
+	private final double permitsPerNano;
+	private final double burst;
+	private final AdaptiveLimit adaptiveLimit;
+	private final Map<String, Map<Method, MethodLimit>> limitsForService = new ConcurrentHashMap<>();
+
+	private JsonRpcAdmissionControl(Builder builder) {
+		this.maxConcurrencyForName = new HashMap<>(builder.maxConcurrencyForName);
+		this.permitsPerNano = builder.permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+		this.burst = builder.burst;
+		if (builder.adaptiveMaxLimit > 0) {
+			this.adaptiveLimit = new AdaptiveLimit(builder.adaptiveInitialLimit, builder.adaptiveMinLimit,
+					builder.adaptiveMaxLimit, builder.adaptiveTargetLatencyNanos);
+		} else {
+			this.adaptiveLimit = null;
+		}
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Take a token from the rate limit bucket of the channel, or of its connection
+	 * for an HTTP/2 stream. Must be called from the event loop of the channel,
+	 * which the streams share with their connection.
+	 *
+	 * @param channel the channel the call is received from
+	 * @return whether the call is admitted by the rate limit
+	 */
+	boolean tryAcquire(Channel channel) {
+		if (permitsPerNano <= 0) {
+			return true;
+		}
+		long now = System.nanoTime();
+		if (channel instanceof Http2StreamChannel) {
+			channel = channel.parent();
+		}
+		Attribute<TokenBucket> attr = channel.attr(TOKEN_BUCKET);
+		TokenBucket bucket = attr.get();
+		if (bucket == null) {
+			bucket = new TokenBucket(burst, now);
+			attr.set(bucket);
+		}
+		bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.lastRefillNanos) * permitsPerNano);
+		bucket.lastRefillNanos = now;
+		if (bucket.tokens < 1) {
+			return false;
+		}
+		bucket.tokens -= 1;
+		return true;
+	}
+
+	/**
+	 * Take a concurrency permit for the method of the service. If {@code true} is
+	 * returned, {@link #release(String, Method, long)} must be called when the
+	 * execution completes.
+	 *
+	 * @param serviceName the name of the service, the services of the same
+	 *                    interface have their own limits
+	 * @param method      the method to be invoked
+	 * @return whether the call is admitted by the concurrency limits
+	 */
+	boolean tryAcquire(String serviceName, Method method) {
+		MethodLimit limit = getLimit(serviceName, method);
+		if (!limit.tryAcquire()) {
+			return false;
+		}
+		if (adaptiveLimit != null && !adaptiveLimit.tryAcquire()) {
+			limit.release();
+			return false;
+		}
+		return true;
+	}
+
+	void release(String serviceName, Method method, long startNanos) {
+		getLimit(serviceName, method).release();
+		if (adaptiveLimit != null) {
+			adaptiveLimit.release(System.nanoTime() - startNanos);
+		}
+	}
+
+	/**
+	 * @return the current adaptive concurrency limit, or -1 if it's not enabled.
+	 */
+	public int getAdaptiveLimit() {
+		return adaptiveLimit == null ? -1 : adaptiveLimit.limit;
+	}
+
+	private MethodLimit getLimit(String serviceName, Method method) {
+		Map<Method, MethodLimit> limitForMethod = limitsForService.get(serviceName);
+		if (limitForMethod == null) {
+			limitForMethod = limitsForService.computeIfAbsent(serviceName, name -> new ConcurrentHashMap<>());
+		}
+		MethodLimit limit = limitForMethod.get(method);
+		if (limit == null) {
+			limit = limitForMethod.computeIfAbsent(method, this::createLimit);
+		}
+		return limit;
+	}
+
+	private MethodLimit createLimit(Method method) {
+		int maxConcurrency = -1;
+		JsonRpcMethod jsonRpcMethod = method.getAnnotation(JsonRpcMethod.class);
+		if (jsonRpcMethod != null) {
+			maxConcurrency = jsonRpcMethod.maxConcurrency();
+			if (maxConcurrency < 0 && !"".equals(jsonRpcMethod.value())) {
+				maxConcurrency = maxConcurrencyForName.getOrDefault(jsonRpcMethod.value(), -1);
+			}
+		}
+		if (maxConcurrency < 0) {
+			maxConcurrency = maxConcurrencyForName.getOrDefault(method.getName(), -1);
+		}
+		return maxConcurrency < 0 ? UNLIMITED : new MethodLimit(maxConcurrency);
+	}
+
+	public static class Builder {
+		private final Map<String, Integer> maxConcurrencyForName = new HashMap<>();
+		private double permitsPerSecond;
+		private double burst;
+		private int adaptiveInitialLimit;
+		private int adaptiveMinLimit;
+		private int adaptiveMaxLimit;
+		private long adaptiveTargetLatencyNanos;
+
+		private Builder() {
+		}
+
+		/**
+		 * Limit the concurrent executions of a method, the annotation
+		 * {@link JsonRpcMethod#maxConcurrency()} takes precedence.
+		 *
+		 * @param methodName     the rpc method name
+		 * @param maxConcurrency the max concurrent executions
+		 * @return this builder
+		 */
+		public Builder maxConcurrency(String methodName, int maxConcurrency) {
+			maxConcurrencyForName.put(methodName, maxConcurrency);
+			return this;
+		}
+
+		/**
+		 * Limit the calls received from each channel by a token bucket.
+		 *
+		 * @param permitsPerSecond the refill rate of the bucket
+		 * @param burst            the capacity of the bucket
+		 * @return this builder
+		 */
+		public Builder channelRateLimit(double permitsPerSecond, int burst) {
+			if (permitsPerSecond <= 0 || burst < 1) {
+				throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+			}
+			this.permitsPerSecond = permitsPerSecond;
+			this.burst = burst;
+			return this;
+		}
+
+		/**
+		 * Limit the total concurrent executions by a limit which is increased by one
+		 * while the latency stays below the target, and decreased by 10% at most once
+		 * per target latency when it exceeds the target.
+		 *
+		 * @param initialLimit  the initial limit
+		 * @param minLimit      the lower bound of the limit
+		 * @param maxLimit      the upper bound of the limit
+		 * @param targetLatency the target latency
+		 * @param unit          the unit of targetLatency
+		 * @return this builder
+		 */
+		public Builder adaptiveLimit(int initialLimit, int minLimit, int maxLimit, long targetLatency,
+				TimeUnit unit) {
+			if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit || targetLatency <= 0) {
+				throw new IllegalArgumentException("Invalid adaptive limit");
+			}
+			this.adaptiveInitialLimit = initialLimit;
+			this.adaptiveMinLimit = minLimit;
+			this.adaptiveMaxLimit = maxLimit;
+			this.adaptiveTargetLatencyNanos = unit.toNanos(targetLatency);
+			return this;
+		}
+
+		public JsonRpcAdmissionControl build() {
+			return new JsonRpcAdmissionControl(this);
+		}
+	}
+
+	private static class TokenBucket {
+		private double tokens;
+		private long lastRefillNanos;
+
+		private TokenBucket(double tokens, long lastRefillNanos) {
+			this.tokens = tokens;
+			this.lastRefillNanos = lastRefillNanos;
+		}
+	}
+
+	private static class MethodLimit {
+		private final int max;
+		private final AtomicInteger inFlight = new AtomicInteger();
+
+		private MethodLimit(int max) {
+			this.max = max;
+		}
+
+		private boolean tryAcquire() {
+			if (max < 0) {
+				return true;
+			}
+			for (;;) {
+				int current = inFlight.get();
+				if (current >= max) {
+					return false;
+				}
+				if (inFlight.compareAndSet(current, current + 1)) {
+					return true;
+				}
+			}
+		}
+
+		private void release() {
+			if (max >= 0) {
+				inFlight.decrementAndGet();
+			}
+		}
+	}
+
+	private static class AdaptiveLimit {
+		private final int minLimit;
+		private final int maxLimit;
+		private final long targetLatencyNanos;
+		private final AtomicInteger inFlight = new AtomicInteger();
+		private volatile int limit;
+		private volatile long lastDecreaseNanos;
+
+		private AdaptiveLimit(int initialLimit, int minLimit, int maxLimit, long targetLatencyNanos) {
+			this.limit = initialLimit;
+			this.minLimit = minLimit;
+			this.maxLimit = maxLimit;
+			this.targetLatencyNanos = targetLatencyNanos;
+			this.lastDecreaseNanos = System.nanoTime();
+		}
+
+		private boolean tryAcquire() {
+			for (;;) {
+				int current = inFlight.get();
+				if (current >= limit) {
+					return false;
+				}
+				if (inFlight.compareAndSet(current, current + 1)) {
+					return true;
+				}
+			}
+		}
+
+		private void release(long latencyNanos) {
+			int inFlightBefore = inFlight.getAndDecrement();
+			int current = limit;
+			if (latencyNanos > targetLatencyNanos) {
+				long now = System.nanoTime();
+				if (now - lastDecreaseNanos >= targetLatencyNanos) {
+					lastDecreaseNanos = now;
+					limit = Math.max(minLimit, current - Math.max(1, current / 10));
+				}
+			} else if (inFlightBefore * 2 >= current && current < maxLimit) {
+				// only grow when the limit is actually used
+				limit = current + 1;
+			}
+		}
+	}
+}
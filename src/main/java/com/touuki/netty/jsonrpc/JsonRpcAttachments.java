@@ -0,0 +1,175 @@
+package com.touuki.netty.jsonrpc;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.POJONode;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Binary params and results sent as raw segments before the JSON-RPC object
+ * instead of base64 strings. The object counts its segments in the
+ * {@code attachments} extension member, and a {@code byte[]}, {@link ByteBuf}
+ * or {@link ByteBuffer} param or result is replaced by
+ * <code>{"$attachment": index}</code>. Only the params themselves and the
+ * result itself are sent as segments, nested values are still base64.
+ * <p>
+ * On TCP a segment is a {@code 0} byte, its length as a 4-byte int and its
+ * bytes, the {@code 0} byte can't start a JSON text. On WebSocket a segment is
+ * a binary frame. At most {@link #MAX_SEGMENTS} segments of at most the max
+ * object length in total are kept for an object.
+ */
+class JsonRpcAttachments {
+	static final String MEMBER = "attachments";
+	static final byte SEGMENT_MARKER = 0;
+	/** The max count of segments before an object. */
+	static final int MAX_SEGMENTS = 64;
+	private static final String PLACEHOLDER = "$attachment";
+
+	private JsonRpcAttachments() {
+	}
+
+	static boolean isBinary(Object value) {
+		return value instanceof byte[] || value instanceof ByteBuf || value instanceof ByteBuffer;
+	}
+
+	/**
+	 * @param value a binary value, a {@link ByteBuf} is released once written
+	 * @return the value as a buffer, without copy
+	 */
+	static ByteBuf toByteBuf(Object value) {
+		if (value instanceof byte[]) {
+			return Unpooled.wrappedBuffer((byte[]) value);
+		} else if (value instanceof ByteBuffer) {
+			return Unpooled.wrappedBuffer(((ByteBuffer) value).duplicate());
+		}
+		return (ByteBuf) value;
+	}
+
+	static JsonNode placeholder(int index) {
+		return JsonUtils.MAPPER.createObjectNode().put(PLACEHOLDER, index);
+	}
+
+	/**
+	 * Convert the params to a tree, the binary params are added to the
+	 * attachments.
+	 */
+	static JsonNode toParams(JsonRpcCodec codec, Object params, List<ByteBuf> attachments) {
+		if (params instanceof Object[] || params instanceof Collection) {
+			Iterable<?> values = params instanceof Object[] ? Arrays.asList((Object[]) params)
+					: (Collection<?>) params;
+			ArrayNode arrayNode = JsonNodeFactory.instance.arrayNode();
+			for (Object value : values) {
+				arrayNode.add(toParam(codec, value, attachments));
+			}
+			return arrayNode;
+		} else if (params instanceof Map) {
+			ObjectNode objectNode = JsonNodeFactory.instance.objectNode();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) params).entrySet()) {
+				objectNode.set(String.valueOf(entry.getKey()), toParam(codec, entry.getValue(), attachments));
+			}
+			return objectNode;
+		}
+		return codec.valueToTree(params);
+	}
+
+	private static JsonNode toParam(JsonRpcCodec codec, Object value, List<ByteBuf> attachments) {
+		if (isBinary(value)) {
+			attachments.add(toByteBuf(value));
+			return placeholder(attachments.size() - 1);
+		}
+		return codec.valueToTree(value);
+	}
+
+	/**
+	 * @return the attachment the node refers to as a {@link POJONode} of the
+	 *         {@link ByteBuf}, or the node itself.
+	 * @throws JsonRpcException if the node refers to a missing attachment
+	 */
+	static JsonNode resolve(JsonNode node, List<ByteBuf> attachments) {
+		if (attachments == null || node == null || !node.isObject() || node.size() != 1) {
+			return node;
+		}
+		JsonNode index = node.get(PLACEHOLDER);
+		if (index == null) {
+			return node;
+		}
+		if (!index.canConvertToInt() || index.intValue() < 0 || index.intValue() >= attachments.size()) {
+			throw JsonRpcException.INVALID_REQUEST_EXCEPTION;
+		}
+		return new POJONode(attachments.get(index.intValue()));
+	}
+
+	/**
+	 * Replace the params referring to attachments.
+	 */
+	static void resolveParams(JsonNode params, List<ByteBuf> attachments) {
+		if (params instanceof ArrayNode) {
+			ArrayNode arrayNode = (ArrayNode) params;
+			for (int i = 0; i < arrayNode.size(); i++) {
+				arrayNode.set(i, resolve(arrayNode.get(i), attachments));
+			}
+		} else if (params instanceof ObjectNode) {
+			ObjectNode objectNode = (ObjectNode) params;
+			objectNode.fields().forEachRemaining(field -> field.setValue(resolve(field.getValue(), attachments)));
+		}
+	}
+
+	/**
+	 * @return the buffer of the node resolved from an attachment, or {@code null}.
+	 */
+	static ByteBuf getByteBuf(JsonNode node) {
+		if (node instanceof POJONode && ((POJONode) node).getPojo() instanceof ByteBuf) {
+			return (ByteBuf) ((POJONode) node).getPojo();
+		}
+		return null;
+	}
+
+	/**
+	 * @param buf  the attachment
+	 * @param type the type to convert to
+	 * @param view whether a {@link ByteBuf} or {@link ByteBuffer} can share the
+	 *             attachment, otherwise they're copied or retained
+	 * @return the converted value, or {@code null} if not a binary type
+	 */
+	static Object convert(ByteBuf buf, Class<?> type, boolean view) {
+		if (type == byte[].class) {
+			return ByteBufUtil.getBytes(buf);
+		} else if (type == ByteBuf.class) {
+			return view ? buf : buf.retainedDuplicate();
+		} else if (type == ByteBuffer.class) {
+			return view ? buf.nioBuffer() : ByteBuffer.wrap(ByteBufUtil.getBytes(buf));
+		}
+		return null;
+	}
+
+	static void release(List<ByteBuf> attachments) {
+		if (attachments != null) {
+			for (ByteBuf attachment : attachments) {
+				ReferenceCountUtil.safeRelease(attachment);
+			}
+		}
+	}
+
+	/**
+	 * A segment received before its JSON-RPC object.
+	 */
+	static final class Segment {
+		final ByteBuf content;
+
+		Segment(ByteBuf content) {
+			this.content = content;
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package com.touuki.netty.jsonrpc;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation for annotating idempotent server methods whose results can be
+ * cached by the params. Concurrent calls with the same params while the result
+ * is not cached are coalesced into one invocation. Methods taking a
+ * {@link io.netty.channel.Channel} are never cached.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface JsonRpcCacheable {
+
+	/**
+	 * @return how long a result is cached in milliseconds.
+	 */
+	long ttlMilliseconds() default 1000;
+
+	/**
+	 * @return the max number of results cached for the method.
+	 */
+	int maxSize() default 1024;
+}
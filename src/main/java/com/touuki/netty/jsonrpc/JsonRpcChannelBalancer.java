@@ -0,0 +1,207 @@
+package com.touuki.netty.jsonrpc;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.Channel;
+
+/**
+ * A pool of channels, possibly to several server nodes, which selects the
+ * channel with the fewest requests waiting for response, as tracked by
+ * {@link JsonRpcClientHandler#getPendingRequestCount(Channel)}. Closed channels
+ * are removed from the pool, and channels failing to reply to {@code rpc.ping}
+ * are ejected until they reply again if {@link #healthCheck} is started.
+ */
+public class JsonRpcChannelBalancer implements JsonRpcChannelSelector {
+	private static final Logger log = LoggerFactory.getLogger(JsonRpcChannelBalancer.class);
+
+	private final JsonRpcClientHandler client;
+	private final Strategy strategy;
+	private volatile Member[] members = new Member[0];
+
+	public JsonRpcChannelBalancer(JsonRpcClientHandler client) {
+		this(client, Strategy.POWER_OF_TWO_CHOICES);
+	}
+
+	public JsonRpcChannelBalancer(JsonRpcClientHandler client, Strategy strategy) {
+		this.client = client;
+		this.strategy = strategy;
+	}
+
+	public void add(Channel channel) {
+		synchronized (this) {
+			for (Member member : members) {
+				if (member.channel == channel) {
+					return;
+				}
+			}
+			Member[] newMembers = Arrays.copyOf(members, members.length + 1);
+			newMembers[members.length] = new Member(channel);
+			members = newMembers;
+		}
+		channel.closeFuture().addListener(future -> remove(channel));
+	}
+
+	public synchronized boolean remove(Channel channel) {
+		for (int i = 0; i < members.length; i++) {
+			if (members[i].channel == channel) {
+				Member[] newMembers = new Member[members.length - 1];
+				System.arraycopy(members, 0, newMembers, 0, i);
+				System.arraycopy(members, i + 1, newMembers, i, members.length - i - 1);
+				members = newMembers;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of channels in the pool, including the ejected ones.
+	 */
+	public int size() {
+		return members.length;
+	}
+
+	@Override
+	public Channel select() {
+		Member[] members = this.members;
+		switch (strategy) {
+		case LEAST_PENDING:
+			return selectLeastPending(members, Collections.emptySet());
+		case POWER_OF_TWO_CHOICES:
+		default:
+			return selectPowerOfTwoChoices(members);
+		}
+	}
+
+	/**
+	 * The least pending channel not excluded, whatever the strategy.
+	 */
+	@Override
+	public Channel select(Object routingKey, Collection<Channel> excluded) {
+		return selectLeastPending(members, excluded);
+	}
+
+	private Channel selectLeastPending(Member[] members, Collection<Channel> excluded) {
+		Channel best = null;
+		int bestPending = Integer.MAX_VALUE;
+		for (Member member : members) {
+			if (member.isAvailable() && !excluded.contains(member.channel)) {
+				int pending = client.getPendingRequestCount(member.channel);
+				if (pending < bestPending) {
+					best = member.channel;
+					bestPending = pending;
+				}
+			}
+		}
+		return best;
+	}
+
+	private Channel selectPowerOfTwoChoices(Member[] members) {
+		if (members.length <= 2) {
+			return selectLeastPending(members, Collections.emptySet());
+		}
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int first = random.nextInt(members.length);
+		int second = random.nextInt(members.length - 1);
+		if (second >= first) {
+			second++;
+		}
+		Member a = members[first];
+		Member b = members[second];
+		if (!a.isAvailable() || !b.isAvailable()) {
+			if (a.isAvailable()) {
+				return a.channel;
+			} else if (b.isAvailable()) {
+				return b.channel;
+			}
+			// both are down, fall back to a full scan
+			return selectLeastPending(members, Collections.emptySet());
+		}
+		return client.getPendingRequestCount(a.channel) <= client.getPendingRequestCount(b.channel) ? a.channel
+				: b.channel;
+	}
+
+	/**
+	 * Ping every channel of the pool periodically. A channel is ejected after
+	 * {@code maxFailures} consecutive pings fail or get no reply before the next
+	 * round, and comes back at its first successful ping.
+	 *
+	 * @param executor    the executor to schedule the pings
+	 * @param period      the period between two rounds, also the ping timeout
+	 * @param unit        the unit of period
+	 * @param maxFailures the consecutive failures to eject a channel
+	 * @return the future to cancel the health check
+	 */
+	public ScheduledFuture<?> healthCheck(ScheduledExecutorService executor, long period, TimeUnit unit,
+			int maxFailures) {
+		long timeoutMillis = Math.max(1, unit.toMillis(period));
+		return executor.scheduleWithFixedDelay(() -> {
+			for (Member member : members) {
+				member.ping(maxFailures, timeoutMillis);
+			}
+		}, period, period, unit);
+	}
+
+	public enum Strategy {
+		/**
+		 * Scan all the channels for the fewest pending requests.
+		 */
+		LEAST_PENDING,
+		/**
+		 * Pick two channels at random and take the one with fewer pending requests.
+		 */
+		POWER_OF_TWO_CHOICES
+	}
+
+	private class Member {
+		private final Channel channel;
+		private volatile boolean healthy = true;
+		private int failures;
+		private CompletableFuture<String> ping;
+
+		private Member(Channel channel) {
+			this.channel = channel;
+		}
+
+		private boolean isAvailable() {
+			return healthy && channel.isActive();
+		}
+
+		private void ping(int maxFailures, long timeoutMillis) {
+			if (ping != null) {
+				if (!ping.isDone() || ping.isCompletedExceptionally() || !"rpc.pong".equals(ping.getNow(null))) {
+					failures++;
+				} else {
+					failures = 0;
+				}
+				boolean newHealthy = failures < maxFailures;
+				if (healthy != newHealthy) {
+					log.warn("Channel {} {}: remoteAddress:{}", channel.id().asShortText(),
+							newHealthy ? "restored" : "ejected", channel.remoteAddress());
+					healthy = newHealthy;
+				}
+			}
+			if (!channel.isActive()) {
+				ping = null;
+				return;
+			}
+			try {
+				// removed from the pending requests by the next round, not to skew the balancing
+				ping = client.sendRequest(channel, "rpc.ping", null, String.class, timeoutMillis);
+			} catch (Exception e) {
+				ping = new CompletableFuture<>();
+				ping.completeExceptionally(e);
+			}
+		}
+	}
+}
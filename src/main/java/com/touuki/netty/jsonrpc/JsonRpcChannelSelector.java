@@ -0,0 +1,49 @@
+package com.touuki.netty.jsonrpc;
+
+import java.util.Collection;
+
+import io.netty.channel.Channel;
+
+/**
+ * Selects the channel to send a call to. A proxy method can take a selector
+ * instead of a {@link Channel} in its parameters, or a default selector can be
+ * given to {@link ProxyUtils#createClientProxy(ClassLoader, Class, JsonRpcClientHandler, JsonRpcChannelSelector)}.
+ *
+ * @see JsonRpcChannelBalancer
+ * @see JsonRpcConsistentHashRing
+ */
+public interface JsonRpcChannelSelector {
+
+	/**
+	 * @return the channel to send the call to, or {@code null} if none is
+	 *         available.
+	 */
+	Channel select();
+
+	/**
+	 * Select by the value of the parameter annotated by {@link JsonRpcRoutingKey}.
+	 * By default the key is ignored.
+	 *
+	 * @param routingKey the routing key, may be {@code null}
+	 * @return the channel to send the call to, or {@code null} if none is
+	 *         available.
+	 */
+	default Channel select(Object routingKey) {
+		return select();
+	}
+
+	/**
+	 * Select another channel to hedge or retry a call, see
+	 * {@link JsonRpcHedging}. By default it's the channel selected by the key if
+	 * not excluded.
+	 *
+	 * @param routingKey the routing key, may be {@code null}
+	 * @param excluded   the channels the call has been sent to
+	 * @return the channel to send the call to, or {@code null} if none is
+	 *         available.
+	 */
+	default Channel select(Object routingKey, Collection<Channel> excluded) {
+		Channel channel = select(routingKey);
+		return excluded.contains(channel) ? null : channel;
+	}
+}
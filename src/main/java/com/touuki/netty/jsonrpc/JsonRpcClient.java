@@ -0,0 +1,299 @@
+package com.touuki.netty.jsonrpc;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler.ClientHandshakeStateEvent;
+import io.netty.handler.codec.http.websocketx.WebSocketVersion;
+
+/**
+ * Connects channels to JSON-RPC servers, over a raw tcp or a websocket, with
+ * the pipeline assembled around {@link JsonRpcProtocolHandler} or
+ * {@link JsonRpcProtocolPassWebSocketHandler}. The channels share the event
+ * loops of the best available {@link JsonRpcTransport}, with the pooled
+ * allocator and {@code TCP_NODELAY}.
+ *
+ * <pre>
+ * JsonRpcClient client = JsonRpcClient.builder(jsonRpcClientHandler).build();
+ * Channel channel = client.connect("localhost", 8080).get();
+ * ...
+ * client.close();
+ * </pre>
+ */
+public class JsonRpcClient implements Closeable {
+	private final JsonRpcClientHandler jsonRpcClientHandler;
+	private final JsonRpcServerHandler jsonRpcServerHandler;
+	private final JsonRpcTransport transport;
+	private final EventLoopGroup eventLoopGroup;
+	private final String webSocketPath;
+	private final int maxObjectLength;
+	private final WriteBufferWaterMark writeBufferWaterMark;
+	private final Consumer<ChannelPipeline> pipelineInitializer;
+
+	private JsonRpcClient(Builder builder) {
+		this.jsonRpcClientHandler = builder.jsonRpcClientHandler;
+		this.jsonRpcServerHandler = builder.jsonRpcServerHandler;
+		this.transport = builder.transport != null ? builder.transport : JsonRpcTransport.best();
+		this.eventLoopGroup = transport.newEventLoopGroup(builder.eventLoopThreads);
+		this.webSocketPath = builder.webSocketPath;
+		this.maxObjectLength = builder.maxObjectLength;
+		this.writeBufferWaterMark = new WriteBufferWaterMark(builder.writeBufferLowWaterMark,
+				builder.writeBufferHighWaterMark);
+		this.pipelineInitializer = builder.pipelineInitializer;
+	}
+
+	public static Builder builder(JsonRpcClientHandler jsonRpcClientHandler) {
+		return new Builder(jsonRpcClientHandler);
+	}
+
+	public JsonRpcTransport getTransport() {
+		return transport;
+	}
+
+	public EventLoopGroup getEventLoopGroup() {
+		return eventLoopGroup;
+	}
+
+	public CompletableFuture<Channel> connect(String host, int port) {
+		return connect(InetSocketAddress.createUnresolved(host, port));
+	}
+
+	/**
+	 * @param remoteAddress the address of the server, an
+	 *                      {@link InetSocketAddress}, or a
+	 *                      {@link DomainSocketAddress} which needs the epoll
+	 *                      transport
+	 * @return the future of the channel, completed once requests can be sent, that
+	 *         is after the websocket handshake if any.
+	 */
+	public CompletableFuture<Channel> connect(SocketAddress remoteAddress) {
+		CompletableFuture<Channel> ready = new CompletableFuture<>();
+		Bootstrap bootstrap = new Bootstrap().group(eventLoopGroup).channel(transport.channelClass(remoteAddress))
+				.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+				.option(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark)
+				.handler(new ChannelInitializer<Channel>() {
+					@Override
+					protected void initChannel(Channel ch) throws URISyntaxException {
+						initPipeline(ch.pipeline(), remoteAddress, ready);
+					}
+				});
+		if (!(remoteAddress instanceof DomainSocketAddress)) {
+			bootstrap.option(ChannelOption.TCP_NODELAY, true);
+		}
+		ChannelFuture connectFuture = bootstrap.connect(remoteAddress);
+		connectFuture.addListener(future -> {
+			if (!future.isSuccess()) {
+				ready.completeExceptionally(future.cause());
+			}
+		});
+		return ready;
+	}
+
+	private void initPipeline(ChannelPipeline pipeline, SocketAddress remoteAddress, CompletableFuture<Channel> ready)
+			throws URISyntaxException {
+		if (pipelineInitializer != null) {
+			pipelineInitializer.accept(pipeline);
+		}
+		if (webSocketPath != null) {
+			URI uri;
+			if (remoteAddress instanceof InetSocketAddress) {
+				InetSocketAddress address = (InetSocketAddress) remoteAddress;
+				uri = new URI("ws", null, address.getHostString(), address.getPort(), webSocketPath, null, null);
+			} else {
+				uri = new URI("ws", null, "localhost", -1, webSocketPath, null, null);
+			}
+			pipeline.addLast(new HttpClientCodec());
+			pipeline.addLast(new HttpObjectAggregator(65536));
+			pipeline.addLast(new WebSocketClientProtocolHandler(WebSocketClientHandshakerFactory.newHandshaker(uri,
+					WebSocketVersion.V13, null, false, new DefaultHttpHeaders(), maxObjectLength)));
+			pipeline.addLast(new ReadyHandler(ready, true));
+			pipeline.addLast(
+					new JsonRpcProtocolPassWebSocketHandler(jsonRpcClientHandler, jsonRpcServerHandler, maxObjectLength));
+		} else {
+			pipeline.addLast(new ReadyHandler(ready, false));
+			pipeline.addLast(new JsonRpcProtocolHandler(jsonRpcClientHandler, jsonRpcServerHandler, maxObjectLength));
+		}
+	}
+
+	/**
+	 * Shut the event loops down, which closes the connected channels.
+	 */
+	@Override
+	public void close() {
+		eventLoopGroup.shutdownGracefully().syncUninterruptibly();
+	}
+
+	/**
+	 * Completes the future of the channel once it's active, or once the websocket
+	 * handshake is complete, then removes itself.
+	 */
+	private static class ReadyHandler extends ChannelInboundHandlerAdapter {
+		private final CompletableFuture<Channel> ready;
+		private final boolean webSocket;
+
+		private ReadyHandler(CompletableFuture<Channel> ready, boolean webSocket) {
+			this.ready = ready;
+			this.webSocket = webSocket;
+		}
+
+		@Override
+		public void channelActive(ChannelHandlerContext ctx) throws Exception {
+			// the handlers after this one are ready once the event is propagated
+			ctx.fireChannelActive();
+			if (!webSocket) {
+				ready.complete(ctx.channel());
+				ctx.pipeline().remove(this);
+			}
+		}
+
+		@Override
+		public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+			ctx.fireUserEventTriggered(evt);
+			if (evt == ClientHandshakeStateEvent.HANDSHAKE_COMPLETE) {
+				ready.complete(ctx.channel());
+				ctx.pipeline().remove(this);
+			}
+		}
+
+		@Override
+		public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+			ready.completeExceptionally(new ClosedChannelException());
+			ctx.fireChannelInactive();
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+			if (ready.completeExceptionally(cause)) {
+				ctx.close();
+			} else {
+				ctx.fireExceptionCaught(cause);
+			}
+		}
+	}
+
+	public static class Builder {
+		private final JsonRpcClientHandler jsonRpcClientHandler;
+		private JsonRpcServerHandler jsonRpcServerHandler;
+		private JsonRpcTransport transport;
+		private int eventLoopThreads;
+		private String webSocketPath;
+		private int maxObjectLength = JsonRpcProtocolHandler.DEFAULT_MAX_OBJECT_LENGTH;
+		private int writeBufferLowWaterMark = JsonRpcServer.DEFAULT_WRITE_BUFFER_LOW_WATER_MARK;
+		private int writeBufferHighWaterMark = JsonRpcServer.DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK;
+		private Consumer<ChannelPipeline> pipelineInitializer;
+
+		private Builder(JsonRpcClientHandler jsonRpcClientHandler) {
+			this.jsonRpcClientHandler = jsonRpcClientHandler;
+		}
+
+		/**
+		 * Used for handling the requests of the servers in the same channels.
+		 *
+		 * @param jsonRpcServerHandler the server handler
+		 * @return this builder
+		 */
+		public Builder serverHandler(JsonRpcServerHandler jsonRpcServerHandler) {
+			this.jsonRpcServerHandler = jsonRpcServerHandler;
+			return this;
+		}
+
+		/**
+		 * @param transport the transport, {@link JsonRpcTransport#best()} by default
+		 * @return this builder
+		 */
+		public Builder transport(JsonRpcTransport transport) {
+			this.transport = transport;
+			return this;
+		}
+
+		/**
+		 * @param eventLoopThreads the number of event loops, 0 for the Netty default
+		 * @return this builder
+		 */
+		public Builder eventLoopThreads(int eventLoopThreads) {
+			if (eventLoopThreads < 0) {
+				throw new IllegalArgumentException("eventLoopThreads must not be negative");
+			}
+			this.eventLoopThreads = eventLoopThreads;
+			return this;
+		}
+
+		/**
+		 * Connect over a websocket at the path instead of a raw tcp.
+		 *
+		 * @param webSocketPath the websocket path, like {@code "/jsonrpc"}
+		 * @return this builder
+		 */
+		public Builder webSocketPath(String webSocketPath) {
+			this.webSocketPath = webSocketPath;
+			return this;
+		}
+
+		/**
+		 * @param maxObjectLength the max length of a message, also the max websocket
+		 *                        frame length
+		 * @return this builder
+		 */
+		public Builder maxObjectLength(int maxObjectLength) {
+			this.maxObjectLength = maxObjectLength;
+			return this;
+		}
+
+		/**
+		 * @param low  the low water mark
+		 * @param high the high water mark
+		 * @return this builder
+		 * @see JsonRpcServer.Builder#writeBufferWaterMark(int, int)
+		 */
+		public Builder writeBufferWaterMark(int low, int high) {
+			if (low < 0 || high < low) {
+				throw new IllegalArgumentException("Invalid water marks");
+			}
+			this.writeBufferLowWaterMark = low;
+			this.writeBufferHighWaterMark = high;
+			return this;
+		}
+
+		/**
+		 * Add handlers to the pipeline of every connected channel before the JSON-RPC
+		 * ones, like an {@code SslHandler} or an {@code IdleStateHandler}.
+		 *
+		 * @param pipelineInitializer called with the pipeline of the channel
+		 * @return this builder
+		 */
+		public Builder pipeline(Consumer<ChannelPipeline> pipelineInitializer) {
+			this.pipelineInitializer = pipelineInitializer;
+			return this;
+		}
+
+		/**
+		 * @return a client with its own event loops
+		 */
+		public JsonRpcClient build() {
+			return new JsonRpcClient(this);
+		}
+	}
+}
@@ -2,7 +2,11 @@ package com.touuki.netty.jsonrpc;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.nio.channels.ClosedChannelException;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
@@ -14,11 +18,13 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.BinaryNode;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.group.ChannelGroup;
@@ -38,10 +44,20 @@ public class JsonRpcClientHandler extends SimpleChannelInboundHandler<JsonRpcRes
 	public static final String JSONRPC_VERSION = "2.0";
 	private static final AttributeKey<Map<Long, Request>> REQUEST_FOR_ID = AttributeKey.valueOf("REQUEST_FOR_ID");
 	private static final AttributeKey<AtomicLong> REQUEST_NEXT_ID = AttributeKey.valueOf("REQUEST_NEXT_ID");
+	private static final AttributeKey<Map<String, CompletableFuture<Object>>> REQUEST_FOR_KEY = AttributeKey
+			.valueOf("REQUEST_FOR_KEY");
 	private final ObjectMapper mapper;
 	private final boolean autoPing;
 
 	private int maxTimeoutSecond = 60;
+	private boolean deduplicateRequests = false;
+	private boolean propagateCancellation = true;
+	private boolean propagateDeadline = false;
+	private boolean binaryAttachments = false;
+	private JsonRpcMetrics metrics = JsonRpcMetrics.NOOP;
+	private JsonRpcTracer tracer;
+	private JsonRpcCodec codec;
+	private JsonRpcRetryBudget retryBudget = new JsonRpcRetryBudget();
 
 	private final ScheduledExecutorService executor;
 
@@ -56,12 +72,22 @@ public class JsonRpcClientHandler extends SimpleChannelInboundHandler<JsonRpcRes
 	public JsonRpcClientHandler(ObjectMapper mapper, boolean autoPing, ScheduledExecutorService executor) {
 		super();
 		this.mapper = mapper;
+		this.codec = new JacksonJsonRpcCodec(mapper);
 		this.autoPing = autoPing;
 		this.executor = executor;
 	}
 
 	@Override
 	protected void channelRead0(ChannelHandlerContext ctx, JsonRpcResponse msg) {
+		try {
+			handleResponse(ctx, msg);
+		} finally {
+			JsonRpcAttachments.release(msg.getAttachments());
+		}
+	}
+
+	private void handleResponse(ChannelHandlerContext ctx, JsonRpcResponse msg) {
+		long parsedNanos = tracer == null ? 0 : System.nanoTime();
 		Long id = null;
 		if (msg.getId() != null) {
 			try {				
@@ -83,7 +109,15 @@ public class JsonRpcClientHandler extends SimpleChannelInboundHandler<JsonRpcRes
 			} else {
 				Request webSocketRequest = ctx.channel().attr(REQUEST_FOR_ID).get().remove(id);
 				if (webSocketRequest != null) {
-					webSocketRequest.getOnReply().completeExceptionally(msg.getError());
+					traceReceived(ctx.channel(), webSocketRequest.getTrace(), parsedNanos);
+				}
+				if (webSocketRequest != null) {
+					if (webSocketRequest.getOnReply().completeExceptionally(msg.getError())) {
+						metrics.clientCallCompleted(webSocketRequest.getMethod(),
+								System.nanoTime() - webSocketRequest.getStartNanos(), true);
+					} else {
+						metrics.clientCallCancelled(webSocketRequest.getMethod());
+					}
 				}
 			}
 		} else {
@@ -94,28 +128,65 @@ public class JsonRpcClientHandler extends SimpleChannelInboundHandler<JsonRpcRes
 			} else {
 				Request request = ctx.channel().attr(REQUEST_FOR_ID).get().remove(id);
 				if (request != null) {
+					traceReceived(ctx.channel(), request.getTrace(), parsedNanos);
+					boolean error = false;
+					boolean completed;
 					try {
-						Object result = constructResponseObject(request.getResponseType(), msg.getResult());
-						request.getOnReply().complete(result);
+						Object result = constructResponseObject(request.getResponseType(),
+								JsonRpcAttachments.resolve(msg.getResult(), msg.getAttachments()));
+						completed = request.getOnReply().complete(result);
 					} catch (IOException e) {
-						request.getOnReply().completeExceptionally(e);
+						error = true;
+						completed = request.getOnReply().completeExceptionally(e);
+					}
+					if (completed) {
+						metrics.clientCallCompleted(request.getMethod(), System.nanoTime() - request.getStartNanos(),
+								error);
+					} else {
+						metrics.clientCallCancelled(request.getMethod());
 					}
 				}
 			}
 		}
 	}
 
+	private static void traceReceived(Channel channel, JsonRpcTrace trace, long parsedNanos) {
+		if (trace == null) {
+			return;
+		}
+		long[] inbound = channel.attr(JsonRpcTracer.INBOUND).get();
+		if (inbound != null) {
+			trace.mark(JsonRpcTrace.Phase.RECEIVED, inbound[0]);
+			trace.mark(JsonRpcTrace.Phase.FRAMED, inbound[1]);
+		}
+		trace.mark(JsonRpcTrace.Phase.PARSED, parsedNanos);
+	}
+
 	@Override
 	public void channelActive(ChannelHandlerContext ctx) throws Exception {
 		ctx.channel().attr(REQUEST_FOR_ID).setIfAbsent(new ConcurrentHashMap<>());
 		ctx.channel().attr(REQUEST_NEXT_ID).setIfAbsent(new AtomicLong(0));
+		ctx.channel().attr(REQUEST_FOR_KEY).setIfAbsent(new ConcurrentHashMap<>());
 		ctx.fireChannelActive();
 	}
 
 	@Override
 	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
-		ctx.channel().attr(REQUEST_FOR_ID).set(null);
+		Map<Long, Request> pending = ctx.channel().attr(REQUEST_FOR_ID).getAndSet(null);
+		if (pending != null && !pending.isEmpty()) {
+			// fail fast instead of waiting for the timeout, so the calls can be retried
+			ClosedChannelException cause = new ClosedChannelException();
+			for (Request request : pending.values()) {
+				if (request.getOnReply().completeExceptionally(cause)) {
+					metrics.clientCallCompleted(request.getMethod(), System.nanoTime() - request.getStartNanos(),
+							true);
+				} else {
+					metrics.clientCallCancelled(request.getMethod());
+				}
+			}
+		}
 		ctx.channel().attr(REQUEST_NEXT_ID).set(null);
+		ctx.channel().attr(REQUEST_FOR_KEY).set(null);
 		ctx.fireChannelInactive();
 	}
 	
@@ -140,45 +211,351 @@ public class JsonRpcClientHandler extends SimpleChannelInboundHandler<JsonRpcRes
 		ctx.channel().close();
 	}
 
+	public int getMaxTimeoutSecond() {
+		return maxTimeoutSecond;
+	}
+
+	public void setMaxTimeoutSecond(int maxTimeoutSecond) {
+		this.maxTimeoutSecond = maxTimeoutSecond;
+	}
+
+	public boolean isDeduplicateRequests() {
+		return deduplicateRequests;
+	}
+
+	/**
+	 * @param deduplicateRequests whether a request sent while the same request,
+	 *                            with the same method, params and response type, is
+	 *                            pending on the channel shares its response instead
+	 *                            of being sent again. Only for idempotent methods,
+	 *                            the response object is shared by the callers.
+	 */
+	public void setDeduplicateRequests(boolean deduplicateRequests) {
+		this.deduplicateRequests = deduplicateRequests;
+	}
+
+	public boolean isPropagateCancellation() {
+		return propagateCancellation;
+	}
+
+	/**
+	 * @param propagateCancellation whether a request cancelled or timed out is
+	 *                              cancelled on the server too, by sending
+	 *                              {@code rpc.cancel} with its id.
+	 */
+	public void setPropagateCancellation(boolean propagateCancellation) {
+		this.propagateCancellation = propagateCancellation;
+	}
+
+	public boolean isPropagateDeadline() {
+		return propagateDeadline;
+	}
+
+	/**
+	 * @param propagateDeadline whether the requests carry their timeout in the
+	 *                          {@code deadline} extension member, so the server can
+	 *                          skip the calls nobody waits for. The server must
+	 *                          tolerate unknown members.
+	 */
+	public void setPropagateDeadline(boolean propagateDeadline) {
+		this.propagateDeadline = propagateDeadline;
+	}
+
+	public boolean isBinaryAttachments() {
+		return binaryAttachments;
+	}
+
+	/**
+	 * @param binaryAttachments whether the {@code byte[]}, {@link ByteBuf} and
+	 *                          {@link java.nio.ByteBuffer} params are sent as
+	 *                          binary segments instead of base64. A
+	 *                          {@link ByteBuf} param is released once written. The
+	 *                          server must support it, the binary results are
+	 *                          always received.
+	 */
+	public void setBinaryAttachments(boolean binaryAttachments) {
+		this.binaryAttachments = binaryAttachments;
+	}
+
+	public JsonRpcMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(JsonRpcMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public JsonRpcCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * @param codec the codec of the params sent and the results received, a
+	 *              {@link JacksonJsonRpcCodec} of the mapper by default
+	 */
+	public void setCodec(JsonRpcCodec codec) {
+		this.codec = codec;
+	}
+
+	public JsonRpcTracer getTracer() {
+		return tracer;
+	}
+
+	/**
+	 * @param tracer the tracer of the requests sent, or {@code null} to trace
+	 *               only the requests sent while invoking a traced call
+	 */
+	public void setTracer(JsonRpcTracer tracer) {
+		this.tracer = tracer;
+	}
+
+	public JsonRpcRetryBudget getRetryBudget() {
+		return retryBudget;
+	}
+
+	/**
+	 * @param retryBudget the budget of the hedges and retries of the methods
+	 *                    annotated by {@link JsonRpcHedging}
+	 */
+	public void setRetryBudget(JsonRpcRetryBudget retryBudget) {
+		this.retryBudget = retryBudget;
+	}
+
+	ScheduledExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * @param channel the channel
+	 * @return the number of requests waiting for response on the channel.
+	 */
+	public int getPendingRequestCount(Channel channel) {
+		Map<Long, Request> map = channel.attr(REQUEST_FOR_ID).get();
+		return map == null ? 0 : map.size();
+	}
+
 	public <T> CompletableFuture<T> sendRequest(Channel channel, String method, Object params, Class<T> responseType)
 			throws Exception {
 		return sendRequest(channel, method, params, (Type) responseType);
 	}
 
-	public CompletableFuture sendRequest(Channel channel, String method, Object params, Type responseType) throws Exception{
-		CompletableFuture result = new CompletableFuture<>();
-		// int requestId = ThreadLocalRandom.current().nextInt();
-		long requestId = channel.attr(REQUEST_NEXT_ID).get().getAndIncrement();
+	public <T> CompletableFuture<T> sendRequest(Channel channel, String method, Object params, Type responseType)
+			throws Exception {
+		return sendRequest(channel, method, params, responseType, TimeUnit.SECONDS.toMillis(maxTimeoutSecond));
+	}
 
-		channel.attr(REQUEST_FOR_ID).get().put(requestId, new Request(result, responseType));
+	/**
+	 * Send a request which times out after the timeout, or the remaining time of
+	 * the call being invoked by the current thread if shorter, see
+	 * {@link JsonRpcContext}.
+	 *
+	 * @param channel       the channel
+	 * @param method        the method
+	 * @param params        the params
+	 * @param responseType  the type of the result
+	 * @param timeoutMillis the timeout in milliseconds
+	 * @return the future of the result, completed exceptionally if the request
+	 *         can't be written
+	 * @throws Exception if failed to send the request
+	 */
+	public <T> CompletableFuture<T> sendRequest(Channel channel, String method, Object params, Type responseType,
+			long timeoutMillis) throws Exception {
+		JsonRpcContext context = JsonRpcContext.current();
+		if (context != null && context.hasDeadline()) {
+			timeoutMillis = Math.min(timeoutMillis, context.getRemaining(TimeUnit.MILLISECONDS));
+			if (timeoutMillis <= 0) {
+				CompletableFuture<T> result = new CompletableFuture<>();
+				result.completeExceptionally(new TimeoutException("Deadline exceeded."));
+				return result;
+			}
+		}
+		String traceId = context == null || method.startsWith("rpc.") ? null : context.getTraceId();
+		JsonRpcTrace trace = tracer == null || method.startsWith("rpc.") ? null
+				: tracer.startClient(channel, method, traceId);
+		if (trace != null) {
+			traceId = trace.getTraceId();
+		}
+		JsonNode paramsNode;
+		List<ByteBuf> attachments = null;
+		if (binaryAttachments) {
+			attachments = new ArrayList<>(1);
+			paramsNode = JsonRpcAttachments.toParams(codec, params, attachments);
+			if (attachments.isEmpty()) {
+				attachments = null;
+			}
+		} else {
+			paramsNode = codec.valueToTree(params);
+		}
+		if (trace != null) {
+			trace.mark(JsonRpcTrace.Phase.BOUND);
+		}
+		// the key of the requests with attachments doesn't cover the attachments
+		if (!deduplicateRequests || "rpc.ping".equals(method) || attachments != null) {
+			CompletableFuture<Object> result = new CompletableFuture<>();
+			sendRequest(channel, method, paramsNode, attachments, responseType, timeoutMillis, result, traceId,
+					trace);
+			return typed(result);
+		}
+
+		String key = method + '\n' + responseType.getTypeName() + '\n' + paramsNode;
+		Map<String, CompletableFuture<Object>> pending = channel.attr(REQUEST_FOR_KEY).get();
+		if (pending == null) {
+			throw new ClosedChannelException();
+		}
+		CompletableFuture<Object> result = new CompletableFuture<>();
+		CompletableFuture<Object> existing;
+		while ((existing = pending.putIfAbsent(key, result)) != null) {
+			if (!existing.isDone()) {
+				// a copy, so a caller cancelling its future doesn't cancel the others
+				return typed(existing.thenApply(response -> response));
+			} else if (pending.replace(key, existing, result)) {
+				break;
+			}
+		}
+		CompletableFuture<Object> copy = result.thenApply(response -> response);
+		// registered last to run first, before the caller can send again
+		result.whenComplete((response, cause) -> pending.remove(key, result));
 		try {
-			channel.writeAndFlush(new JsonRpcRequest(JSONRPC_VERSION, requestId, method, mapper.valueToTree(params))).get();
+			sendRequest(channel, method, paramsNode, null, responseType, timeoutMillis, result, traceId, trace);
 		} catch (Exception e) {
-			channel.attr(REQUEST_FOR_ID).get().remove(requestId);
+			result.completeExceptionally(e);
 			throw e;
 		}
+		return typed(copy);
+	}
+
+	/**
+	 * The futures of the requests are completed with values of their response
+	 * types.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> CompletableFuture<T> typed(CompletableFuture<Object> future) {
+		return (CompletableFuture<T>) (CompletableFuture<?>) future;
+	}
+
+	/**
+	 * @param traceId the trace id sent with the request, may be {@code null}
+	 * @param trace   the trace of the request if sampled, may be {@code null}
+	 */
+	private void sendRequest(Channel channel, String method, JsonNode params, List<ByteBuf> attachments,
+			Type responseType, long timeoutMillis, CompletableFuture<Object> result, String traceId, JsonRpcTrace trace)
+			throws Exception {
+		AtomicLong nextId = channel.attr(REQUEST_NEXT_ID).get();
+		Map<Long, Request> requestForId = channel.attr(REQUEST_FOR_ID).get();
+		if (nextId == null || requestForId == null) {
+			throw new ClosedChannelException();
+		}
+		// int requestId = ThreadLocalRandom.current().nextInt();
+		long requestId = nextId.getAndIncrement();
+
+		long startNanos = System.nanoTime();
+		if (trace != null) {
+			trace.setId(requestId);
+		}
+		requestForId.put(requestId, new Request(result, responseType, method, startNanos, trace));
+		metrics.clientCallStarted(method);
+		Long deadline = propagateDeadline && !method.startsWith("rpc.") ? timeoutMillis : null;
+		JsonRpcRequest request = new JsonRpcRequest(JSONRPC_VERSION, requestId, method, params, deadline, traceId);
+		request.setAttachments(attachments);
+		request.setTrace(trace);
+		// not waiting for the write, the caller may be an event loop or a timer shared by the channels
+		channel.writeAndFlush(request).addListener(future -> {
+			if (future.isSuccess()) {
+				if (trace != null) {
+					trace.mark(JsonRpcTrace.Phase.WRITTEN);
+				}
+			} else if (requestForId.remove(requestId) != null) {
+				if (result.completeExceptionally(future.cause())) {
+					metrics.clientCallCompleted(method, System.nanoTime() - startNanos, true);
+				} else {
+					metrics.clientCallCancelled(method);
+				}
+			}
+		});
+		result.whenComplete((response, cause) -> {
+			if (cause instanceof CancellationException || cause instanceof TimeoutException) {
+				cancelRequest(channel, requestId, method);
+			}
+			if (trace != null) {
+				trace.mark(JsonRpcTrace.Phase.COMPLETED);
+				trace.setError(cause != null);
+				trace.complete();
+			}
+		});
+		if (result.isDone()) {
+			// failed to write
+			return;
+		}
 		executor.schedule(() -> {
 			Map<Long, Request> map = channel.attr(REQUEST_FOR_ID).get(); // TODO 测试close以后是否会清除attr
-			if (map != null) {
-				map.remove(requestId);
+			// the outcome of a request is reported by whoever removes it
+			if (map != null && map.remove(requestId) != null) {
+				if (result.completeExceptionally(new TimeoutException("Reach the max timeout limit."))) {
+					metrics.clientCallTimedOut(method);
+				} else {
+					metrics.clientCallCancelled(method);
+				}
 			}
-			result.completeExceptionally(new TimeoutException("Reach the max timeout limit."));
-		}, maxTimeoutSecond, TimeUnit.SECONDS);
-		return result;
+		}, timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void cancelRequest(Channel channel, long requestId, String method) {
+		Map<Long, Request> map = channel.attr(REQUEST_FOR_ID).get();
+		if (map != null && map.remove(requestId) != null) {
+			metrics.clientCallCancelled(method);
+		}
+		if (propagateCancellation && channel.isActive()) {
+			channel.writeAndFlush(new JsonRpcRequest(JSONRPC_VERSION, null, "rpc.cancel",
+					mapper.createArrayNode().add(requestId)));
+		}
+	}
+
+	/**
+	 * Subscribe the topics of the {@link JsonRpcTopicPublisher} of the server.
+	 * The published values are received as notifications called by the topic
+	 * names, handled by the server handler of the channel.
+	 *
+	 * @param channel the channel
+	 * @param topics  the topic names
+	 * @return the future completed when subscribed
+	 * @throws Exception if failed to send the request
+	 */
+	public CompletableFuture<Void> subscribe(Channel channel, String... topics) throws Exception {
+		return sendRequest(channel, "rpc.subscribe", topics, Void.class);
+	}
+
+	public CompletableFuture<Void> unsubscribe(Channel channel, String... topics) throws Exception {
+		return sendRequest(channel, "rpc.unsubscribe", topics, Void.class);
 	}
 
 	public ChannelFuture sendNotification(Channel channel, String method, Object params) {
-		return channel.writeAndFlush(new JsonRpcRequest(JSONRPC_VERSION, null, method, mapper.valueToTree(params)));
+		return channel.writeAndFlush(new JsonRpcRequest(JSONRPC_VERSION, null, method, codec.valueToTree(params)));
 	}
 
 	public ChannelGroupFuture sendNotification(ChannelGroup channelGroup, String method, Object params) {
 		return channelGroup
-				.writeAndFlush(new JsonRpcRequest(JSONRPC_VERSION, null, method, mapper.valueToTree(params)));
+				.writeAndFlush(new JsonRpcRequest(JSONRPC_VERSION, null, method, codec.valueToTree(params)));
+	}
+
+	/**
+	 * @param params the params of a call
+	 * @return the params encoded as the key of a cache
+	 */
+	String toCacheKey(Object params) throws JsonProcessingException {
+		return mapper.writeValueAsString(params);
 	}
 
 	private Object constructResponseObject(Type returnType, JsonNode jsonNode) throws IOException {
-		JsonParser returnJsonParser = mapper.treeAsTokens(jsonNode);
-		JavaType returnJavaType = mapper.getTypeFactory().constructType(returnType);
-		return mapper.readValue(returnJsonParser, returnJavaType);
+		ByteBuf attachment = JsonRpcAttachments.getByteBuf(jsonNode);
+		if (attachment != null) {
+			// the attachments are released after the response, so a copy or a retained one
+			Object converted = JsonRpcAttachments.convert(attachment,
+					mapper.getTypeFactory().constructType(returnType).getRawClass(), false);
+			if (converted != null) {
+				return converted;
+			}
+			jsonNode = BinaryNode.valueOf(ByteBufUtil.getBytes(attachment));
+		}
+		return codec.treeToValue(jsonNode, returnType);
 	}
 }
@@ -0,0 +1,377 @@
+package com.touuki.netty.jsonrpc;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.netty.channel.Channel;
+import io.netty.channel.group.ChannelGroup;
+
+/**
+ * A method of a client interface, resolved once from its annotations, with the
+ * near cache and the hedging of its calls. Built by reflection for the proxies
+ * of {@link ProxyUtils}, or by the stubs generated by
+ * {@code netty-jsonrpc-codegen} through its {@link #builder(String, Type)}.
+ */
+public final class JsonRpcClientMethod {
+	private static final Object NULL_RESULT = new Object();
+
+	private final String name;
+	private final Type returnType;
+	private final boolean notification;
+	private final long timeoutMilliseconds;
+	private final boolean paramsPassByObject;
+	private final boolean varArgs;
+	private final String[] paramNames;
+	private final Class<?>[] paramTypes;
+	private final int routingKeyIndex;
+	private final ResultCache<Object> nearCache;
+	private final HedgedRequest.Policy hedging;
+
+	private JsonRpcClientMethod(Builder builder) {
+		this.name = builder.name;
+		this.returnType = builder.returnType;
+		switch (builder.requestMode) {
+		case REQUEST:
+			this.notification = false;
+			break;
+		case NOTIFICATION:
+			this.notification = true;
+			break;
+		case AUTO:
+		default:
+			this.notification = builder.returnType == Void.class;
+			break;
+		}
+		this.timeoutMilliseconds = builder.timeoutMilliseconds;
+		this.paramsPassByObject = builder.paramsPassByObject;
+		this.varArgs = builder.varArgs;
+		this.paramNames = builder.paramNames.toArray(new String[0]);
+		this.paramTypes = builder.paramTypes.toArray(new Class<?>[0]);
+		this.routingKeyIndex = builder.routingKeyIndex;
+		this.nearCache = !builder.cacheable ? null
+				: new ResultCache<>(builder.cacheMaxSize, TimeUnit.MILLISECONDS.toNanos(builder.cacheTtlMilliseconds));
+		this.hedging = !builder.hedged ? null
+				: new HedgedRequest.Policy(builder.hedgingDelayMilliseconds, builder.hedgingDelayPercentile,
+						builder.hedgingMaxHedges, builder.hedgingMaxRetries);
+	}
+
+	/**
+	 * @param name       the name of the remote method
+	 * @param returnType the generic return type of the Java method
+	 * @return a builder of the method
+	 */
+	public static Builder builder(String name, Type returnType) {
+		return new Builder(name, returnType);
+	}
+
+	/**
+	 * Resolve the method from its {@link JsonRpcMethod}, {@link JsonRpcParam},
+	 * {@link JsonRpcRoutingKey}, {@link JsonRpcCacheable} and
+	 * {@link JsonRpcHedging} annotations.
+	 *
+	 * @param method the method of the client interface
+	 * @return the client method
+	 */
+	public static JsonRpcClientMethod of(Method method) {
+		JsonRpcMethod jsonRpcMethod = method.getAnnotation(JsonRpcMethod.class);
+		Builder builder;
+		if (jsonRpcMethod == null) {
+			builder = builder(method.getName(), method.getGenericReturnType());
+		} else {
+			builder = builder("".equals(jsonRpcMethod.value()) ? method.getName() : jsonRpcMethod.value(),
+					method.getGenericReturnType()).requestMode(jsonRpcMethod.requestMode())
+							.timeoutMilliseconds(jsonRpcMethod.timeoutMilliseconds())
+							.paramsPassByObject(jsonRpcMethod.paramsPassByObject());
+		}
+		for (Parameter parameter : method.getParameters()) {
+			JsonRpcParam jsonRpcParam = parameter.getAnnotation(JsonRpcParam.class);
+			String paramName = jsonRpcParam != null ? jsonRpcParam.value() : parameter.getName();
+			if (parameter.isAnnotationPresent(JsonRpcRoutingKey.class)) {
+				builder.routingKeyParam(paramName, parameter.getType());
+			} else {
+				builder.param(paramName, parameter.getType());
+			}
+		}
+		builder.varArgs(method.isVarArgs());
+		JsonRpcCacheable cacheable = method.getAnnotation(JsonRpcCacheable.class);
+		if (cacheable != null) {
+			builder.cacheable(cacheable.maxSize(), cacheable.ttlMilliseconds());
+		}
+		JsonRpcHedging hedging = method.getAnnotation(JsonRpcHedging.class);
+		if (hedging != null) {
+			builder.hedging(hedging.delayMilliseconds(), hedging.delayPercentile(), hedging.maxHedges(),
+					hedging.maxRetries());
+		}
+		return builder.build();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Type getReturnType() {
+		return returnType;
+	}
+
+	public boolean isNotification() {
+		return notification;
+	}
+
+	/**
+	 * Send a call of the method and wait for its result, unless it's a
+	 * notification.
+	 *
+	 * @param client          the client handler to send the call
+	 * @param defaultSelector the selector of the channel if no channel, group or
+	 *                        selector is given in the arguments, may be
+	 *                        {@code null}
+	 * @param args            the arguments of the Java method
+	 * @return the result
+	 * @throws Throwable a {@link JsonRpcException} returned by the server, a
+	 *                   {@link ChannelNotFoundException}, a
+	 *                   {@link RuntimeException} wrapping the other failures, or
+	 *                   an exception thrown while sending the call
+	 */
+	public Object invoke(JsonRpcClientHandler client, JsonRpcChannelSelector defaultSelector, Object[] args)
+			throws Throwable {
+		Channel channel = null;
+		ChannelGroup channelGroup = null;
+		JsonRpcChannelSelector selector = null;
+		Object routingKey = null;
+		Map<String, Object> argumentForName = new LinkedHashMap<>();
+		for (int i = 0; i < paramTypes.length; i++) {
+			Class<?> type = paramTypes[i];
+			if (Channel.class.isAssignableFrom(type)) {
+				channel = (Channel) args[i];
+				continue;
+			} else if (ChannelGroup.class.isAssignableFrom(type)) {
+				channelGroup = (ChannelGroup) args[i];
+				continue;
+			} else if (JsonRpcChannelSelector.class.isAssignableFrom(type)) {
+				selector = (JsonRpcChannelSelector) args[i];
+				continue;
+			}
+			if (i == routingKeyIndex) {
+				routingKey = args[i];
+			}
+			if (i == paramTypes.length - 1 && varArgs && !paramsPassByObject) {
+				int length = Array.getLength(args[i]);
+				for (int j = 0; j < length; j++) {
+					argumentForName.put(paramNames[i] + "[" + j + "]", Array.get(args[i], j));
+				}
+			} else {
+				argumentForName.put(paramNames[i], args[i]);
+			}
+		}
+		Object arguments = paramsPassByObject ? argumentForName : argumentForName.values();
+		if (channel == null && channelGroup == null) {
+			if (selector == null) {
+				selector = defaultSelector;
+			}
+			if (selector != null) {
+				channel = selector.select(routingKey);
+			}
+		}
+
+		try {
+			if (notification) {
+				if (channelGroup != null) {
+					client.sendNotification(channelGroup, name, arguments).get();
+					return null;
+				} else if (channel != null) {
+					client.sendNotification(channel, name, arguments).get();
+					return null;
+				} else {
+					throw new ChannelNotFoundException("No proper channel found to send notification");
+				}
+			} else {
+				String cacheKey = null;
+				if (nearCache != null) {
+					cacheKey = client.toCacheKey(arguments);
+					Object cached = nearCache.get(cacheKey);
+					if (cached != null) {
+						return cached == NULL_RESULT ? null : cached;
+					}
+				}
+				if (channel != null) {
+					CompletableFuture<Object> future;
+					if (hedging != null && selector != null) {
+						future = new HedgedRequest(client, hedging, selector, routingKey, name, arguments, returnType,
+								timeoutMilliseconds).send(channel);
+					} else if (timeoutMilliseconds >= 0) {
+						future = client.sendRequest(channel, name, arguments, returnType, timeoutMilliseconds);
+					} else {
+						future = client.sendRequest(channel, name, arguments, returnType);
+					}
+					Object result;
+					try {
+						if (timeoutMilliseconds >= 0) {
+							result = future.get(timeoutMilliseconds, TimeUnit.MILLISECONDS);
+						} else {
+							result = future.get();
+						}
+					} catch (InterruptedException | TimeoutException e) {
+						// nobody waits for it any more
+						future.cancel(true);
+						throw e;
+					}
+					if (nearCache != null) {
+						nearCache.put(cacheKey, result == null ? NULL_RESULT : result);
+					}
+					return result;
+				} else {
+					throw new ChannelNotFoundException("No proper channel found to send request");
+				}
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof JsonRpcException) {
+				throw (JsonRpcException) e.getCause();
+			} else if (e.getCause() != null) {
+				throw new RuntimeException(e.getCause());
+			} else {
+				throw new RuntimeException(e);
+			}
+		} catch (InterruptedException | TimeoutException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public static class Builder {
+		private final String name;
+		private final Type returnType;
+		private JsonRpcRequestMode requestMode = JsonRpcRequestMode.AUTO;
+		private long timeoutMilliseconds = -1;
+		private boolean paramsPassByObject;
+		private boolean varArgs;
+		private final List<String> paramNames = new ArrayList<>();
+		private final List<Class<?>> paramTypes = new ArrayList<>();
+		private int routingKeyIndex = -1;
+		private boolean cacheable;
+		private int cacheMaxSize;
+		private long cacheTtlMilliseconds;
+		private boolean hedged;
+		private long hedgingDelayMilliseconds;
+		private double hedgingDelayPercentile;
+		private int hedgingMaxHedges;
+		private int hedgingMaxRetries;
+
+		private Builder(String name, Type returnType) {
+			this.name = name;
+			this.returnType = returnType;
+		}
+
+		/**
+		 * @param requestMode the request mode, {@link JsonRpcRequestMode#AUTO} by
+		 *                    default
+		 * @return this builder
+		 * @see JsonRpcMethod#requestMode()
+		 */
+		public Builder requestMode(JsonRpcRequestMode requestMode) {
+			this.requestMode = requestMode;
+			return this;
+		}
+
+		/**
+		 * @param timeoutMilliseconds the timeout, negative for the one of the client
+		 *                            handler
+		 * @return this builder
+		 * @see JsonRpcMethod#timeoutMilliseconds()
+		 */
+		public Builder timeoutMilliseconds(long timeoutMilliseconds) {
+			this.timeoutMilliseconds = timeoutMilliseconds;
+			return this;
+		}
+
+		/**
+		 * @param paramsPassByObject whether the params are sent by name
+		 * @return this builder
+		 * @see JsonRpcMethod#paramsPassByObject()
+		 */
+		public Builder paramsPassByObject(boolean paramsPassByObject) {
+			this.paramsPassByObject = paramsPassByObject;
+			return this;
+		}
+
+		/**
+		 * Add the next parameter of the Java method. A {@link Channel}, a
+		 * {@link ChannelGroup} or a {@link JsonRpcChannelSelector} chooses where the
+		 * call is sent instead of being sent.
+		 *
+		 * @param name the name of the param, used when passed by object
+		 * @param type the erased type of the parameter
+		 * @return this builder
+		 */
+		public Builder param(String name, Class<?> type) {
+			paramNames.add(name);
+			paramTypes.add(type);
+			return this;
+		}
+
+		/**
+		 * Add the next parameter, annotated by {@link JsonRpcRoutingKey}.
+		 *
+		 * @param name the name of the param, used when passed by object
+		 * @param type the erased type of the parameter
+		 * @return this builder
+		 */
+		public Builder routingKeyParam(String name, Class<?> type) {
+			routingKeyIndex = paramTypes.size();
+			return param(name, type);
+		}
+
+		/**
+		 * @param varArgs whether the last parameter is a varargs one, whose elements
+		 *                are sent as params unless passed by object
+		 * @return this builder
+		 */
+		public Builder varArgs(boolean varArgs) {
+			this.varArgs = varArgs;
+			return this;
+		}
+
+		/**
+		 * @param maxSize         the max number of cached results
+		 * @param ttlMilliseconds the time a result is cached
+		 * @return this builder
+		 * @see JsonRpcCacheable
+		 */
+		public Builder cacheable(int maxSize, long ttlMilliseconds) {
+			this.cacheable = true;
+			this.cacheMaxSize = maxSize;
+			this.cacheTtlMilliseconds = ttlMilliseconds;
+			return this;
+		}
+
+		/**
+		 * @param delayMilliseconds the delay before hedging, negative for the
+		 *                          percentile of the latencies
+		 * @param delayPercentile   the percentile of the latencies
+		 * @param maxHedges         the max number of hedges
+		 * @param maxRetries        the max number of retries
+		 * @return this builder
+		 * @see JsonRpcHedging
+		 */
+		public Builder hedging(long delayMilliseconds, double delayPercentile, int maxHedges, int maxRetries) {
+			this.hedged = true;
+			this.hedgingDelayMilliseconds = delayMilliseconds;
+			this.hedgingDelayPercentile = delayPercentile;
+			this.hedgingMaxHedges = maxHedges;
+			this.hedgingMaxRetries = maxRetries;
+			return this;
+		}
+
+		public JsonRpcClientMethod build() {
+			return new JsonRpcClientMethod(this);
+		}
+	}
+}
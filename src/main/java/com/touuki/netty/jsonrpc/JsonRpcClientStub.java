@@ -0,0 +1,26 @@
+package com.touuki.netty.jsonrpc;
+
+/**
+ * The base of the client stubs generated by {@code netty-jsonrpc-codegen}, which
+ * implement a client interface like the proxies of {@link ProxyUtils} but
+ * without {@link java.lang.reflect.Proxy}. Every stub has its own near caches
+ * and hedging, like every proxy.
+ */
+public abstract class JsonRpcClientStub {
+	private final JsonRpcClientHandler client;
+	private final JsonRpcChannelSelector defaultSelector;
+
+	/**
+	 * @param client          the client handler to send the calls
+	 * @param defaultSelector the default selector of the channel, may be
+	 *                        {@code null}
+	 */
+	protected JsonRpcClientStub(JsonRpcClientHandler client, JsonRpcChannelSelector defaultSelector) {
+		this.client = client;
+		this.defaultSelector = defaultSelector;
+	}
+
+	protected final Object invoke(JsonRpcClientMethod method, Object... args) throws Throwable {
+		return method.invoke(client, defaultSelector, args);
+	}
+}
@@ -0,0 +1,82 @@
+package com.touuki.netty.jsonrpc;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.POJONode;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * The JSON engine of {@link JsonRpcServerHandler} and
+ * {@link JsonRpcClientHandler}: parses the frames, binds the params and the
+ * results to the method types, and writes them into the frames.
+ * {@link JacksonJsonRpcCodec} is the default. The envelope is handled as a
+ * {@link JsonNode} tree, so a faster engine plugs in by parsing the frames
+ * into trees, and by converting the values to {@link POJONode}s which it
+ * writes itself, with generated converters.
+ * <p>
+ * The envelope itself, the members beside the params and the result, is
+ * bound from the tree and written by the mapper of the library, not by the
+ * codec. That's deliberate: the protocol doesn't depend on the configuration
+ * of an application mapper, like a naming strategy, and a codec only has to
+ * know the application types.
+ * <p>
+ * Implementations must be thread safe, and should pass
+ * {@link JsonRpcCodecCompliance#verify(JsonRpcCodec)}.
+ */
+public interface JsonRpcCodec {
+
+	/**
+	 * Parse a frame, a JSON object or array, into a tree.
+	 *
+	 * @param in the frame, read to its end
+	 * @return the tree
+	 * @throws IOException if the frame isn't valid JSON
+	 */
+	JsonNode readTree(ByteBuf in) throws IOException;
+
+	/**
+	 * Bind a param or a result to a type. A single value is accepted for an array
+	 * or a collection type.
+	 *
+	 * @param node the param or the result
+	 * @param type the type of the param or of the result
+	 * @return the value
+	 * @throws IOException if the node doesn't match the type
+	 */
+	Object treeToValue(JsonNode node, Type type) throws IOException;
+
+	/**
+	 * Convert a param or a result to a tree. May return a {@link POJONode} of the
+	 * value, left to be written by {@link #writeValue(Object, ByteBuf)}.
+	 *
+	 * @param value the value, may be {@code null}
+	 * @return the tree, {@code null} for a {@code null} value
+	 */
+	JsonNode valueToTree(Object value);
+
+	/**
+	 * Write a value into a frame, the params, the result or the id, mostly a tree
+	 * returned by {@link #valueToTree(Object)} or {@link #readTree(ByteBuf)}.
+	 *
+	 * @param value the value
+	 * @param out   the frame
+	 * @throws IOException if the value can't be written
+	 */
+	void writeValue(Object value, ByteBuf out) throws IOException;
+
+	/**
+	 * @return the codec of the server handler if any, else of the client handler.
+	 */
+	static JsonRpcCodec of(JsonRpcClientHandler jsonRpcClientHandler, JsonRpcServerHandler jsonRpcServerHandler) {
+		if (jsonRpcServerHandler != null) {
+			return jsonRpcServerHandler.getCodec();
+		} else if (jsonRpcClientHandler != null) {
+			return jsonRpcClientHandler.getCodec();
+		} else {
+			return JacksonJsonRpcCodec.DEFAULT;
+		}
+	}
+}
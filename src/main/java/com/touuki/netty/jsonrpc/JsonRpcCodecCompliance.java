@@ -0,0 +1,293 @@
+package com.touuki.netty.jsonrpc;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * The compliance suite shared by the {@link JsonRpcCodec} implementations, to
+ * be run from their tests:
+ *
+ * <pre>
+ * JsonRpcCodecCompliance.verify(new MyJsonRpcCodec());
+ * </pre>
+ *
+ * The codec is checked against {@link JacksonJsonRpcCodec} with a plain
+ * mapper, on the frames, params and results the handlers pass to it, and on
+ * the objects encoded by the handlers with it. {@link Sample} and
+ * {@link SampleService} are the types bound, an implementation with generated
+ * converters has to generate them for these.
+ */
+public final class JsonRpcCodecCompliance {
+	private static final JsonRpcCodec REFERENCE = JacksonJsonRpcCodec.DEFAULT;
+	private static final String REQUEST = "{\"jsonrpc\":\"2.0\",\"id\":7,\"method\":\"sample.echo\",\"params\":"
+			+ "[1,-2.5,\"quote\\\" backslash\\\\ \\u00e9\\n\",true,null,{\"k\":[1,2,{}]},[],9007199254740993,"
+			+ "123456789012345678901234567890,1.0E-7,\"\u00e9\u4e2d\ud83d\ude00\"],\"deadline\":100}";
+	private static final String BATCH = "[{\"jsonrpc\":\"2.0\",\"id\":\"a\",\"result\":{\"x\":[]}},"
+			+ "{\"jsonrpc\":\"2.0\",\"id\":null,\"error\":{\"code\":-32600,\"message\":\"Invalid Request\"}}]";
+
+	private JsonRpcCodecCompliance() {
+	}
+
+	/**
+	 * The bean bound by the suite.
+	 */
+	public static class Sample {
+		public String name;
+		public int count;
+		public long total;
+		public double ratio;
+		public boolean enabled;
+		public List<String> tags;
+		public Map<String, Long> values;
+		public byte[] data;
+		public Sample child;
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Sample)) {
+				return false;
+			}
+			Sample other = (Sample) obj;
+			return Objects.equals(name, other.name) && count == other.count && total == other.total
+					&& Double.compare(ratio, other.ratio) == 0 && enabled == other.enabled
+					&& Objects.equals(tags, other.tags) && Objects.equals(values, other.values)
+					&& Arrays.equals(data, other.data) && Objects.equals(child, other.child);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(name, count, total);
+		}
+
+		@Override
+		public String toString() {
+			return "Sample [name=" + name + ", count=" + count + ", total=" + total + ", ratio=" + ratio
+					+ ", enabled=" + enabled + ", tags=" + tags + ", values=" + values + ", data="
+					+ Arrays.toString(data) + ", child=" + child + "]";
+		}
+	}
+
+	/**
+	 * The method signatures the types of the params and the results are taken
+	 * from.
+	 */
+	public interface SampleService {
+		Sample sample();
+
+		List<Sample> samples();
+
+		Map<String, Sample> sampleMap();
+
+		int[] ints();
+
+		long primitiveLong();
+
+		String string();
+
+		byte[] bytes();
+	}
+
+	/**
+	 * Run the whole suite.
+	 *
+	 * @param codec the codec
+	 * @throws AssertionError if the codec doesn't comply
+	 */
+	public static void verify(JsonRpcCodec codec) {
+		try {
+			verifyReadTree(codec);
+			verifyBinding(codec);
+			verifyWriting(codec);
+			verifyEnvelope(codec);
+		} catch (IOException e) {
+			throw new AssertionError("Unexpected failure of " + codec, e);
+		}
+	}
+
+	/**
+	 * The frames are parsed into the same trees, read to their end, from a slice
+	 * as split by the frame decoder, and invalid JSON is rejected.
+	 */
+	public static void verifyReadTree(JsonRpcCodec codec) throws IOException {
+		for (String frame : new String[] { REQUEST, BATCH }) {
+			JsonNode expected = readTree(REFERENCE, frame);
+			ByteBuf buffer = Unpooled.copiedBuffer("  " + frame + "{", StandardCharsets.UTF_8);
+			try {
+				ByteBuf slice = buffer.skipBytes(2).readSlice(buffer.readableBytes() - 1);
+				check(expected.equals(codec.readTree(slice)), "readTree parses " + frame);
+				check(!slice.isReadable(), "readTree reads the frame to its end");
+			} finally {
+				buffer.release();
+			}
+		}
+		for (String invalid : new String[] { "{\"a\":", "{\"a\" 1}", "[1,,2]" }) {
+			try {
+				readTree(codec, invalid);
+			} catch (IOException e) {
+				continue;
+			}
+			throw new AssertionError("readTree accepts invalid JSON: " + invalid);
+		}
+	}
+
+	/**
+	 * The params and the results are bound to the types of the method signatures,
+	 * the same as converted to trees and written by the reference.
+	 */
+	public static void verifyBinding(JsonRpcCodec codec) throws IOException {
+		Sample sample = sample();
+		checkBinding(codec, sample, type("sample"));
+		checkBinding(codec, Arrays.asList(sample, new Sample()), type("samples"));
+		checkBinding(codec, Collections.singletonMap("key", sample), type("sampleMap"));
+		checkBinding(codec, new int[] { 1, -2, Integer.MAX_VALUE }, type("ints"));
+		checkBinding(codec, (long) Integer.MIN_VALUE, type("primitiveLong"));
+		checkBinding(codec, "\u00e9\u4e2d\ud83d\ude00 \"\\", type("string"));
+		checkBinding(codec, new byte[] { 0, 1, -1, 127, -128 }, type("bytes"));
+
+		check(codec.valueToTree(null) == null, "valueToTree converts null to null");
+		check(codec.treeToValue(NullNode.getInstance(), type("sample")) == null, "treeToValue binds null");
+		check(Arrays.equals(new int[] { 1 }, (int[]) codec.treeToValue(IntNode.valueOf(1), type("ints"))),
+				"treeToValue accepts a single value as an array");
+		check(Collections.singletonList(sample)
+				.equals(codec.treeToValue(REFERENCE.valueToTree(sample), type("samples"))),
+				"treeToValue accepts a single value as a collection");
+		check(Arrays.equals(new byte[] { 1, 2, -1 }, (byte[]) codec.treeToValue(TextNode.valueOf("AQL/"), type("bytes"))),
+				"treeToValue decodes base64");
+		try {
+			codec.treeToValue(TextNode.valueOf("text"), type("sample"));
+		} catch (IOException e) {
+			return;
+		}
+		throw new AssertionError("treeToValue binds a string to a bean");
+	}
+
+	/**
+	 * The trees and the converted values are written as the reference writes
+	 * them.
+	 */
+	public static void verifyWriting(JsonRpcCodec codec) throws IOException {
+		JsonNode tree = readTree(REFERENCE, REQUEST);
+		check(tree.equals(readTree(REFERENCE, write(codec, tree))), "writeValue writes a tree");
+		Sample sample = sample();
+		check(readTree(REFERENCE, write(REFERENCE, REFERENCE.valueToTree(sample)))
+				.equals(readTree(REFERENCE, write(codec, codec.valueToTree(sample)))),
+				"writeValue writes a converted bean");
+		check("7".equals(write(codec, 7L)), "writeValue writes a long id");
+		check("\"a\\\"b\"".equals(write(codec, "a\"b")), "writeValue writes a string id");
+	}
+
+	/**
+	 * The requests and the responses encoded with the codec are decoded with it
+	 * into the same objects.
+	 */
+	public static void verifyEnvelope(JsonRpcCodec codec) throws IOException {
+		Sample sample = sample();
+		JsonNode params = JsonRpcAttachments.toParams(codec, new Object[] { sample, "x" }, null);
+		JsonRpcRequest request = new JsonRpcRequest(JsonRpcEnvelopeEncoder.VERSION, 9L, "sample.echo", params,
+				500L, "trace");
+		JsonRpcRequest decodedRequest = JsonUtils.MAPPER.treeToValue(readTree(codec, encode(codec, request)),
+				JsonRpcRequest.class);
+		check(Long.valueOf(9).equals(((Number) decodedRequest.getId()).longValue())
+				&& "sample.echo".equals(decodedRequest.getMethod()) && Long.valueOf(500).equals(decodedRequest.getDeadline())
+				&& "trace".equals(decodedRequest.getTraceId()), "the request envelope is kept");
+		check(decodedRequest.getParams().isArray() && decodedRequest.getParams().size() == 2
+				&& sample.equals(codec.treeToValue(decodedRequest.getParams().get(0), type("sample"))),
+				"the params are kept");
+
+		Map<String, Sample> result = new LinkedHashMap<>();
+		result.put("a", sample);
+		result.put("b", null);
+		JsonRpcResponse response = new JsonRpcResponse(JsonRpcEnvelopeEncoder.VERSION, "id",
+				codec.valueToTree(result), null);
+		JsonRpcResponse decodedResponse = JsonUtils.MAPPER.treeToValue(readTree(codec, encode(codec, response)),
+				JsonRpcResponse.class);
+		check("id".equals(decodedResponse.getId()), "the response envelope is kept");
+		check(result.equals(codec.treeToValue(decodedResponse.getResult(), type("sampleMap"))), "the result is kept");
+	}
+
+	private static void checkBinding(JsonRpcCodec codec, Object value, Type type) throws IOException {
+		String expected = write(REFERENCE, REFERENCE.valueToTree(value));
+		check(readTree(REFERENCE, expected).equals(readTree(REFERENCE, write(codec, codec.valueToTree(value)))),
+				"valueToTree converts " + type.getTypeName());
+		Object bound = codec.treeToValue(readTree(codec, expected), type);
+		boolean equal = value instanceof int[] ? Arrays.equals((int[]) value, (int[]) bound)
+				: value instanceof byte[] ? Arrays.equals((byte[]) value, (byte[]) bound) : value.equals(bound);
+		check(equal, "treeToValue binds " + type.getTypeName());
+	}
+
+	private static Sample sample() {
+		Sample child = new Sample();
+		child.name = "child";
+		child.count = -1;
+		Sample sample = new Sample();
+		sample.name = "name \u00e9\u4e2d\ud83d\ude00";
+		sample.count = Integer.MIN_VALUE;
+		// the tree parser of Jackson 2.10.0.pr1 fails on the longs out of the int range
+		sample.total = Integer.MAX_VALUE;
+		sample.ratio = 0.25;
+		sample.enabled = true;
+		sample.tags = Arrays.asList("a", "", "c");
+		sample.values = Collections.singletonMap("k", -1L);
+		sample.data = new byte[] { 1, 2, -1 };
+		sample.child = child;
+		return sample;
+	}
+
+	private static Type type(String methodName) {
+		try {
+			return SampleService.class.getMethod(methodName).getGenericReturnType();
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static JsonNode readTree(JsonRpcCodec codec, String frame) throws IOException {
+		ByteBuf buffer = Unpooled.copiedBuffer(frame, StandardCharsets.UTF_8);
+		try {
+			return codec.readTree(buffer);
+		} finally {
+			buffer.release();
+		}
+	}
+
+	private static String write(JsonRpcCodec codec, Object value) throws IOException {
+		ByteBuf buffer = Unpooled.buffer();
+		try {
+			codec.writeValue(value, buffer);
+			return buffer.toString(StandardCharsets.UTF_8);
+		} finally {
+			buffer.release();
+		}
+	}
+
+	private static String encode(JsonRpcCodec codec, JsonRpcObject msg) throws IOException {
+		ByteBuf buffer = Unpooled.buffer();
+		try {
+			JsonRpcEnvelopeEncoder.encode(msg, buffer, codec);
+			return buffer.toString(StandardCharsets.UTF_8);
+		} finally {
+			buffer.release();
+		}
+	}
+
+	private static void check(boolean condition, String description) {
+		if (!condition) {
+			throw new AssertionError("Not compliant: " + description);
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package com.touuki.netty.jsonrpc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import io.netty.channel.Channel;
+
+/**
+ * A consistent hash ring of channels which routes the calls by the parameter
+ * annotated by {@link JsonRpcRoutingKey}, so the calls with the same key always
+ * go to the same node while it's available. Every node is placed on the ring
+ * many times, so adding or removing a node moves only about {@code 1/n} of the
+ * keys. A node is identified by its name, the remote address of its channel by
+ * default, so a reconnected channel takes back the same keys. Calls without
+ * routing key go to a random node.
+ */
+public class JsonRpcConsistentHashRing implements JsonRpcChannelSelector {
+	public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+	private final int virtualNodes;
+	private final Map<String, Channel> channelForNode = new LinkedHashMap<>();
+	private volatile Ring ring = new Ring(new long[0], new Channel[0]);
+
+	public JsonRpcConsistentHashRing() {
+		this(DEFAULT_VIRTUAL_NODES);
+	}
+
+	/**
+	 * @param virtualNodes the times a node is placed on the ring, more gives a
+	 *                     more even distribution
+	 */
+	public JsonRpcConsistentHashRing(int virtualNodes) {
+		if (virtualNodes < 1) {
+			throw new IllegalArgumentException("virtualNodes must be positive");
+		}
+		this.virtualNodes = virtualNodes;
+	}
+
+	public void add(Channel channel) {
+		add(String.valueOf(channel.remoteAddress()), channel);
+	}
+
+	/**
+	 * Add a node, or replace the channel of the node if it exists. The node is
+	 * removed when its channel is closed.
+	 *
+	 * @param nodeName the stable name of the node
+	 * @param channel  the channel to the node
+	 */
+	public void add(String nodeName, Channel channel) {
+		synchronized (this) {
+			channelForNode.put(nodeName, channel);
+			rebuild();
+		}
+		channel.closeFuture().addListener(future -> remove(nodeName, channel));
+	}
+
+	public synchronized boolean remove(String nodeName) {
+		if (channelForNode.remove(nodeName) != null) {
+			rebuild();
+			return true;
+		}
+		return false;
+	}
+
+	private synchronized void remove(String nodeName, Channel channel) {
+		if (channelForNode.remove(nodeName, channel)) {
+			rebuild();
+		}
+	}
+
+	public synchronized int size() {
+		return channelForNode.size();
+	}
+
+	private void rebuild() {
+		int size = channelForNode.size() * virtualNodes;
+		long[] points = new long[size];
+		Channel[] channels = new Channel[size];
+		int i = 0;
+		for (Map.Entry<String, Channel> entry : channelForNode.entrySet()) {
+			for (int j = 0; j < virtualNodes; j++) {
+				points[i] = hash(entry.getKey() + "#" + j);
+				channels[i] = entry.getValue();
+				i++;
+			}
+		}
+		Integer[] order = new Integer[size];
+		for (int j = 0; j < size; j++) {
+			order[j] = j;
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(points[a], points[b]));
+		long[] sortedPoints = new long[size];
+		Channel[] sortedChannels = new Channel[size];
+		for (int j = 0; j < size; j++) {
+			sortedPoints[j] = points[order[j]];
+			sortedChannels[j] = channels[order[j]];
+		}
+		ring = new Ring(sortedPoints, sortedChannels);
+	}
+
+	@Override
+	public Channel select() {
+		return ring.select(ThreadLocalRandom.current().nextLong(), Collections.emptySet());
+	}
+
+	@Override
+	public Channel select(Object routingKey) {
+		if (routingKey == null) {
+			return select();
+		}
+		return ring.select(hash(routingKey.toString()), Collections.emptySet());
+	}
+
+	/**
+	 * The next node clockwise which is not excluded, so the hedges and retries of
+	 * a key go to the same nodes.
+	 */
+	@Override
+	public Channel select(Object routingKey, Collection<Channel> excluded) {
+		long hash = routingKey == null ? ThreadLocalRandom.current().nextLong() : hash(routingKey.toString());
+		return ring.select(hash, excluded);
+	}
+
+	/**
+	 * 64-bit FNV-1a of the UTF-8 bytes, finished by the MurmurHash3 mixer to
+	 * spread similar keys.
+	 */
+	static long hash(String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	private static class Ring {
+		private final long[] points;
+		private final Channel[] channels;
+
+		private Ring(long[] points, Channel[] channels) {
+			this.points = points;
+			this.channels = channels;
+		}
+
+		/**
+		 * The first active channel clockwise from the hash which is not excluded.
+		 */
+		private Channel select(long hash, Collection<Channel> excluded) {
+			if (points.length == 0) {
+				return null;
+			}
+			int index = Arrays.binarySearch(points, hash);
+			if (index < 0) {
+				index = -index - 1;
+			}
+			for (int i = 0; i < points.length; i++) {
+				Channel channel = channels[(index + i) % points.length];
+				if (channel.isActive() && !excluded.contains(channel)) {
+					return channel;
+				}
+			}
+			return null;
+		}
+	}
+}
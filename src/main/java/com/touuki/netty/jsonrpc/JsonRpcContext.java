@@ -0,0 +1,110 @@
+package com.touuki.netty.jsonrpc;
+
+import java.util.concurrent.TimeUnit;
+
+import io.netty.channel.Channel;
+
+/**
+ * The call being invoked by the current thread, available to the server methods
+ * by {@link #current()}. The requests sent by {@link JsonRpcClientHandler}
+ * while invoking a call with a deadline wait at most its remaining time, so
+ * nested calls inherit the deadline, and the trace id if traced. The context is
+ * not passed to the threads completing an asynchronous result.
+ */
+public final class JsonRpcContext {
+	private static final ThreadLocal<JsonRpcContext> CURRENT = new ThreadLocal<>();
+
+	private final Channel channel;
+	private final Object id;
+	private final String method;
+	private final boolean hasDeadline;
+	private final long deadlineNanos;
+	private final String traceId;
+
+	JsonRpcContext(Channel channel, Object id, String method, boolean hasDeadline, long deadlineNanos,
+			String traceId) {
+		this.channel = channel;
+		this.id = id;
+		this.method = method;
+		this.hasDeadline = hasDeadline;
+		this.deadlineNanos = deadlineNanos;
+		this.traceId = traceId;
+	}
+
+	/**
+	 * @return the call being invoked by the current thread, or {@code null} if
+	 *         none.
+	 */
+	public static JsonRpcContext current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * @return the previous context of the thread, to {@link #restore}
+	 */
+	static JsonRpcContext enter(JsonRpcContext context) {
+		JsonRpcContext previous = CURRENT.get();
+		CURRENT.set(context);
+		return previous;
+	}
+
+	static void restore(JsonRpcContext previous) {
+		if (previous == null) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(previous);
+		}
+	}
+
+	public Channel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * @return the id of the request, {@code null} for a notification.
+	 */
+	public Object getId() {
+		return id;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return whether the caller sent a deadline.
+	 */
+	public boolean hasDeadline() {
+		return hasDeadline;
+	}
+
+	/**
+	 * @param unit the unit of the result
+	 * @return the time left before the caller stops waiting, may be negative, or
+	 *         {@link Long#MAX_VALUE} if there is no deadline.
+	 */
+	public long getRemaining(TimeUnit unit) {
+		if (!hasDeadline) {
+			return Long.MAX_VALUE;
+		}
+		return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return the trace id of the call if it's traced by a {@link JsonRpcTracer},
+	 *         sent with the requests invoked by the call, or {@code null}.
+	 */
+	public String getTraceId() {
+		return traceId;
+	}
+
+	public boolean isExpired() {
+		return hasDeadline && deadlineNanos - System.nanoTime() <= 0;
+	}
+
+	@Override
+	public String toString() {
+		return "JsonRpcContext [channel=" + channel + ", id=" + id + ", method=" + method + ", remainingMillis="
+				+ (hasDeadline ? getRemaining(TimeUnit.MILLISECONDS) : "none") + "]";
+	}
+}
@@ -0,0 +1,41 @@
+package com.touuki.netty.jsonrpc;
+
+import java.util.ServiceLoader;
+
+/**
+ * Invokes the methods declared by a service interface with direct typed calls
+ * instead of {@link java.lang.reflect.Method#invoke(Object, Object...)}.
+ * Generated by {@code netty-jsonrpc-codegen} and registered for
+ * {@link ServiceLoader}, so {@link JsonRpcServerHandler} uses the dispatcher of
+ * an interface whenever it's on the classpath of the interface.
+ */
+public interface JsonRpcDispatcher {
+
+	/**
+	 * @return the interface declaring the dispatched methods
+	 */
+	Class<?> getServiceInterface();
+
+	/**
+	 * Called once per method, the invoker is reused for all its calls.
+	 *
+	 * @param methodName     the Java name of the method
+	 * @param parameterTypes the erased parameter types of the method
+	 * @return the invoker of the method, or {@code null} if the interface doesn't
+	 *         declare it
+	 */
+	Invoker getInvoker(String methodName, Class<?>[] parameterTypes);
+
+	@FunctionalInterface
+	interface Invoker {
+
+		/**
+		 * @param target the service
+		 * @param args   the converted arguments, with the channel if the method
+		 *               takes one
+		 * @return the result, {@code null} if the method returns {@code void}
+		 * @throws Throwable anything thrown by the method, not wrapped
+		 */
+		Object invoke(Object target, Object[] args) throws Throwable;
+	}
+}
@@ -0,0 +1,149 @@
+package com.touuki.netty.jsonrpc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.core.util.BufferRecyclers;
+import com.fasterxml.jackson.databind.node.POJONode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.fasterxml.jackson.databind.util.RawValue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+
+/**
+ * Writes the envelope of the JSON-RPC 2.0 objects from pre-built fragments, the
+ * same as serializing them by {@link JsonUtils#MAPPER}, with the id, the params
+ * and the result written by the {@link JsonRpcCodec}, and the error by
+ * {@link JsonUtils#MAPPER}. The {@code rpc.ping} request and the
+ * {@code rpc.pong} response are written as a whole but the id.
+ */
+class JsonRpcEnvelopeEncoder {
+	static final String VERSION = "2.0";
+	static final TextNode PONG = TextNode.valueOf("rpc.pong");
+
+	private static final byte[] HEAD = ascii("{\"jsonrpc\":\"2.0\"");
+	private static final byte[] ID = ascii(",\"id\":");
+	private static final byte[] METHOD = ascii(",\"method\":");
+	private static final byte[] PARAMS = ascii(",\"params\":");
+	private static final byte[] DEADLINE = ascii(",\"deadline\":");
+	private static final byte[] TRACE_ID = ascii(",\"traceId\":");
+	private static final byte[] ATTACHMENTS = ascii(",\"" + JsonRpcAttachments.MEMBER + "\":");
+	private static final byte[] RESULT = ascii(",\"result\":");
+	private static final byte[] ERROR = ascii(",\"error\":");
+	private static final byte[] NULL = ascii("null");
+	private static final byte[] PING_TAIL = ascii(",\"method\":\"rpc.ping\"}");
+	private static final byte[] PONG_TAIL = ascii(",\"result\":\"rpc.pong\"}");
+
+	private JsonRpcEnvelopeEncoder() {
+	}
+
+	static void encode(JsonRpcObject msg, ByteBuf out, JsonRpcCodec codec) throws IOException {
+		encodeObject(msg, out, codec);
+		if (msg.getTrace() != null) {
+			msg.getTrace().mark(JsonRpcTrace.Phase.ENCODED);
+		}
+	}
+
+	private static void encodeObject(JsonRpcObject msg, ByteBuf out, JsonRpcCodec codec) throws IOException {
+		if (msg instanceof JsonRpcResponse && VERSION.equals(((JsonRpcResponse) msg).getJsonrpc())) {
+			encodeResponse((JsonRpcResponse) msg, out, codec);
+		} else if (msg instanceof JsonRpcRequest && VERSION.equals(((JsonRpcRequest) msg).getJsonrpc())
+				&& ((JsonRpcRequest) msg).getMethod() != null) {
+			encodeRequest((JsonRpcRequest) msg, out, codec);
+		} else {
+			JsonUtils.MAPPER.writeValue((OutputStream) new ByteBufOutputStream(out), msg);
+		}
+	}
+
+	private static void encodeResponse(JsonRpcResponse response, ByteBuf out, JsonRpcCodec codec)
+			throws IOException {
+		out.writeBytes(HEAD);
+		out.writeBytes(ID);
+		writeId(response.getId(), out, codec);
+		if (response.getResult() == PONG && response.getError() == null) {
+			out.writeBytes(PONG_TAIL);
+			return;
+		}
+		if (response.getResult() != null) {
+			out.writeBytes(RESULT);
+			writeValue(response.getResult(), out, codec);
+		}
+		if (response.getError() != null) {
+			out.writeBytes(ERROR);
+			writeValue(response.getError(), out, JacksonJsonRpcCodec.DEFAULT);
+		}
+		writeAttachmentCount(response, out);
+		out.writeByte('}');
+	}
+
+	private static void encodeRequest(JsonRpcRequest request, ByteBuf out, JsonRpcCodec codec)
+			throws IOException {
+		out.writeBytes(HEAD);
+		if (request.getId() != null) {
+			out.writeBytes(ID);
+			writeId(request.getId(), out, codec);
+		}
+		if (request.getParams() == null && request.getDeadline() == null && request.getTraceId() == null
+				&& "rpc.ping".equals(request.getMethod())) {
+			out.writeBytes(PING_TAIL);
+			return;
+		}
+		out.writeBytes(METHOD);
+		writeString(request.getMethod(), out);
+		if (request.getParams() != null) {
+			out.writeBytes(PARAMS);
+			writeValue(request.getParams(), out, codec);
+		}
+		if (request.getDeadline() != null) {
+			out.writeBytes(DEADLINE);
+			ByteBufUtil.writeAscii(out, request.getDeadline().toString());
+		}
+		if (request.getTraceId() != null) {
+			out.writeBytes(TRACE_ID);
+			writeString(request.getTraceId(), out);
+		}
+		writeAttachmentCount(request, out);
+		out.writeByte('}');
+	}
+
+	private static void writeAttachmentCount(JsonRpcObject msg, ByteBuf out) {
+		if (msg.getAttachments() != null && !msg.getAttachments().isEmpty()) {
+			out.writeBytes(ATTACHMENTS);
+			ByteBufUtil.writeAscii(out, Integer.toString(msg.getAttachments().size()));
+		}
+	}
+
+	private static void writeId(Object id, ByteBuf out, JsonRpcCodec codec) throws IOException {
+		if (id == null) {
+			out.writeBytes(NULL);
+		} else if (id instanceof Long || id instanceof Integer || id instanceof Short || id instanceof Byte) {
+			ByteBufUtil.writeAscii(out, id.toString());
+		} else if (id instanceof String) {
+			writeString((String) id, out);
+		} else {
+			writeValue(id, out, codec);
+		}
+	}
+
+	private static void writeString(String value, ByteBuf out) {
+		out.writeByte('"');
+		out.writeBytes(BufferRecyclers.getJsonStringEncoder().quoteAsUTF8(value));
+		out.writeByte('"');
+	}
+
+	private static void writeValue(Object value, ByteBuf out, JsonRpcCodec codec) throws IOException {
+		if (value instanceof POJONode && ((POJONode) value).getPojo() instanceof RawValue) {
+			// encoded beforehand, like the cached results
+			ByteBufUtil.writeUtf8(out, String.valueOf(((RawValue) ((POJONode) value).getPojo()).rawValue()));
+		} else {
+			codec.writeValue(value, out);
+		}
+	}
+
+	private static byte[] ascii(String fragment) {
+		return fragment.getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -1,14 +1,21 @@
 package com.touuki.netty.jsonrpc;
 
+import java.io.IOException;
+
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
 
 @JsonIgnoreProperties(value = { "cause", "stackTrace", "localizedMessage", "suppressed" }, ignoreUnknown = true)
 @JsonInclude(Include.ALWAYS)
-public class JsonRpcException extends RuntimeException {
+public class JsonRpcException extends RuntimeException implements JsonSerializable {
 	private static final long serialVersionUID = -7965782582127898499L;
 
 	public static final int PARSE_ERROR = -32700;
@@ -20,9 +27,33 @@ public class JsonRpcException extends RuntimeException {
 	public static final int CUSTOM_SERVER_ERROR_UPPER = -32000;
 	public static final int CUSTOM_SERVER_ERROR_LOWER = -32099;
 
+	/**
+	 * The server method threw, the type and the message of the exception are in
+	 * the data.
+	 */
+	public static final int INVOCATION_ERROR = -32001;
+	public static final int TOO_MANY_REQUESTS = -32002;
+	public static final int SERVER_BUSY = -32003;
+	public static final int DEADLINE_EXCEEDED = -32004;
+
+	/**
+	 * If {@code true}, the errors received from the remote capture the local stack
+	 * trace, otherwise they are stackless.
+	 */
+	static final boolean CAPTURE_REMOTE_STACK_TRACE = Boolean.getBoolean("com.touuki.netty.jsonrpc.debug");
+
+	static final JsonRpcException PARSE_ERROR_EXCEPTION = shared("Parse error", PARSE_ERROR);
+	static final JsonRpcException INVALID_REQUEST_EXCEPTION = shared("Invalid Request", INVALID_REQUEST);
+	static final JsonRpcException METHOD_NOT_FOUND_EXCEPTION = shared("Method not found", METHOD_NOT_FOUND);
+	static final JsonRpcException METHOD_PARAMS_INVALID_EXCEPTION = shared("Invalid params", METHOD_PARAMS_INVALID);
+	static final JsonRpcException TOO_MANY_REQUESTS_EXCEPTION = shared("Too many requests", TOO_MANY_REQUESTS);
+	static final JsonRpcException SERVER_BUSY_EXCEPTION = shared("Server busy", SERVER_BUSY);
+	static final JsonRpcException DEADLINE_EXCEEDED_EXCEPTION = shared("Deadline exceeded", DEADLINE_EXCEEDED);
+
 	private final int code;
 	@JsonInclude(Include.NON_NULL)
 	private final ErrorData data;
+	private transient String encoded;
 
 	JsonRpcException(String message, int code) {
 		super(message);
@@ -30,14 +61,34 @@ public class JsonRpcException extends RuntimeException {
 		this.data = null;
 	}
 
+	private JsonRpcException(String message, int code, boolean writableStackTrace) {
+		super(message, null, false, writableStackTrace);
+		this.code = code;
+		this.data = null;
+	}
+
 	@JsonCreator
 	private JsonRpcException(@JsonProperty("code") int code, @JsonProperty("message") String message,
 			@JsonProperty("data") ErrorData data) {
-		super(message);
+		super(message, null, true, CAPTURE_REMOTE_STACK_TRACE);
 		this.code = code;
 		this.data = data;
 	}
 
+	/**
+	 * A stackless error of the protocol, shared by all the responses, and encoded
+	 * once.
+	 */
+	private static JsonRpcException shared(String message, int code) {
+		JsonRpcException exception = new JsonRpcException(message, code, false);
+		try {
+			exception.encoded = JsonUtils.MAPPER.writeValueAsString(exception);
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException(e);
+		}
+		return exception;
+	}
+
 	public JsonRpcException(int code, String message) {
 		super(message);
 		if (code < CUSTOM_SERVER_ERROR_LOWER) {
@@ -90,6 +141,30 @@ public class JsonRpcException extends RuntimeException {
 		return "JsonRpcException [code=" + code + ", data=" + data + ", message=" + getMessage() + "]";
 	}
 
+	@Override
+	public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+		if (encoded != null) {
+			gen.writeRawValue(encoded);
+			return;
+		}
+		gen.writeStartObject();
+		gen.writeNumberField("code", code);
+		gen.writeStringField("message", getMessage());
+		if (data != null) {
+			gen.writeObjectFieldStart("data");
+			gen.writeStringField("type_name", data.getTypeName());
+			gen.writeStringField("message", data.getMessage());
+			gen.writeEndObject();
+		}
+		gen.writeEndObject();
+	}
+
+	@Override
+	public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+			throws IOException {
+		serialize(gen, serializers);
+	}
+
 	@JsonInclude(Include.ALWAYS)
 	@JsonIgnoreProperties(ignoreUnknown = true)
 	public static class ErrorData {
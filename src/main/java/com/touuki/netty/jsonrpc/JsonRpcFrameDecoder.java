@@ -0,0 +1,123 @@
+package com.touuki.netty.jsonrpc;
+
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.handler.codec.json.JsonObjectDecoder;
+
+/**
+ * Splits the JSON objects and arrays like {@link JsonObjectDecoder}, and the
+ * binary segments of {@link JsonRpcAttachments} between them as zero-copy
+ * slices. The scan position is kept relative to the reader index, as the
+ * segments move it without being scanned.
+ */
+class JsonRpcFrameDecoder extends ByteToMessageDecoder {
+	private final int maxObjectLength;
+	private int scanned;
+	private int depth;
+	private boolean insideString;
+	private boolean escaped;
+	private boolean corrupted;
+	private long frameStartNanos;
+
+	JsonRpcFrameDecoder(int maxObjectLength) {
+		this.maxObjectLength = maxObjectLength;
+	}
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+		if (corrupted) {
+			in.skipBytes(in.readableBytes());
+			return;
+		}
+		if (depth == 0) {
+			// a segment can only start between two frames, where nothing is scanned
+			while (in.isReadable() && Character.isWhitespace(in.getByte(in.readerIndex()))) {
+				in.skipBytes(1);
+			}
+			if (!in.isReadable()) {
+				return;
+			}
+			byte first = in.getByte(in.readerIndex());
+			if (first == JsonRpcAttachments.SEGMENT_MARKER) {
+				decodeSegment(in, out);
+				return;
+			}
+			if (first != '{' && first != '[') {
+				corrupted = true;
+				String hex = ByteBufUtil.hexDump(in);
+				in.skipBytes(in.readableBytes());
+				throw new CorruptedFrameException("invalid JSON received at byte position " + in.readerIndex() + ": " + hex);
+			}
+			if (scanned == 0) {
+				frameStartNanos = System.nanoTime();
+			}
+		}
+		int start = in.readerIndex();
+		int writerIndex = in.writerIndex();
+		for (int idx = start + scanned; idx < writerIndex; idx++) {
+			byte c = in.getByte(idx);
+			if (insideString) {
+				if (escaped) {
+					escaped = false;
+				} else if (c == '\\') {
+					escaped = true;
+				} else if (c == '"') {
+					insideString = false;
+				}
+			} else if (c == '{' || c == '[') {
+				depth++;
+			} else if (c == '}' || c == ']') {
+				if (--depth == 0) {
+					int length = idx + 1 - start;
+					scanned = 0;
+					if (length > maxObjectLength) {
+						in.skipBytes(length);
+						throw new TooLongFrameException("object length exceeds " + maxObjectLength + ": " + length);
+					}
+					out.add(in.readRetainedSlice(length));
+					return;
+				}
+			} else if (c == '"') {
+				insideString = true;
+			}
+		}
+		scanned = writerIndex - start;
+		if (scanned > maxObjectLength) {
+			corrupted = true;
+			in.skipBytes(in.readableBytes());
+			throw new TooLongFrameException("object length exceeds " + maxObjectLength + ": " + (writerIndex - start)
+					+ " bytes discarded");
+		}
+	}
+
+	/**
+	 * @return the {@link System#nanoTime()} when the first byte of the latest frame
+	 *         was read.
+	 */
+	long getFrameStartNanos() {
+		return frameStartNanos;
+	}
+
+	private void decodeSegment(ByteBuf in, List<Object> out) {
+		if (in.readableBytes() < 5) {
+			return;
+		}
+		int length = in.getInt(in.readerIndex() + 1);
+		if (length < 0 || length > maxObjectLength) {
+			corrupted = true;
+			in.skipBytes(in.readableBytes());
+			throw new TooLongFrameException("attachment length exceeds " + maxObjectLength + ": " + length);
+		}
+		if (in.readableBytes() < 5 + length) {
+			return;
+		}
+		in.skipBytes(5);
+		out.add(new JsonRpcAttachments.Segment(in.readRetainedSlice(length)));
+	}
+}
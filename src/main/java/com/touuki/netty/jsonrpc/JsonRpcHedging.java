@@ -0,0 +1,44 @@
+package com.touuki.netty.jsonrpc;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation for annotating idempotent client methods whose calls can be sent
+ * more than once. If no response arrives within the delay, the call is sent
+ * again to another channel of the {@link JsonRpcChannelSelector}, and if a call
+ * fails to be sent or its channel is closed, it's retried on another channel.
+ * The first response wins and the other calls are cancelled. Hedges and retries
+ * are limited by the {@link JsonRpcRetryBudget} of the client.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface JsonRpcHedging {
+
+	/**
+	 * @return the delay before hedging in milliseconds, or negative to use
+	 *         {@link #delayPercentile()}.
+	 */
+	long delayMilliseconds() default -1;
+
+	/**
+	 * Used if {@link #delayMilliseconds()} is negative, the calls are not hedged
+	 * until enough latencies are observed.
+	 * 
+	 * @return the percentile of the observed latencies of the method used as the
+	 *         delay, between 0 and 100.
+	 */
+	double delayPercentile() default 95;
+
+	/**
+	 * @return the max number of hedges of a call, 0 to disable hedging.
+	 */
+	int maxHedges() default 1;
+
+	/**
+	 * @return the max number of retries of a call on connection failure.
+	 */
+	int maxRetries() default 1;
+}
@@ -0,0 +1,332 @@
+package com.touuki.netty.jsonrpc;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.BinaryNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Serves JSON-RPC over HTTP POST. The body of a {@link FullHttpRequest}, a call
+ * or a batch array of calls, is dispatched by {@link JsonRpcServerHandler}, and
+ * the responses are sent back in the body of one HTTP response, or a
+ * {@code 204 No Content} if all the calls are notifications. The HTTP responses
+ * keep the order of the requests, so keep-alive connections can pipeline.
+ * <p>
+ * It needs an {@code HttpServerCodec} and an {@code HttpObjectAggregator}
+ * before it, or an {@code Http2StreamFrameToHttpObjectCodec} and an
+ * {@code HttpObjectAggregator} in the child channels of an
+ * {@code Http2MultiplexHandler} to serve a call per stream. Requests can't be sent
+ * to the client over HTTP. A call is cancelled by closing its stream or its
+ * connection, {@code rpc.cancel} is ignored, as the ids are replaced and every
+ * id must be answered. Topics can't be subscribed either, {@code rpc.subscribe}
+ * and {@code rpc.unsubscribe} are not found. {@link JsonRpcServer} assembles
+ * both pipelines by {@link JsonRpcServer.Builder#httpPath(String)}.
+ */
+public class JsonRpcHttpServerHandler extends ChannelDuplexHandler {
+	private static final Logger log = LoggerFactory.getLogger(JsonRpcHttpServerHandler.class);
+	private static final String CONTENT_TYPE = "application/json";
+
+	private final JsonRpcServerHandler jsonRpcServerHandler;
+	private final String path;
+	private final ArrayDeque<Exchange> exchanges = new ArrayDeque<>();
+	private final Map<Long, Exchange> exchangeForId = new HashMap<>();
+	private long nextId;
+
+	/**
+	 * @param jsonRpcServerHandler the server handler
+	 * @param path                 the path to serve, or {@code null} for any
+	 */
+	public JsonRpcHttpServerHandler(JsonRpcServerHandler jsonRpcServerHandler, String path) {
+		this.jsonRpcServerHandler = jsonRpcServerHandler;
+		this.path = path;
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		ChannelPipeline cp = ctx.pipeline();
+		if (cp.get(JsonRpcServerHandler.class) == null) {
+			cp.addAfter(ctx.name(), JsonRpcServerHandler.class.getName(), jsonRpcServerHandler);
+		}
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (!(msg instanceof FullHttpRequest)) {
+			ctx.fireChannelRead(msg);
+			return;
+		}
+		FullHttpRequest request = (FullHttpRequest) msg;
+		try {
+			handleRequest(ctx, request);
+		} finally {
+			ReferenceCountUtil.release(request);
+		}
+	}
+
+	private void handleRequest(ChannelHandlerContext ctx, FullHttpRequest request) {
+		Exchange exchange = new Exchange(request.protocolVersion(), HttpUtil.isKeepAlive(request));
+		if (path != null && !path.equals(new QueryStringDecoder(request.uri()).path())) {
+			exchange.status = HttpResponseStatus.NOT_FOUND;
+		} else if (!HttpMethod.POST.equals(request.method())) {
+			exchange.status = HttpResponseStatus.METHOD_NOT_ALLOWED;
+		}
+		exchanges.add(exchange);
+		if (exchange.status != HttpResponseStatus.OK) {
+			writeCompleted(ctx);
+			return;
+		}
+
+		JsonRpcMetrics.of(null, jsonRpcServerHandler).frameRead(ctx.channel(), request.content().readableBytes());
+		JsonNode body;
+		try {
+			body = jsonRpcServerHandler.getCodec().readTree(request.content());
+		} catch (IOException e) {
+			body = null;
+		}
+		List<JsonRpcRequest> calls = new ArrayList<>();
+		if (body == null || body.isMissingNode()) {
+			exchange.responses.add(errorResponse(JsonRpcException.PARSE_ERROR_EXCEPTION));
+		} else if (body.isArray() && body.size() > 0) {
+			exchange.batch = true;
+			for (JsonNode element : body) {
+				addCall(exchange, element, calls);
+			}
+		} else {
+			addCall(exchange, body, calls);
+		}
+		// the responses may be written while dispatching
+		for (JsonRpcRequest call : calls) {
+			ctx.fireChannelRead(call);
+		}
+		writeCompleted(ctx);
+	}
+
+	/**
+	 * The id of a call is replaced by one unique in the channel, as the pipelined
+	 * HTTP requests may reuse the ids.
+	 */
+	private void addCall(Exchange exchange, JsonNode node, List<JsonRpcRequest> calls) {
+		if (node.isObject() && node.has("method")) {
+			try {
+				// the envelope is bound by the library mapper, see JsonRpcCodec
+				JsonRpcRequest call = JsonUtils.MAPPER.treeToValue(node, JsonRpcRequest.class);
+				if ("rpc.cancel".equals(call.getMethod())) {
+					// a cancelled call would never be answered, and hold the later responses
+					if (call.getId() != null) {
+						exchange.responses.add(new JsonRpcResponse(call.getJsonrpc(), call.getId(),
+								NullNode.getInstance(), null));
+					}
+					return;
+				}
+				if ("rpc.subscribe".equals(call.getMethod()) || "rpc.unsubscribe".equals(call.getMethod())) {
+					// the published notifications have no HTTP request to answer
+					if (call.getId() != null) {
+						exchange.responses.add(new JsonRpcResponse(call.getJsonrpc(), call.getId(), null,
+								JsonRpcException.METHOD_NOT_FOUND_EXCEPTION));
+					}
+					return;
+				}
+				if (call.getId() != null) {
+					long id = nextId++;
+					exchange.idForId.put(id, call.getId());
+					exchangeForId.put(id, exchange);
+					call = new JsonRpcRequest(call.getJsonrpc(), id, call.getMethod(), call.getParams(),
+							call.getDeadline(), call.getTraceId());
+				}
+				calls.add(call);
+				return;
+			} catch (JsonProcessingException e) {
+				// an invalid request
+			}
+		}
+		exchange.responses.add(errorResponse(JsonRpcException.INVALID_REQUEST_EXCEPTION));
+	}
+
+	private static JsonRpcResponse errorResponse(JsonRpcException error) {
+		return new JsonRpcResponse(JsonRpcEnvelopeEncoder.VERSION, null, null, error);
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		if (msg instanceof JsonRpcResponse) {
+			JsonRpcResponse response = (JsonRpcResponse) msg;
+			Exchange exchange = response.getId() instanceof Long ? exchangeForId.remove(response.getId()) : null;
+			if (exchange != null) {
+				Object id = exchange.idForId.remove(response.getId());
+				exchange.responses.add(inlineAttachments(response, id));
+				exchange.promises.add(promise);
+				writeCompleted(ctx);
+				return;
+			}
+			JsonRpcAttachments.release(response.getAttachments());
+			log.warn("Response without HTTP request dropped: channel:{}; remoteAddress:{}; id:{}",
+					ctx.channel().id().asLongText(), ctx.channel().remoteAddress(), response.getId());
+			promise.setSuccess();
+		} else if (msg instanceof JsonRpcObject) {
+			JsonRpcAttachments.release(((JsonRpcObject) msg).getAttachments());
+			promise.setFailure(new UnsupportedOperationException("Requests can't be sent over HTTP"));
+		} else {
+			ctx.write(msg, promise);
+		}
+	}
+
+	/**
+	 * A binary result is sent as base64, there's no room for attachments in the
+	 * body.
+	 */
+	private static JsonRpcResponse inlineAttachments(JsonRpcResponse response, Object id) {
+		List<ByteBuf> attachments = response.getAttachments();
+		if (attachments == null) {
+			return new JsonRpcResponse(response.getJsonrpc(), id, response.getResult(), response.getError());
+		}
+		try {
+			ByteBuf content = JsonRpcAttachments.getByteBuf(JsonRpcAttachments.resolve(response.getResult(), attachments));
+			return new JsonRpcResponse(response.getJsonrpc(), id, new BinaryNode(ByteBufUtil.getBytes(content)),
+					response.getError());
+		} finally {
+			JsonRpcAttachments.release(attachments);
+		}
+	}
+
+	/**
+	 * Write the completed exchanges at the head of the queue.
+	 */
+	private void writeCompleted(ChannelHandlerContext ctx) {
+		boolean written = false;
+		while (!exchanges.isEmpty() && exchanges.peek().idForId.isEmpty()) {
+			Exchange exchange = exchanges.poll();
+			FullHttpResponse response;
+			try {
+				response = exchange.toHttpResponse(ctx);
+			} catch (IOException e) {
+				log.warn("Failed to encode HTTP response: channel:{}; remoteAddress:{}; cause:{}",
+						ctx.channel().id().asLongText(), ctx.channel().remoteAddress(), e.toString());
+				response = new DefaultFullHttpResponse(exchange.version, HttpResponseStatus.INTERNAL_SERVER_ERROR,
+						Unpooled.EMPTY_BUFFER);
+				HttpUtil.setContentLength(response, 0);
+			}
+			if (exchange.keepAlive && exchange.version == HttpVersion.HTTP_1_0) {
+				response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+			}
+			ChannelFuture future = ctx.write(response);
+			if (!exchange.promises.isEmpty()) {
+				future.addListener(f -> exchange.complete(f.cause()));
+			}
+			if (!exchange.keepAlive) {
+				future.addListener(ChannelFutureListener.CLOSE);
+			}
+			written = true;
+		}
+		if (written) {
+			ctx.flush();
+		}
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		ClosedChannelException cause = new ClosedChannelException();
+		for (Exchange exchange : exchanges) {
+			exchange.complete(cause);
+		}
+		exchanges.clear();
+		exchangeForId.clear();
+		super.channelInactive(ctx);
+	}
+
+	private class Exchange {
+		private final HttpVersion version;
+		private final boolean keepAlive;
+		private final Map<Long, Object> idForId = new HashMap<>();
+		private final List<JsonRpcResponse> responses = new ArrayList<>();
+		private final List<ChannelPromise> promises = new ArrayList<>();
+		private HttpResponseStatus status = HttpResponseStatus.OK;
+		private boolean batch;
+
+		private Exchange(HttpVersion version, boolean keepAlive) {
+			this.version = version;
+			this.keepAlive = keepAlive;
+		}
+
+		/**
+		 * Complete the writes of the JSON-RPC responses.
+		 *
+		 * @param cause the failure of the HTTP response, or {@code null}
+		 */
+		private void complete(Throwable cause) {
+			for (ChannelPromise promise : promises) {
+				if (cause == null) {
+					promise.trySuccess();
+				} else {
+					promise.tryFailure(cause);
+				}
+			}
+		}
+
+		private FullHttpResponse toHttpResponse(ChannelHandlerContext ctx) throws IOException {
+			if (status != HttpResponseStatus.OK || responses.isEmpty()) {
+				FullHttpResponse response = new DefaultFullHttpResponse(version,
+						status != HttpResponseStatus.OK ? status : HttpResponseStatus.NO_CONTENT, Unpooled.EMPTY_BUFFER);
+				if (status == HttpResponseStatus.METHOD_NOT_ALLOWED) {
+					response.headers().set(HttpHeaderNames.ALLOW, HttpMethod.POST);
+				}
+				HttpUtil.setContentLength(response, 0);
+				return response;
+			}
+			ByteBuf content = ctx.alloc().buffer();
+			try {
+				if (batch) {
+					content.writeByte('[');
+				}
+				for (int i = 0; i < responses.size(); i++) {
+					if (i > 0) {
+						content.writeByte(',');
+					}
+					JsonRpcEnvelopeEncoder.encode(responses.get(i), content, jsonRpcServerHandler.getCodec());
+				}
+				if (batch) {
+					content.writeByte(']');
+				}
+			} catch (IOException | RuntimeException e) {
+				content.release();
+				throw e;
+			}
+			JsonRpcMetrics.of(null, jsonRpcServerHandler).frameWritten(ctx.channel(), content.readableBytes());
+			FullHttpResponse response = new DefaultFullHttpResponse(version, HttpResponseStatus.OK, content);
+			response.headers().set(HttpHeaderNames.CONTENT_TYPE, CONTENT_TYPE);
+			HttpUtil.setContentLength(response, content.readableBytes());
+			return response;
+		}
+	}
+}
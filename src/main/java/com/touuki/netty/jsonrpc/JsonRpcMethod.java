@@ -47,4 +47,33 @@ public @interface JsonRpcMethod {
 	 * @return whether the request parameters pass by object.
 	 */
 	boolean paramsPassByObject() default false;
+
+	/**
+	 * Used for server, the max number of concurrent executions of the method,
+	 * calls beyond it will be rejected with
+	 * {@link JsonRpcException#SERVER_BUSY}. If negative, it's unlimited.
+	 * 
+	 * @return max concurrent executions.
+	 */
+	int maxConcurrency() default -1;
+
+	/**
+	 * Used for server, the priority class of the invocations queued in a
+	 * {@link JsonRpcPriorityExecutor}, unless configured by
+	 * {@link JsonRpcServerHandler#setPriority(String, JsonRpcPriority)}.
+	 * 
+	 * @return the priority.
+	 */
+	JsonRpcPriority priority() default JsonRpcPriority.NORMAL;
+
+	/**
+	 * Used for server with an executor, if {@code true}, the calls of the method
+	 * from a channel are invoked one by one in the order received, after the
+	 * ordered calls received before them. Otherwise the calls run in parallel and
+	 * may respond out of order. Can be configured by
+	 * {@link JsonRpcServerHandler#setOrdered(String, Boolean)}.
+	 * 
+	 * @return whether the calls are ordered in their channel.
+	 */
+	boolean ordered() default false;
 }
\ No newline at end of file
@@ -0,0 +1,104 @@
+package com.touuki.netty.jsonrpc;
+
+import io.netty.channel.Channel;
+
+/**
+ * Metrics SPI of the server, the client and the protocol handlers. The
+ * callbacks are invoked on the hot paths, so implementations should neither
+ * block nor allocate. All the methods do nothing by default.
+ *
+ * @see InMemoryJsonRpcMetrics
+ */
+public interface JsonRpcMetrics {
+
+	JsonRpcMetrics NOOP = new JsonRpcMetrics() {
+	};
+
+	/**
+	 * A call is admitted and will be invoked by the server, answered from the
+	 * result cache, or share the invocation of the same call in flight.
+	 *
+	 * @param method the rpc method name
+	 */
+	default void serverCallStarted(String method) {
+	}
+
+	/**
+	 * @param method       the rpc method name
+	 * @param latencyNanos the time spent on the invocation
+	 * @param error        whether the invocation threw
+	 */
+	default void serverCallCompleted(String method, long latencyNanos, boolean error) {
+	}
+
+	/**
+	 * A call is rejected by {@link JsonRpcAdmissionControl}.
+	 *
+	 * @param method the rpc method name
+	 */
+	default void serverCallRejected(String method) {
+	}
+
+	/**
+	 * A request is added to the pending requests of the client.
+	 *
+	 * @param method the rpc method name
+	 */
+	default void clientCallStarted(String method) {
+	}
+
+	/**
+	 * A response is received for a pending request.
+	 *
+	 * @param method       the rpc method name
+	 * @param latencyNanos the time since the request was sent
+	 * @param error        whether the response is an error
+	 */
+	default void clientCallCompleted(String method, long latencyNanos, boolean error) {
+	}
+
+	/**
+	 * A pending request reaches {@link JsonRpcClientHandler#getMaxTimeoutSecond()}
+	 * without response.
+	 *
+	 * @param method the rpc method name
+	 */
+	default void clientCallTimedOut(String method) {
+	}
+
+	/**
+	 * A pending request is cancelled by the caller, or times out before
+	 * {@link JsonRpcClientHandler#getMaxTimeoutSecond()}, without response.
+	 *
+	 * @param method the rpc method name
+	 */
+	default void clientCallCancelled(String method) {
+	}
+
+	/**
+	 * @param channel the channel of the pipeline
+	 * @param bytes   the size of the frame
+	 */
+	default void frameRead(Channel channel, int bytes) {
+	}
+
+	/**
+	 * @param channel the channel of the pipeline
+	 * @param bytes   the size of the frame
+	 */
+	default void frameWritten(Channel channel, int bytes) {
+	}
+
+	/**
+	 * The metrics of a pipeline, the one of the server takes precedence.
+	 */
+	static JsonRpcMetrics of(JsonRpcClientHandler jsonRpcClientHandler, JsonRpcServerHandler jsonRpcServerHandler) {
+		if (jsonRpcServerHandler != null && jsonRpcServerHandler.getMetrics() != NOOP) {
+			return jsonRpcServerHandler.getMetrics();
+		} else if (jsonRpcClientHandler != null) {
+			return jsonRpcClientHandler.getMetrics();
+		} else {
+			return NOOP;
+		}
+	}
+}
@@ -1,5 +1,20 @@
 package com.touuki.netty.jsonrpc;
 
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+
 interface JsonRpcObject {
 
+	/**
+	 * @return the binary segments sent with the object, see
+	 *         {@link JsonRpcAttachments}, or {@code null}.
+	 */
+	List<ByteBuf> getAttachments();
+
+	/**
+	 * @return the trace of the call if it's sampled by a {@link JsonRpcTracer}, or
+	 *         {@code null}.
+	 */
+	JsonRpcTrace getTrace();
 }
@@ -0,0 +1,36 @@
+package com.touuki.netty.jsonrpc;
+
+/**
+ * The priority class of a server method, used by
+ * {@link JsonRpcPriorityExecutor} to schedule the queued invocations. When all
+ * the classes have calls queued, they are run in proportion to their weights,
+ * so the lower classes are never starved.
+ */
+public enum JsonRpcPriority {
+	/**
+	 * Health checks and other control calls.
+	 */
+	HIGH(16),
+	/**
+	 * Interactive calls.
+	 */
+	NORMAL(4),
+	/**
+	 * Batch and bulk calls.
+	 */
+	LOW(1);
+
+	private final int weight;
+
+	JsonRpcPriority(int weight) {
+		this.weight = weight;
+	}
+
+	/**
+	 * @return the number of calls of this class run in a round when all the
+	 *         classes have calls queued.
+	 */
+	public int getWeight() {
+		return weight;
+	}
+}
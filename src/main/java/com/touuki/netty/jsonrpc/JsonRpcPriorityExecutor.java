@@ -0,0 +1,157 @@
+package com.touuki.netty.jsonrpc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * An executor running at most {@code parallelism} tasks at once on a delegate
+ * executor, and queuing the others by {@link JsonRpcPriority}. The next task is
+ * taken by weighted round robin over the priority classes: the highest class
+ * with queued tasks runs until its weight is used up in the round, then the
+ * next one. Given to {@link JsonRpcServerHandler#setExecutor(Executor)}, the
+ * invocations are queued by the priority of their methods.
+ */
+public class JsonRpcPriorityExecutor implements Executor {
+	private static final Logger log = LoggerFactory.getLogger(JsonRpcPriorityExecutor.class);
+	private static final JsonRpcPriority[] PRIORITIES = JsonRpcPriority.values();
+
+	private final Executor delegate;
+	private final int parallelism;
+	private final List<Queue<Runnable>> queues;
+	private final int[] credits;
+	private int running;
+	private int queued;
+
+	/**
+	 * @param threads the number of threads of a new fixed thread pool
+	 */
+	public JsonRpcPriorityExecutor(int threads) {
+		this(Executors.newFixedThreadPool(threads, new DefaultThreadFactory(JsonRpcPriorityExecutor.class, true)),
+				threads);
+	}
+
+	/**
+	 * @param delegate    the executor running the tasks, which should be able to
+	 *                    run {@code parallelism} tasks at once
+	 * @param parallelism the max number of tasks running at once
+	 */
+	public JsonRpcPriorityExecutor(Executor delegate, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be positive");
+		}
+		this.delegate = delegate;
+		this.parallelism = parallelism;
+		this.queues = new ArrayList<>(PRIORITIES.length);
+		this.credits = new int[PRIORITIES.length];
+		for (int i = 0; i < PRIORITIES.length; i++) {
+			queues.add(new ArrayDeque<>());
+			credits[i] = PRIORITIES[i].getWeight();
+		}
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		execute(task, JsonRpcPriority.NORMAL);
+	}
+
+	public void execute(Runnable task, JsonRpcPriority priority) {
+		synchronized (this) {
+			if (running >= parallelism) {
+				queues.get(priority.ordinal()).add(task);
+				queued++;
+				return;
+			}
+			running++;
+		}
+		try {
+			delegate.execute(() -> runAll(task));
+		} catch (RejectedExecutionException e) {
+			synchronized (this) {
+				running--;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Execute the task with the priority if the executor is a
+	 * {@link JsonRpcPriorityExecutor}.
+	 */
+	static void execute(Executor executor, Runnable task, JsonRpcPriority priority) {
+		if (executor instanceof JsonRpcPriorityExecutor) {
+			((JsonRpcPriorityExecutor) executor).execute(task, priority);
+		} else {
+			executor.execute(task);
+		}
+	}
+
+	/**
+	 * @return the number of tasks waiting to run.
+	 */
+	public synchronized int getQueueSize() {
+		return queued;
+	}
+
+	/**
+	 * Shut down the delegate executor if it's an {@link ExecutorService}.
+	 */
+	public void shutdown() {
+		if (delegate instanceof ExecutorService) {
+			((ExecutorService) delegate).shutdown();
+		}
+	}
+
+	/**
+	 * Run the task, then the queued tasks until none is left, keeping the slot of
+	 * the task instead of giving it back to the delegate.
+	 */
+	private void runAll(Runnable task) {
+		Runnable next = task;
+		while (next != null) {
+			// an interrupt cancelling the previous task isn't for this one
+			Thread.interrupted();
+			try {
+				next.run();
+			} catch (Throwable e) {
+				log.warn("Failed to run task", e);
+			}
+			synchronized (this) {
+				next = poll();
+				if (next == null) {
+					running--;
+				}
+			}
+		}
+	}
+
+	private Runnable poll() {
+		if (queued == 0) {
+			return null;
+		}
+		for (int round = 0; round < 2; round++) {
+			for (int i = 0; i < queues.size(); i++) {
+				if (credits[i] > 0 && !queues.get(i).isEmpty()) {
+					credits[i]--;
+					queued--;
+					return queues.get(i).poll();
+				}
+			}
+			// every class with queued tasks has used up its weight, start a new round
+			for (int i = 0; i < credits.length; i++) {
+				credits[i] = PRIORITIES[i].getWeight();
+			}
+		}
+		return null;
+	}
+}
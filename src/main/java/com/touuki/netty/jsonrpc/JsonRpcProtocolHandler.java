@@ -3,8 +3,6 @@ package com.touuki.netty.jsonrpc;
 import java.io.IOException;
 import java.util.List;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPipeline;
@@ -12,9 +10,12 @@ import io.netty.handler.codec.ByteToMessageCodec;
 import io.netty.handler.codec.json.JsonObjectDecoder;
 
 public class JsonRpcProtocolHandler extends ByteToMessageCodec<JsonRpcObject> {
+	public static final int DEFAULT_MAX_OBJECT_LENGTH = 1024 * 1024;
 
 	private final JsonRpcClientHandler jsonRpcClientHandler;
 	private final JsonRpcServerHandler jsonRpcServerHandler;
+	private final int maxObjectLength;
+	private JsonRpcFrameDecoder frameDecoder;
 	
 	public JsonRpcProtocolHandler(JsonRpcClientHandler jsonRpcClientHandler) {
 		this(jsonRpcClientHandler, null);
@@ -25,32 +26,72 @@ public class JsonRpcProtocolHandler extends ByteToMessageCodec<JsonRpcObject> {
 	}
 	
 	public JsonRpcProtocolHandler(JsonRpcClientHandler jsonRpcClientHandler, JsonRpcServerHandler jsonRpcServerHandler) {
+		this(jsonRpcClientHandler, jsonRpcServerHandler, DEFAULT_MAX_OBJECT_LENGTH);
+	}
+
+	/**
+	 * @param jsonRpcClientHandler the client handler, may be {@code null}
+	 * @param jsonRpcServerHandler the server handler, may be {@code null}
+	 * @param maxObjectLength      the max length of a message in bytes, longer
+	 *                             messages get a parse error
+	 */
+	public JsonRpcProtocolHandler(JsonRpcClientHandler jsonRpcClientHandler, JsonRpcServerHandler jsonRpcServerHandler,
+			int maxObjectLength) {
 		this.jsonRpcClientHandler = jsonRpcClientHandler;
 		this.jsonRpcServerHandler = jsonRpcServerHandler;
+		this.maxObjectLength = maxObjectLength;
 	}
 
 	@Override
 	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
 		ChannelPipeline cp = ctx.pipeline();
-		if (cp.get(JsonObjectDecoder.class) == null) {
-			cp.addBefore(ctx.name(), JsonObjectDecoder.class.getName(), new JsonObjectDecoder());
+		if (cp.get(JsonRpcFrameDecoder.class) == null) {
+			frameDecoder = new JsonRpcFrameDecoder(maxObjectLength);
+			if (cp.get(JsonObjectDecoder.class) != null) {
+				// a JsonObjectDecoder can't frame the attachments
+				cp.replace(JsonObjectDecoder.class, JsonRpcFrameDecoder.class.getName(), frameDecoder);
+			} else {
+				cp.addBefore(ctx.name(), JsonRpcFrameDecoder.class.getName(), frameDecoder);
+			}
 		}
 		if (cp.get(JsonNodeToJsonRpcObjectDecoder.class) == null) {
 			cp.addAfter(ctx.name(), JsonNodeToJsonRpcObjectDecoder.class.getName(),
-					new JsonNodeToJsonRpcObjectDecoder(jsonRpcClientHandler, jsonRpcServerHandler));
+					new JsonNodeToJsonRpcObjectDecoder(jsonRpcClientHandler, jsonRpcServerHandler, maxObjectLength));
 		}
 	}
 
 	@Override
 	protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws IOException {
-		byte[] byteArray = new byte[in.readableBytes()];
-		in.readBytes(byteArray);
-		out.add(JsonUtils.MAPPER.readTree(byteArray));
+		metrics().frameRead(ctx.channel(), in.readableBytes());
+		if (JsonRpcTracer.of(jsonRpcClientHandler, jsonRpcServerHandler) != null) {
+			long framedNanos = System.nanoTime();
+			JsonRpcTracer.received(ctx.channel(), frameDecoder != null ? frameDecoder.getFrameStartNanos() : framedNanos,
+					framedNanos);
+		}
+		out.add(JsonRpcCodec.of(jsonRpcClientHandler, jsonRpcServerHandler).readTree(in));
 	}
 
 	@Override
-	protected void encode(ChannelHandlerContext ctx, JsonRpcObject msg, ByteBuf out) throws JsonProcessingException {
-		out.writeBytes(JsonUtils.MAPPER.writeValueAsBytes(msg));
+	protected void encode(ChannelHandlerContext ctx, JsonRpcObject msg, ByteBuf out) throws IOException {
+		int writerIndex = out.writerIndex();
+		List<ByteBuf> attachments = msg.getAttachments();
+		if (attachments != null) {
+			try {
+				for (ByteBuf attachment : attachments) {
+					out.writeByte(JsonRpcAttachments.SEGMENT_MARKER);
+					out.writeInt(attachment.readableBytes());
+					out.writeBytes(attachment, attachment.readerIndex(), attachment.readableBytes());
+				}
+			} finally {
+				JsonRpcAttachments.release(attachments);
+			}
+		}
+		JsonRpcEnvelopeEncoder.encode(msg, out, JsonRpcCodec.of(jsonRpcClientHandler, jsonRpcServerHandler));
+		metrics().frameWritten(ctx.channel(), out.writerIndex() - writerIndex);
+	}
+
+	private JsonRpcMetrics metrics() {
+		return JsonRpcMetrics.of(jsonRpcClientHandler, jsonRpcServerHandler);
 	}
 
 }
@@ -3,25 +3,28 @@ package com.touuki.netty.jsonrpc;
 import java.io.IOException;
 import java.util.List;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPipeline;
 import io.netty.handler.codec.MessageToMessageCodec;
 import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.handler.codec.json.JsonObjectDecoder;
 import io.netty.handler.timeout.IdleStateEvent;
 
 @Sharable
-public class JsonRpcProtocolPassWebSocketHandler extends MessageToMessageCodec<TextWebSocketFrame, JsonRpcObject> {
+public class JsonRpcProtocolPassWebSocketHandler extends MessageToMessageCodec<WebSocketFrame, JsonRpcObject> {
 
 	private final JsonRpcClientHandler jsonRpcClientHandler;
 	private final JsonRpcServerHandler jsonRpcServerHandler;
+	private final int maxObjectLength;
 	
 	public JsonRpcProtocolPassWebSocketHandler(JsonRpcClientHandler jsonRpcClientHandler) {
 		this(jsonRpcClientHandler, null);
@@ -32,8 +35,20 @@ public class JsonRpcProtocolPassWebSocketHandler extends MessageToMessageCodec<T
 	}
 	
 	public JsonRpcProtocolPassWebSocketHandler(JsonRpcClientHandler jsonRpcClientHandler, JsonRpcServerHandler jsonRpcServerHandler) {
+		this(jsonRpcClientHandler, jsonRpcServerHandler, JsonRpcProtocolHandler.DEFAULT_MAX_OBJECT_LENGTH);
+	}
+
+	/**
+	 * @param jsonRpcClientHandler the client handler, may be {@code null}
+	 * @param jsonRpcServerHandler the server handler, may be {@code null}
+	 * @param maxObjectLength      the max length in bytes of the binary frames
+	 *                             of a message, more get a parse error
+	 */
+	public JsonRpcProtocolPassWebSocketHandler(JsonRpcClientHandler jsonRpcClientHandler,
+			JsonRpcServerHandler jsonRpcServerHandler, int maxObjectLength) {
 		this.jsonRpcClientHandler = jsonRpcClientHandler;
 		this.jsonRpcServerHandler = jsonRpcServerHandler;
+		this.maxObjectLength = maxObjectLength;
 	}
 
 	@Override
@@ -41,15 +56,31 @@ public class JsonRpcProtocolPassWebSocketHandler extends MessageToMessageCodec<T
 		ChannelPipeline cp = ctx.pipeline();
 		if (cp.get(JsonNodeToJsonRpcObjectDecoder.class) == null) {
 			cp.addAfter(ctx.name(), JsonNodeToJsonRpcObjectDecoder.class.getName(),
-					new JsonNodeToJsonRpcObjectDecoder(jsonRpcClientHandler, jsonRpcServerHandler));
+					new JsonNodeToJsonRpcObjectDecoder(jsonRpcClientHandler, jsonRpcServerHandler, maxObjectLength));
 		}
 	}
 	
 	
 	@Override
-	protected void decode(ChannelHandlerContext ctx, TextWebSocketFrame msg, List<Object> out)
+	public boolean acceptInboundMessage(Object msg) throws Exception {
+		return msg instanceof TextWebSocketFrame || msg instanceof BinaryWebSocketFrame;
+	}
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, WebSocketFrame msg, List<Object> out)
 			throws IOException {
-		out.add(JsonUtils.MAPPER.readTree(msg.text()));
+		metrics().frameRead(ctx.channel(), msg.content().readableBytes());
+		if (msg instanceof BinaryWebSocketFrame) {
+			// an attachment of the next text frame
+			out.add(new JsonRpcAttachments.Segment(msg.content().retain()));
+			return;
+		}
+		if (JsonRpcTracer.of(jsonRpcClientHandler, jsonRpcServerHandler) != null) {
+			// the frame is aggregated by the websocket decoder
+			long framedNanos = System.nanoTime();
+			JsonRpcTracer.received(ctx.channel(), framedNanos, framedNanos);
+		}
+		out.add(JsonRpcCodec.of(jsonRpcClientHandler, jsonRpcServerHandler).readTree(msg.content()));
 	}
 
 	@Override
@@ -62,8 +93,26 @@ public class JsonRpcProtocolPassWebSocketHandler extends MessageToMessageCodec<T
 	}
 	
 	@Override
-	protected void encode(ChannelHandlerContext ctx, JsonRpcObject msg, List<Object> out) throws JsonProcessingException {
-		out.add(new TextWebSocketFrame(JsonUtils.MAPPER.writeValueAsString(msg)));
+	protected void encode(ChannelHandlerContext ctx, JsonRpcObject msg, List<Object> out) throws IOException {
+		if (msg.getAttachments() != null) {
+			for (ByteBuf attachment : msg.getAttachments()) {
+				metrics().frameWritten(ctx.channel(), attachment.readableBytes());
+				out.add(new BinaryWebSocketFrame(attachment));
+			}
+		}
+		ByteBuf content = ctx.alloc().buffer();
+		try {
+			JsonRpcEnvelopeEncoder.encode(msg, content, JsonRpcCodec.of(jsonRpcClientHandler, jsonRpcServerHandler));
+		} catch (IOException e) {
+			content.release();
+			throw e;
+		}
+		metrics().frameWritten(ctx.channel(), content.readableBytes());
+		out.add(new TextWebSocketFrame(content));
+	}
+
+	private JsonRpcMetrics metrics() {
+		return JsonRpcMetrics.of(jsonRpcClientHandler, jsonRpcServerHandler);
 	}
 
 }
@@ -1,25 +1,55 @@
 package com.touuki.netty.jsonrpc;
 
+import java.util.List;
+
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonNode;
 
+import io.netty.buffer.ByteBuf;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
 @JsonInclude(Include.NON_NULL)
 class JsonRpcRequest implements JsonRpcObject{
 	private final String jsonrpc;
 	private final Object id;
 	private final String method;
 	private final JsonNode params;
+	/**
+	 * An extension, the milliseconds the caller waits for the response from
+	 * sending the request.
+	 */
+	private final Long deadline;
+	/**
+	 * An extension, the id shared by the traces of a call across the nodes, see
+	 * {@link JsonRpcTracer}.
+	 */
+	private final String traceId;
+	private List<ByteBuf> attachments;
+	private JsonRpcTrace trace;
+
+	public JsonRpcRequest(String jsonrpc, Object id, String method, JsonNode params) {
+		this(jsonrpc, id, method, params, null);
+	}
+
+	public JsonRpcRequest(String jsonrpc, Object id, String method, JsonNode params, Long deadline) {
+		this(jsonrpc, id, method, params, deadline, null);
+	}
 
 	@JsonCreator
 	public JsonRpcRequest(@JsonProperty("jsonrpc") String jsonrpc, @JsonProperty("id") Object id,
-			@JsonProperty("method") String method, @JsonProperty("params") JsonNode params) {
+			@JsonProperty("method") String method, @JsonProperty("params") JsonNode params,
+			@JsonProperty("deadline") Long deadline, @JsonProperty("traceId") String traceId) {
 		this.jsonrpc = jsonrpc;
 		this.id = id;
 		this.method = method;
 		this.params = params;
+		this.deadline = deadline;
+		this.traceId = traceId;
 	}
 
 	public String getJsonrpc() {
@@ -38,8 +68,36 @@ class JsonRpcRequest implements JsonRpcObject{
 		return params;
 	}
 
+	public Long getDeadline() {
+		return deadline;
+	}
+
+	public String getTraceId() {
+		return traceId;
+	}
+
+	@JsonIgnore
+	@Override
+	public List<ByteBuf> getAttachments() {
+		return attachments;
+	}
+
+	void setAttachments(List<ByteBuf> attachments) {
+		this.attachments = attachments;
+	}
+
+	@JsonIgnore
+	@Override
+	public JsonRpcTrace getTrace() {
+		return trace;
+	}
+
+	void setTrace(JsonRpcTrace trace) {
+		this.trace = trace;
+	}
+
 	@Override
 	public String toString() {
-		return "JsonRpcRequest [jsonrpc=" + jsonrpc + ", id=" + id + ", method=" + method + ", params=" + params + "]";
+		return "JsonRpcRequest [jsonrpc=" + jsonrpc + ", id=" + id + ", method=" + method + ", params=" + params + ", deadline=" + deadline + ", traceId=" + traceId + "]";
 	}
 }
@@ -1,12 +1,17 @@
 package com.touuki.netty.jsonrpc;
 
+import java.util.List;
+
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonNode;
 
+import io.netty.buffer.ByteBuf;
+
 @JsonIgnoreProperties(ignoreUnknown = true)
 @JsonInclude(Include.NON_NULL)
 class JsonRpcResponse implements JsonRpcObject{
@@ -16,6 +21,8 @@ class JsonRpcResponse implements JsonRpcObject{
 	private final Object id;
 	private final JsonNode result;
 	private final JsonRpcException error;
+	private List<ByteBuf> attachments;
+	private JsonRpcTrace trace;
 
 	@JsonCreator
 	public JsonRpcResponse(@JsonProperty("jsonrpc") String jsonrpc, @JsonProperty("id") Object id,
@@ -42,6 +49,26 @@ class JsonRpcResponse implements JsonRpcObject{
 		return error;
 	}
 
+	@JsonIgnore
+	@Override
+	public List<ByteBuf> getAttachments() {
+		return attachments;
+	}
+
+	void setAttachments(List<ByteBuf> attachments) {
+		this.attachments = attachments;
+	}
+
+	@JsonIgnore
+	@Override
+	public JsonRpcTrace getTrace() {
+		return trace;
+	}
+
+	void setTrace(JsonRpcTrace trace) {
+		this.trace = trace;
+	}
+
 	@Override
 	public String toString() {
 		if (error == null) {			
@@ -0,0 +1,65 @@
+package com.touuki.netty.jsonrpc;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the hedges and retries of the calls to a ratio of the calls, so a
+ * failing server isn't flooded by retries. Every call deposits {@code ratio}
+ * into the budget, every hedge or retry withdraws 1, and
+ * {@code minRetriesPerSecond} are deposited over time so the calls can still be
+ * retried under low traffic. The balance is capped at {@code maxBalance}.
+ */
+public class JsonRpcRetryBudget {
+	// in thousandths of a retry, so the deposits add up exactly
+	private static final long UNIT = 1000;
+
+	private final long deposit;
+	private final double minRetriesPerNano;
+	private final long maxBalance;
+	private long balance;
+	private long lastNanos = System.nanoTime();
+
+	public JsonRpcRetryBudget() {
+		this(0.1, 10, 100);
+	}
+
+	/**
+	 * @param ratio               the retries allowed per call
+	 * @param minRetriesPerSecond the retries allowed per second regardless of the
+	 *                            calls
+	 * @param maxBalance          the max retries which can be saved for a burst
+	 */
+	public JsonRpcRetryBudget(double ratio, double minRetriesPerSecond, double maxBalance) {
+		if (ratio < 0 || minRetriesPerSecond < 0 || maxBalance < 1) {
+			throw new IllegalArgumentException("Invalid retry budget");
+		}
+		this.deposit = Math.round(ratio * UNIT);
+		this.minRetriesPerNano = minRetriesPerSecond * UNIT / TimeUnit.SECONDS.toNanos(1);
+		this.maxBalance = (long) (maxBalance * UNIT);
+		this.balance = this.maxBalance;
+	}
+
+	/**
+	 * Called for every call which may be retried.
+	 */
+	public synchronized void deposit() {
+		balance = Math.min(maxBalance, balance + deposit);
+	}
+
+	/**
+	 * @return whether a hedge or retry is allowed.
+	 */
+	public synchronized boolean tryWithdraw() {
+		long now = System.nanoTime();
+		long refill = (long) ((now - lastNanos) * minRetriesPerNano);
+		if (refill > 0) {
+			balance = Math.min(maxBalance, balance + refill);
+			lastNanos = now;
+		}
+		if (balance >= UNIT) {
+			balance -= UNIT;
+			return true;
+		}
+		return false;
+	}
+}
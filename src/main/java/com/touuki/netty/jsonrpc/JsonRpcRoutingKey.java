@@ -0,0 +1,17 @@
+package com.touuki.netty.jsonrpc;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation for annotating a client parameter whose value is used to select
+ * the channel by {@link JsonRpcChannelSelector#select(Object)}, so the calls
+ * with the same key go to the same server. The parameter is still sent.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface JsonRpcRoutingKey {
+
+}
@@ -0,0 +1,348 @@
+package com.touuki.netty.jsonrpc;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.util.AsciiString;
+import io.netty.util.concurrent.EventExecutor;
+
+/**
+ * A JSON-RPC server listening on a port, over a raw tcp, a websocket or HTTP,
+ * with the pipeline assembled around {@link JsonRpcProtocolHandler},
+ * {@link JsonRpcProtocolPassWebSocketHandler} or
+ * {@link JsonRpcHttpServerHandler}. It runs on the best available
+ * {@link JsonRpcTransport}, with the pooled allocator and {@code TCP_NODELAY}.
+ * On a native transport every event loop gets its own listener bound with
+ * {@code SO_REUSEPORT}, so the kernel spreads the connections and the accepting
+ * loop serves them.
+ * <p>
+ * Bound to a {@link DomainSocketAddress}, it listens on a unix domain socket
+ * instead, which skips the tcp stack for the peers on the same host. The socket
+ * file is deleted when the server is closed.
+ *
+ * <pre>
+ * JsonRpcServer server = JsonRpcServer.builder(jsonRpcServerHandler).webSocketPath("/jsonrpc").bind(8080);
+ * ...
+ * server.close();
+ * </pre>
+ */
+public class JsonRpcServer implements Closeable {
+	public static final int DEFAULT_WRITE_BUFFER_LOW_WATER_MARK = 128 * 1024;
+	public static final int DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK = 256 * 1024;
+
+	private final JsonRpcTransport transport;
+	private final EventLoopGroup eventLoopGroup;
+	private final List<Channel> listeners;
+
+	private JsonRpcServer(JsonRpcTransport transport, EventLoopGroup eventLoopGroup, List<Channel> listeners) {
+		this.transport = transport;
+		this.eventLoopGroup = eventLoopGroup;
+		this.listeners = Collections.unmodifiableList(listeners);
+	}
+
+	public static Builder builder(JsonRpcServerHandler jsonRpcServerHandler) {
+		return new Builder(jsonRpcServerHandler);
+	}
+
+	public JsonRpcTransport getTransport() {
+		return transport;
+	}
+
+	public EventLoopGroup getEventLoopGroup() {
+		return eventLoopGroup;
+	}
+
+	/**
+	 * @return the listening channels, one per event loop if {@code SO_REUSEPORT}
+	 *         is used.
+	 */
+	public List<Channel> getListeners() {
+		return listeners;
+	}
+
+	/**
+	 * @return the bound address, an {@link InetSocketAddress} or a
+	 *         {@link DomainSocketAddress}.
+	 */
+	public SocketAddress getLocalAddress() {
+		return listeners.get(0).localAddress();
+	}
+
+	/**
+	 * Close the listeners and shut the event loops down, which closes the accepted
+	 * channels.
+	 */
+	@Override
+	public void close() {
+		for (Channel listener : listeners) {
+			listener.close().syncUninterruptibly();
+		}
+		eventLoopGroup.shutdownGracefully().syncUninterruptibly();
+	}
+
+	public static class Builder {
+		private final JsonRpcServerHandler jsonRpcServerHandler;
+		private JsonRpcClientHandler jsonRpcClientHandler;
+		private JsonRpcTransport transport;
+		private int eventLoopThreads;
+		private String webSocketPath;
+		private String httpPath;
+		private int maxObjectLength = JsonRpcProtocolHandler.DEFAULT_MAX_OBJECT_LENGTH;
+		private int writeBufferLowWaterMark = DEFAULT_WRITE_BUFFER_LOW_WATER_MARK;
+		private int writeBufferHighWaterMark = DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK;
+		private boolean reusePort = true;
+		private Consumer<ChannelPipeline> pipelineInitializer;
+
+		private Builder(JsonRpcServerHandler jsonRpcServerHandler) {
+			this.jsonRpcServerHandler = jsonRpcServerHandler;
+		}
+
+		/**
+		 * Used for sending requests to the connected clients in the same channels.
+		 *
+		 * @param jsonRpcClientHandler the client handler
+		 * @return this builder
+		 */
+		public Builder clientHandler(JsonRpcClientHandler jsonRpcClientHandler) {
+			this.jsonRpcClientHandler = jsonRpcClientHandler;
+			return this;
+		}
+
+		/**
+		 * @param transport the transport, {@link JsonRpcTransport#best()} by default
+		 * @return this builder
+		 */
+		public Builder transport(JsonRpcTransport transport) {
+			this.transport = transport;
+			return this;
+		}
+
+		/**
+		 * @param eventLoopThreads the number of event loops, 0 for the Netty default
+		 * @return this builder
+		 */
+		public Builder eventLoopThreads(int eventLoopThreads) {
+			if (eventLoopThreads < 0) {
+				throw new IllegalArgumentException("eventLoopThreads must not be negative");
+			}
+			this.eventLoopThreads = eventLoopThreads;
+			return this;
+		}
+
+		/**
+		 * Serve over a websocket at the path instead of a raw tcp.
+		 *
+		 * @param webSocketPath the websocket path, like {@code "/jsonrpc"}
+		 * @return this builder
+		 */
+		public Builder webSocketPath(String webSocketPath) {
+			this.webSocketPath = webSocketPath;
+			return this;
+		}
+
+		/**
+		 * Serve over HTTP POST at the path instead of a raw tcp, see
+		 * {@link JsonRpcHttpServerHandler}. HTTP/2 is served too, over cleartext by
+		 * prior knowledge or by upgrade from HTTP/1.1, with a call per stream so the
+		 * calls of a connection don't wait for each other.
+		 *
+		 * @param httpPath the HTTP path, like {@code "/jsonrpc"}
+		 * @return this builder
+		 */
+		public Builder httpPath(String httpPath) {
+			this.httpPath = httpPath;
+			return this;
+		}
+
+		/**
+		 * @param maxObjectLength the max length of a message, also the max websocket
+		 *                        frame length
+		 * @return this builder
+		 */
+		public Builder maxObjectLength(int maxObjectLength) {
+			this.maxObjectLength = maxObjectLength;
+			return this;
+		}
+
+		/**
+		 * A channel is not writable while more than {@code high} bytes are waiting to
+		 * be written, until they drop below {@code low}, see
+		 * {@link JsonRpcTopicPublisher}.
+		 *
+		 * @param low  the low water mark
+		 * @param high the high water mark
+		 * @return this builder
+		 */
+		public Builder writeBufferWaterMark(int low, int high) {
+			if (low < 0 || high < low) {
+				throw new IllegalArgumentException("Invalid water marks");
+			}
+			this.writeBufferLowWaterMark = low;
+			this.writeBufferHighWaterMark = high;
+			return this;
+		}
+
+		/**
+		 * @param reusePort whether to bind a listener per event loop with
+		 *                  {@code SO_REUSEPORT}, ignored by NIO
+		 * @return this builder
+		 */
+		public Builder reusePort(boolean reusePort) {
+			this.reusePort = reusePort;
+			return this;
+		}
+
+		/**
+		 * Add handlers to the pipeline of every accepted channel before the JSON-RPC
+		 * ones, like an {@code SslHandler} or an {@code IdleStateHandler}.
+		 *
+		 * @param pipelineInitializer called with the pipeline of the channel
+		 * @return this builder
+		 */
+		public Builder pipeline(Consumer<ChannelPipeline> pipelineInitializer) {
+			this.pipelineInitializer = pipelineInitializer;
+			return this;
+		}
+
+		public JsonRpcServer bind(int port) throws InterruptedException {
+			return bind(new InetSocketAddress(port));
+		}
+
+		/**
+		 * @param localAddress an {@link InetSocketAddress}, or a
+		 *                     {@link DomainSocketAddress} to listen on a unix domain
+		 *                     socket, whose file must not exist
+		 * @return the server
+		 * @throws InterruptedException if interrupted while binding
+		 */
+		public JsonRpcServer bind(SocketAddress localAddress) throws InterruptedException {
+			JsonRpcTransport transport = this.transport != null ? this.transport : JsonRpcTransport.best(localAddress);
+			Class<? extends ServerChannel> channelClass = transport.serverChannelClass(localAddress);
+			boolean domainSocket = localAddress instanceof DomainSocketAddress;
+			EventLoopGroup eventLoopGroup = transport.newEventLoopGroup(eventLoopThreads);
+			List<Channel> listeners = new ArrayList<>();
+			try {
+				ChannelOption<Boolean> reusePortOption = reusePort && !domainSocket ? transport.reusePortOption() : null;
+				if (reusePortOption == null) {
+					listeners.add(bootstrap(channelClass, domainSocket, eventLoopGroup).bind(localAddress).sync()
+							.channel());
+				} else {
+					for (EventExecutor executor : eventLoopGroup) {
+						EventLoop eventLoop = (EventLoop) executor;
+						Channel listener = bootstrap(channelClass, false, eventLoop).option(reusePortOption, true)
+								.bind(localAddress).sync().channel();
+						listeners.add(listener);
+						// the other listeners take the port bound by the first one if it was 0
+						localAddress = listener.localAddress();
+					}
+				}
+			} catch (InterruptedException | RuntimeException e) {
+				for (Channel listener : listeners) {
+					listener.close();
+				}
+				eventLoopGroup.shutdownGracefully();
+				throw e;
+			}
+			return new JsonRpcServer(transport, eventLoopGroup, listeners);
+		}
+
+		private ServerBootstrap bootstrap(Class<? extends ServerChannel> channelClass, boolean domainSocket,
+				EventLoopGroup eventLoopGroup) {
+			ServerBootstrap bootstrap = new ServerBootstrap().group(eventLoopGroup).channel(channelClass)
+					.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+					.childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+					.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+							new WriteBufferWaterMark(writeBufferLowWaterMark, writeBufferHighWaterMark))
+					.childHandler(new ChannelInitializer<Channel>() {
+						@Override
+						protected void initChannel(Channel ch) {
+							initPipeline(ch.pipeline());
+						}
+					});
+			if (!domainSocket) {
+				bootstrap.childOption(ChannelOption.TCP_NODELAY, true);
+			}
+			return bootstrap;
+		}
+
+		private void initPipeline(ChannelPipeline pipeline) {
+			if (pipelineInitializer != null) {
+				pipelineInitializer.accept(pipeline);
+			}
+			if (webSocketPath != null) {
+				pipeline.addLast(new HttpServerCodec());
+				pipeline.addLast(new HttpObjectAggregator(65536));
+				pipeline.addLast(new WebSocketServerProtocolHandler(webSocketPath, null, false, maxObjectLength));
+				pipeline.addLast(new JsonRpcProtocolPassWebSocketHandler(jsonRpcClientHandler, jsonRpcServerHandler,
+						maxObjectLength));
+			} else if (httpPath != null) {
+				HttpServerCodec sourceCodec = new HttpServerCodec();
+				HttpServerUpgradeHandler upgradeHandler = new HttpServerUpgradeHandler(sourceCodec,
+						protocol -> AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)
+								? new Http2ServerUpgradeCodec(Http2FrameCodecBuilder.forServer().build(),
+										http2Multiplexer())
+								: null,
+						maxObjectLength);
+				pipeline.addLast(new CleartextHttp2ServerUpgradeHandler(sourceCodec, upgradeHandler,
+						new ChannelHandlerAdapter() {
+							@Override
+							public void handlerAdded(ChannelHandlerContext ctx) {
+								// by prior knowledge, the multiplexer needs the frame codec before it
+								Http2FrameCodec frameCodec = Http2FrameCodecBuilder.forServer().build();
+								ctx.pipeline().addAfter(ctx.name(), null, frameCodec);
+								ctx.pipeline().addAfter(ctx.pipeline().context(frameCodec).name(), null,
+										http2Multiplexer());
+								ctx.pipeline().remove(this);
+							}
+						}));
+				pipeline.addLast(new HttpObjectAggregator(maxObjectLength));
+				pipeline.addLast(new JsonRpcHttpServerHandler(jsonRpcServerHandler, httpPath));
+			} else {
+				pipeline.addLast(new JsonRpcProtocolHandler(jsonRpcClientHandler, jsonRpcServerHandler, maxObjectLength));
+			}
+		}
+
+		/**
+		 * Every stream is a child channel with its own JSON-RPC handler.
+		 */
+		private Http2MultiplexHandler http2Multiplexer() {
+			return new Http2MultiplexHandler(new ChannelInitializer<Channel>() {
+				@Override
+				protected void initChannel(Channel ch) {
+					ch.pipeline().addLast(new Http2StreamFrameToHttpObjectCodec(true));
+					ch.pipeline().addLast(new HttpObjectAggregator(maxObjectLength));
+					ch.pipeline().addLast(new JsonRpcHttpServerHandler(jsonRpcServerHandler, httpPath));
+				}
+			});
+		}
+	}
+}
@@ -1,31 +1,57 @@
 package com.touuki.netty.jsonrpc;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
 import java.lang.reflect.UndeclaredThrowableException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.BinaryNode;
 import com.fasterxml.jackson.databind.node.NullNode;
-import com.fasterxml.jackson.databind.node.TextNode;
+import com.fasterxml.jackson.databind.node.POJONode;
+import com.fasterxml.jackson.databind.util.RawValue;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.Channel;
@@ -33,28 +59,89 @@ import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.handler.codec.CorruptedFrameException;
 import io.netty.handler.codec.DecoderException;
 import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.AttributeKey;
 
 @Sharable
 public class JsonRpcServerHandler extends SimpleChannelInboundHandler<JsonRpcRequest> {
 	private static final Logger log = LoggerFactory.getLogger(JsonRpcServerHandler.class);
+	private static final ResultCache<JsonNode> NOT_CACHEABLE = new ResultCache<>(0, 0);
+	private static final AttributeKey<Map<String, Invocation>> INVOCATION_FOR_ID = AttributeKey
+			.valueOf("INVOCATION_FOR_ID");
+	private static final AttributeKey<SerialExecutor> SERIAL_EXECUTOR = AttributeKey.valueOf("SERIAL_EXECUTOR");
+	private static final ClassValue<JsonRpcDispatcher> DISPATCHERS = new ClassValue<JsonRpcDispatcher>() {
+		@Override
+		protected JsonRpcDispatcher computeValue(Class<?> type) {
+			for (JsonRpcDispatcher dispatcher : ServiceLoader.load(JsonRpcDispatcher.class, type.getClassLoader())) {
+				if (dispatcher.getServiceInterface() == type) {
+					return dispatcher;
+				}
+			}
+			return null;
+		}
+	};
 
 	public static final String DEFAULT_JSONRPC_VERSION = "2.0";
 	private final ObjectMapper mapper;
 	private final Class<?> remoteInterface;
 	private final Object handler;
+	private final JsonRpcServiceRegistry registry;
 	private boolean shouldLogInvocationErrors = true;
+	private JsonRpcAdmissionControl admissionControl = JsonRpcAdmissionControl.builder().build();
+	private JsonRpcMetrics metrics = JsonRpcMetrics.NOOP;
+	private JsonRpcTracer tracer;
+	private JsonRpcCodec codec;
+	private Executor executor;
+	private final Map<String, JsonRpcPriority> priorityForName = new ConcurrentHashMap<>();
+	private final Map<String, Boolean> orderedForName = new ConcurrentHashMap<>();
+	private final Map<String, Map<Method, ResultCache<JsonNode>>> resultCaches = new ConcurrentHashMap<>();
+	private final Map<Class<?>, Map<String, Set<Method>>> methodTables = new ConcurrentHashMap<>();
+	private final Map<Method, JsonRpcDispatcher.Invoker> invokers = new ConcurrentHashMap<>();
+	private JsonRpcTopicPublisher topicPublisher;
+	private boolean binaryAttachments = false;
 
 	public JsonRpcServerHandler(ObjectMapper mapper, Object handler, Class<?> remoteInterface) {
 		this.mapper = mapper;
+		this.codec = new JacksonJsonRpcCodec(mapper);
 		this.handler = handler;
 		this.remoteInterface = remoteInterface;
+		this.registry = null;
 		if (handler != null) {
 			log.debug("created server for interface {} with handler {}", remoteInterface, handler.getClass());
 		}
 	}
 
+	/**
+	 * Create a server of the services in the registry, called by
+	 * {@code serviceName.methodName}.
+	 *
+	 * @param mapper   the object mapper
+	 * @param registry the registry of the services
+	 */
+	public JsonRpcServerHandler(ObjectMapper mapper, JsonRpcServiceRegistry registry) {
+		this.mapper = mapper;
+		this.codec = new JacksonJsonRpcCodec(mapper);
+		this.handler = null;
+		this.remoteInterface = null;
+		this.registry = registry;
+	}
+
 	@Override
 	protected void channelRead0(ChannelHandlerContext ctx, JsonRpcRequest msg) {
+		if (msg.getAttachments() == null) {
+			handleRequest(ctx, msg);
+			return;
+		}
+		try {
+			handleRequest(ctx, msg);
+		} finally {
+			// retained by the invocation if any
+			JsonRpcAttachments.release(msg.getAttachments());
+		}
+	}
+
+	private void handleRequest(ChannelHandlerContext ctx, JsonRpcRequest msg) {
+		JsonRpcTracer tracer = this.tracer;
+		long parsedNanos = tracer == null ? 0 : System.nanoTime();
 		String jsonrpc;
 		if (msg.getJsonrpc() != null) {
 			jsonrpc = msg.getJsonrpc();
@@ -64,44 +151,181 @@ public class JsonRpcServerHandler extends SimpleChannelInboundHandler<JsonRpcReq
 
 		// ping server
 		if ("rpc.ping".equals(msg.getMethod()) && msg.getId() != null) {
-			ctx.writeAndFlush(new JsonRpcResponse(jsonrpc, msg.getId(), TextNode.valueOf("rpc.pong"), null));
+			ctx.writeAndFlush(new JsonRpcResponse(jsonrpc, msg.getId(), JsonRpcEnvelopeEncoder.PONG, null));
 			return;
 		}
 
-		final String partialMethodName = getMethodName(msg.getMethod());
-		final String serviceName = getServiceName(msg.getMethod());
+		// cancel a call of the channel
+		if ("rpc.cancel".equals(msg.getMethod())) {
+			cancel(ctx.channel(), msg.getParams());
+			if (msg.getId() != null) {
+				ctx.writeAndFlush(new JsonRpcResponse(jsonrpc, msg.getId(), NullNode.getInstance(), null));
+			}
+			return;
+		}
 
-		if (partialMethodName.equals("")) {
-			returnError(ctx, jsonrpc, msg.getId(), new JsonRpcException("Method not found", JsonRpcException.METHOD_NOT_FOUND));
+		// subscribe or unsubscribe topics of the publisher
+		if (topicPublisher != null
+				&& ("rpc.subscribe".equals(msg.getMethod()) || "rpc.unsubscribe".equals(msg.getMethod()))) {
+			List<String> topics = getTopics(msg.getParams());
+			if (topics == null) {
+				returnError(ctx, jsonrpc, msg.getId(), JsonRpcException.METHOD_PARAMS_INVALID_EXCEPTION);
+				return;
+			}
+			if ("rpc.subscribe".equals(msg.getMethod())) {
+				topicPublisher.subscribe(ctx.channel(), topics);
+			} else {
+				topicPublisher.unsubscribe(ctx.channel(), topics);
+			}
+			if (msg.getId() != null) {
+				ctx.writeAndFlush(new JsonRpcResponse(jsonrpc, msg.getId(), NullNode.getInstance(), null));
+			}
 			return;
 		}
-		Set<Method> methods = findMatchingMethodsByName(getHandlerInterfaces(serviceName), partialMethodName);
+
+		final String serviceName;
+		final Object target;
+		final Set<Method> methods;
+		if (registry != null) {
+			JsonRpcServiceRegistry.ServiceMethods serviceMethods = registry.lookup(msg.getMethod());
+			serviceName = serviceMethods == null ? null : serviceMethods.serviceName;
+			target = serviceMethods == null ? null : serviceMethods.handler;
+			methods = serviceMethods == null ? Collections.emptySet() : serviceMethods.methods;
+		} else {
+			final String partialMethodName = getMethodName(msg.getMethod());
+			serviceName = getServiceName(msg.getMethod());
+
+			if (partialMethodName.equals("")) {
+				returnError(ctx, jsonrpc, msg.getId(), JsonRpcException.METHOD_NOT_FOUND_EXCEPTION);
+				return;
+			}
+			target = getHandler(serviceName);
+			methods = findMatchingMethodsByName(getHandlerInterfaces(serviceName), partialMethodName);
+		}
 		if (methods.isEmpty()) {
-			returnError(ctx, jsonrpc, msg.getId(), new JsonRpcException("Method not found", JsonRpcException.METHOD_NOT_FOUND));
+			returnError(ctx, jsonrpc, msg.getId(), JsonRpcException.METHOD_NOT_FOUND_EXCEPTION);
 			return;
 		}
 		MethodInfo methodInfo = findMatchingMethodByParams(methods, msg.getParams());
 		if (methodInfo == null) {
-			returnError(ctx, jsonrpc, msg.getId(), new JsonRpcException("Invalid params", JsonRpcException.METHOD_PARAMS_INVALID));
+			returnError(ctx, jsonrpc, msg.getId(), JsonRpcException.METHOD_PARAMS_INVALID_EXCEPTION);
 			return;
 		}
+		// the services of the same interfaces don't share their caches and limits
+		methodInfo.serviceName = serviceName == null ? "" : serviceName;
 
-		try {
-			Object target = getHandler(serviceName);
+		if (!admissionControl.tryAcquire(ctx.channel())) {
+			metrics.serverCallRejected(msg.getMethod());
+			returnError(ctx, jsonrpc, msg.getId(), JsonRpcException.TOO_MANY_REQUESTS_EXCEPTION);
+			return;
+		}
+		long startNanos = System.nanoTime();
+
+		// the key of the cache doesn't cover the attachments
+		ResultCache<JsonNode> resultCache = msg.getAttachments() == null ? getResultCache(methodInfo) : null;
+		String cacheKey = null;
+		if (resultCache != null) {
+			cacheKey = ResultCache.keyOf(msg.getParams());
+			JsonNode cached = resultCache.get(cacheKey);
+			if (cached != null) {
+				// a hit is a call completed at once, it takes no concurrency permit
+				metrics.serverCallStarted(msg.getMethod());
+				if (msg.getId() != null) {
+					ctx.writeAndFlush(new JsonRpcResponse(jsonrpc, msg.getId(), cached, null));
+				}
+				metrics.serverCallCompleted(msg.getMethod(), System.nanoTime() - startNanos, false);
+				return;
+			}
+		}
 
-			JsonNode result = invoke(target, methodInfo.method, methodInfo.arguments, methodInfo.channelParamsIndex,
-					ctx.channel());
+		if (!admissionControl.tryAcquire(methodInfo.serviceName, methodInfo.method)) {
+			metrics.serverCallRejected(msg.getMethod());
+			returnError(ctx, jsonrpc, msg.getId(), JsonRpcException.SERVER_BUSY_EXCEPTION);
+			return;
+		}
 
-			if (msg.getId() != null) {
-				if (result == null) {
-					result = NullNode.getInstance();
+		boolean hasDeadline = msg.getDeadline() != null;
+		long deadlineNanos = hasDeadline ? startNanos + TimeUnit.MILLISECONDS.toNanos(msg.getDeadline()) : 0;
+		ResultCache.Flight<JsonNode> flight = null;
+		if (resultCache != null) {
+			// coalesce with the same call in flight on another event loop
+			flight = new ResultCache.Flight<>();
+			JsonRpcContext follower = new JsonRpcContext(ctx.channel(), msg.getId(), msg.getMethod(), hasDeadline,
+					deadlineNanos, null);
+			ResultCache.Flight<JsonNode> leader;
+			while ((leader = resultCache.join(cacheKey, flight)) != null) {
+				if (leader.follow(follower)) {
+					admissionControl.release(methodInfo.serviceName, methodInfo.method, startNanos);
+					metrics.serverCallStarted(msg.getMethod());
+					Object id = msg.getId();
+					String method = msg.getMethod();
+					leader.whenComplete((result, cause) -> {
+						metrics.serverCallCompleted(method, System.nanoTime() - startNanos, cause != null);
+						if (cause == JsonRpcException.DEADLINE_EXCEEDED_EXCEPTION) {
+							// skipped as no follower was waiting, so this one has expired too
+							returnError(ctx, jsonrpc, id, JsonRpcException.DEADLINE_EXCEEDED_EXCEPTION);
+						} else if (cause != null) {
+							returnError(ctx, jsonrpc, id,
+									new JsonRpcException(JsonRpcException.INVOCATION_ERROR, cause));
+						} else if (id != null) {
+							ctx.writeAndFlush(new JsonRpcResponse(jsonrpc, id, result, null));
+						}
+					});
+					return;
+				}
+				// abandoned by its caller, computed again
+				resultCache.leave(cacheKey, leader);
+			}
+		}
+
+		metrics.serverCallStarted(msg.getMethod());
+		JsonRpcTrace trace = tracer == null ? null : tracer.startServer(ctx.channel(), msg, parsedNanos);
+		if (trace != null) {
+			trace.mark(JsonRpcTrace.Phase.DISPATCHED, startNanos);
+		}
+		JsonRpcContext context = new JsonRpcContext(ctx.channel(), msg.getId(), msg.getMethod(), hasDeadline,
+				deadlineNanos, trace == null ? null : trace.getTraceId());
+		Invocation invocation = new Invocation(ctx, jsonrpc, context, target, methodInfo, resultCache, cacheKey,
+				flight, startNanos, msg.getAttachments(), trace);
+		if (executor == null) {
+			invocation.run();
+		} else {
+			invocation.register();
+			FutureTask<Void> task = new FutureTask<>(invocation, null);
+			invocation.task = task;
+			JsonRpcPriority priority = executor instanceof JsonRpcPriorityExecutor
+					? getPriority(msg.getMethod(), methodInfo.method)
+					: JsonRpcPriority.NORMAL;
+			try {
+				if (isOrdered(msg.getMethod(), methodInfo.method)) {
+					getSerialExecutor(ctx.channel(), executor).execute(task, priority);
+				} else {
+					JsonRpcPriorityExecutor.execute(executor, task, priority);
 				}
-				ctx.writeAndFlush(new JsonRpcResponse(jsonrpc, msg.getId(), result, null));
+			} catch (Throwable e) {
+				invocation.fail(e);
 			}
-		} catch (Throwable e) {
-			handleError(ctx, msg.getId(), jsonrpc, e);
 		}
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		// nobody will read the responses
+		Map<String, Invocation> invocations = ctx.channel().attr(INVOCATION_FOR_ID).get();
+		if (invocations != null) {
+			for (Invocation invocation : invocations.values()) {
+				invocation.cancel();
+			}
+		}
+		ctx.fireChannelInactive();
+	}
 
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+		if (topicPublisher != null && ctx.channel().isWritable()) {
+			topicPublisher.flush(ctx.channel());
+		}
+		ctx.fireChannelWritabilityChanged();
 	}
 
 	@Override
@@ -114,43 +338,300 @@ public class JsonRpcServerHandler extends SimpleChannelInboundHandler<JsonRpcReq
 			returnError(ctx, DEFAULT_JSONRPC_VERSION, null, (JsonRpcException) cause);
 		} else if (cause instanceof JsonProcessingException || cause instanceof CorruptedFrameException
 				|| cause instanceof TooLongFrameException) {
-			returnError(ctx, DEFAULT_JSONRPC_VERSION, null, new JsonRpcException("Parse error", JsonRpcException.PARSE_ERROR));
+			returnError(ctx, DEFAULT_JSONRPC_VERSION, null, JsonRpcException.PARSE_ERROR_EXCEPTION);
 		} else {
 			ctx.fireExceptionCaught(cause);
 		}
 	}
 
+	public JsonRpcAdmissionControl getAdmissionControl() {
+		return admissionControl;
+	}
+
+	public void setAdmissionControl(JsonRpcAdmissionControl admissionControl) {
+		this.admissionControl = admissionControl;
+	}
+
+	public JsonRpcMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(JsonRpcMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public JsonRpcCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * @param codec the codec of the requests received and the results sent, a
+	 *              {@link JacksonJsonRpcCodec} of the mapper by default
+	 */
+	public void setCodec(JsonRpcCodec codec) {
+		this.codec = codec;
+	}
+
+	public JsonRpcTracer getTracer() {
+		return tracer;
+	}
+
+	/**
+	 * @param tracer the tracer of the calls received, or {@code null} to trace
+	 *               none
+	 */
+	public void setTracer(JsonRpcTracer tracer) {
+		this.tracer = tracer;
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * @param executor the executor to invoke the methods, or {@code null} to invoke
+	 *                 them in the event loop of the channel. The invocations queued
+	 *                 or running in the executor can be cancelled by
+	 *                 {@code rpc.cancel}, and are interrupted if running.
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	public boolean isBinaryAttachments() {
+		return binaryAttachments;
+	}
+
+	/**
+	 * @param binaryAttachments whether the {@code byte[]}, {@link ByteBuf} and
+	 *                          {@link java.nio.ByteBuffer} results are sent as
+	 *                          binary segments instead of base64, see
+	 *                          {@link JsonRpcClientHandler#setBinaryAttachments(boolean)}.
+	 *                          The clients must support it.
+	 */
+	public void setBinaryAttachments(boolean binaryAttachments) {
+		this.binaryAttachments = binaryAttachments;
+	}
+
+	public JsonRpcTopicPublisher getTopicPublisher() {
+		return topicPublisher;
+	}
+
+	/**
+	 * @param topicPublisher the publisher whose topics can be subscribed by
+	 *                       {@code rpc.subscribe} and unsubscribed by
+	 *                       {@code rpc.unsubscribe}, with the topic names as params
+	 */
+	public void setTopicPublisher(JsonRpcTopicPublisher topicPublisher) {
+		this.topicPublisher = topicPublisher;
+	}
+
+	/**
+	 * Set the priority of a method, overriding {@link JsonRpcMethod#priority()}.
+	 *
+	 * @param methodName the method name as called
+	 * @param priority   the priority, or {@code null} to remove the setting
+	 */
+	public void setPriority(String methodName, JsonRpcPriority priority) {
+		if (priority == null) {
+			priorityForName.remove(methodName);
+		} else {
+			priorityForName.put(methodName, priority);
+		}
+	}
+
+	/**
+	 * Set whether the calls of a method are ordered in their channel, overriding
+	 * {@link JsonRpcMethod#ordered()}.
+	 *
+	 * @param methodName the method name as called
+	 * @param ordered    whether ordered, or {@code null} to remove the setting
+	 */
+	public void setOrdered(String methodName, Boolean ordered) {
+		if (ordered == null) {
+			orderedForName.remove(methodName);
+		} else {
+			orderedForName.put(methodName, ordered);
+		}
+	}
+
+	private boolean isOrdered(String methodName, Method method) {
+		Boolean ordered = orderedForName.get(methodName);
+		if (ordered != null) {
+			return ordered;
+		}
+		JsonRpcMethod jsonRpcMethod = method.getAnnotation(JsonRpcMethod.class);
+		return jsonRpcMethod != null && jsonRpcMethod.ordered();
+	}
+
+	/**
+	 * Must be called from the event loop of the channel.
+	 */
+	private SerialExecutor getSerialExecutor(Channel channel, Executor executor) {
+		SerialExecutor serialExecutor = channel.attr(SERIAL_EXECUTOR).get();
+		if (serialExecutor == null) {
+			serialExecutor = new SerialExecutor(executor);
+			channel.attr(SERIAL_EXECUTOR).set(serialExecutor);
+		}
+		return serialExecutor;
+	}
+
+	private JsonRpcPriority getPriority(String methodName, Method method) {
+		JsonRpcPriority priority = priorityForName.get(methodName);
+		if (priority != null) {
+			return priority;
+		}
+		JsonRpcMethod jsonRpcMethod = method.getAnnotation(JsonRpcMethod.class);
+		return jsonRpcMethod == null ? JsonRpcPriority.NORMAL : jsonRpcMethod.priority();
+	}
+
+	/**
+	 * Cancel the call of the id given by the params of {@code rpc.cancel},
+	 * {@code [id]} or <code>{"id": id}</code>. Its response is dropped.
+	 */
+	private void cancel(Channel channel, JsonNode params) {
+		Map<String, Invocation> invocations = channel.attr(INVOCATION_FOR_ID).get();
+		if (invocations == null || params == null) {
+			return;
+		}
+		JsonNode idNode = params.isArray() ? params.get(0) : params.get("id");
+		if (idNode == null || idNode.isNull()) {
+			return;
+		}
+		Invocation invocation = invocations.get(idNode.isTextual() ? idNode.textValue() : idNode.toString());
+		if (invocation != null) {
+			invocation.cancel();
+		}
+	}
+
+	/**
+	 * @return the topic names of the params, {@code ["a", "b"]}, or {@code null}
+	 *         if invalid.
+	 */
+	private List<String> getTopics(JsonNode params) {
+		if (params == null || !params.isArray()) {
+			return null;
+		}
+		List<String> topics = new ArrayList<>(params.size());
+		for (JsonNode topic : params) {
+			if (!topic.isTextual()) {
+				return null;
+			}
+			topics.add(topic.textValue());
+		}
+		return topics;
+	}
+
+	/**
+	 * @return the cache of the method annotated by {@link JsonRpcCacheable}, or
+	 *         {@code null} if the method isn't cacheable.
+	 */
+	private ResultCache<JsonNode> getResultCache(MethodInfo methodInfo) {
+		Map<Method, ResultCache<JsonNode>> serviceCaches = resultCaches.get(methodInfo.serviceName);
+		if (serviceCaches == null) {
+			serviceCaches = resultCaches.computeIfAbsent(methodInfo.serviceName, name -> new ConcurrentHashMap<>());
+		}
+		ResultCache<JsonNode> resultCache = serviceCaches.get(methodInfo.method);
+		if (resultCache == null) {
+			JsonRpcCacheable cacheable = methodInfo.method.getAnnotation(JsonRpcCacheable.class);
+			// the result of a method taking the channel may depend on the caller
+			if (cacheable == null || methodInfo.channelParamsIndex >= 0) {
+				resultCache = NOT_CACHEABLE;
+			} else {
+				resultCache = new ResultCache<>(cacheable.maxSize(),
+						TimeUnit.MILLISECONDS.toNanos(cacheable.ttlMilliseconds()));
+			}
+			ResultCache<JsonNode> existing = serviceCaches.putIfAbsent(methodInfo.method, resultCache);
+			if (existing != null) {
+				resultCache = existing;
+			}
+		}
+		return resultCache == NOT_CACHEABLE ? null : resultCache;
+	}
+
 	private Set<Method> findMatchingMethodsByName(Class<?>[] classes, String name) {
+		if (classes.length == 1) {
+			return getMethodTable(classes[0]).getOrDefault(name, Collections.emptySet());
+		}
 		Set<Method> methods = new HashSet<>();
 		for (Class<?> clazz : classes) {
+			methods.addAll(getMethodTable(clazz).getOrDefault(name, Collections.emptySet()));
+		}
+		return methods;
+	}
+
+	/**
+	 * @return the methods of the class by the names they are called, scanned once
+	 *         per class.
+	 */
+	private Map<String, Set<Method>> getMethodTable(Class<?> clazz) {
+		Map<String, Set<Method>> methodTable = methodTables.get(clazz);
+		if (methodTable == null) {
+			methodTable = new HashMap<>();
 			for (Method method : clazz.getMethods()) {
 				JsonRpcMethod jsonRpcMethod = method.getAnnotation(JsonRpcMethod.class);
+				if (jsonRpcMethod == null || !jsonRpcMethod.required()) {
+					methodTable.computeIfAbsent(method.getName(), key -> new HashSet<>()).add(method);
+				}
 				if (jsonRpcMethod != null) {
-					if (jsonRpcMethod.required()) {
-						if (jsonRpcMethod.value().equals(name)) {
-							methods.add(method);
-						}
-					} else if (jsonRpcMethod.value().equals(name) || method.getName().equals(name)) {
-						methods.add(method);
-					}
-				} else if (method.getName().equals(name)) {
-					methods.add(method);
+					methodTable.computeIfAbsent(jsonRpcMethod.value(), key -> new HashSet<>()).add(method);
 				}
 			}
+			Map<String, Set<Method>> existing = methodTables.putIfAbsent(clazz, methodTable);
+			if (existing != null) {
+				methodTable = existing;
+			}
 		}
-		return methods;
+		return methodTable;
+	}
+
+	/**
+	 * @return the invoker of the generated {@link JsonRpcDispatcher} of the
+	 *         declaring interface, or a reflective one if there is none.
+	 */
+	private JsonRpcDispatcher.Invoker getInvoker(Method method) {
+		JsonRpcDispatcher.Invoker invoker = invokers.get(method);
+		if (invoker == null) {
+			JsonRpcDispatcher dispatcher = DISPATCHERS.get(method.getDeclaringClass());
+			if (dispatcher != null) {
+				invoker = dispatcher.getInvoker(method.getName(), method.getParameterTypes());
+			}
+			if (invoker == null) {
+				invoker = method::invoke;
+			}
+			JsonRpcDispatcher.Invoker existing = invokers.putIfAbsent(method, invoker);
+			if (existing != null) {
+				invoker = existing;
+			}
+		}
+		return invoker;
 	}
 
 	private void returnError(ChannelHandlerContext ctx, String jsonrpc, Object id, JsonRpcException jsonRpcException) {
-		if (jsonRpcException.getCode() == JsonRpcException.PARSE_ERROR || jsonRpcException.getCode() == JsonRpcException.INVALID_REQUEST) {
-			ctx.writeAndFlush(new JsonRpcResponse(jsonrpc, id, null, jsonRpcException))
-					.addListener((future) -> ctx.channel().close());
-		} else if (id != null) {
-			ctx.writeAndFlush(new JsonRpcResponse(jsonrpc, id, null, jsonRpcException));
+		returnError(ctx, jsonrpc, id, jsonRpcException, null);
+	}
+
+	/**
+	 * @return the future of writing the error, or {@code null} if not written.
+	 */
+	private ChannelFuture returnError(ChannelHandlerContext ctx, String jsonrpc, Object id,
+			JsonRpcException jsonRpcException, JsonRpcTrace trace) {
+		boolean close = jsonRpcException.getCode() == JsonRpcException.PARSE_ERROR
+				|| jsonRpcException.getCode() == JsonRpcException.INVALID_REQUEST;
+		if (!close && id == null) {
+			return null;
+		}
+		JsonRpcResponse response = new JsonRpcResponse(jsonrpc, id, null, jsonRpcException);
+		response.setTrace(trace);
+		ChannelFuture written = ctx.writeAndFlush(response);
+		if (close) {
+			written.addListener((future) -> ctx.channel().close());
 		}
+		return written;
 	}
 
-	private void handleError(ChannelHandlerContext ctx, Object id, String jsonrpc, Throwable e) {
+	private ChannelFuture handleError(ChannelHandlerContext ctx, Object id, String jsonrpc, Throwable e,
+			JsonRpcTrace trace) {
 		Throwable unwrappedException = getException(e);
 
 		if (shouldLogInvocationErrors) {
@@ -158,12 +639,17 @@ public class JsonRpcServerHandler extends SimpleChannelInboundHandler<JsonRpcReq
 		}
 		if (id != null) {
 			// TODO custom error resolver
-			returnError(ctx, jsonrpc, id, new JsonRpcException(-32001, unwrappedException));
+			return returnError(ctx, jsonrpc, id,
+					new JsonRpcException(JsonRpcException.INVOCATION_ERROR, unwrappedException), trace);
 		}
+		return null;
 	}
 
 	private Throwable getException(Throwable thrown) {
 		Throwable e = thrown;
+		while (e instanceof CompletionException && e.getCause() != null) {
+			e = e.getCause();
+		}
 		while (InvocationTargetException.class.isInstance(e)) {
 			// noinspection ThrowableResultOfMethodCallIgnored
 			e = InvocationTargetException.class.cast(e).getTargetException();
@@ -228,9 +714,8 @@ public class JsonRpcServerHandler extends SimpleChannelInboundHandler<JsonRpcReq
 		return handler;
 	}
 
-	private JsonNode invoke(Object target, Method method, List<JsonNode> arguments, int channelParamsIndex,
-			Channel channel)
-			throws IOException, IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+	private Object invoke(Object target, Method method, List<JsonNode> arguments, int channelParamsIndex,
+			Channel channel, JsonRpcTrace trace) throws Throwable {
 		log.debug("Invoking method: {} with args {}", method.getName(), arguments);
 
 		Object[] convertedParams = new Object[method.getParameterCount()];
@@ -261,20 +746,49 @@ public class JsonRpcServerHandler extends SimpleChannelInboundHandler<JsonRpcReq
 		if (channelParamsIndex >= 0) {
 			convertedParams[channelParamsIndex] = channel;
 		}
+		if (trace != null) {
+			trace.mark(JsonRpcTrace.Phase.BOUND);
+		}
 
-		Object result = method.invoke(target, convertedParams);
+		Object result = getInvoker(method).invoke(target, convertedParams);
 
 		log.debug("Invoked method: {}, result {}", method.getName(), result);
 
-		return hasReturnValue(method) ? mapper.valueToTree(result) : null;
+		return hasReturnValue(method) ? result : null;
 	}
 
 	private Object convertJsonToParameter(JsonNode jsonNode, Type parameterType) throws IOException {
-		JsonParser paramJsonParser = mapper.treeAsTokens(jsonNode);
 		JavaType paramJavaType = mapper.getTypeFactory().constructType(parameterType);
+		ByteBuf attachment = JsonRpcAttachments.getByteBuf(jsonNode);
+		if (attachment != null) {
+			// a view of the attachment, valid until the invocation completes
+			Object converted = JsonRpcAttachments.convert(attachment, paramJavaType.getRawClass(), true);
+			if (converted != null) {
+				return converted;
+			}
+			jsonNode = BinaryNode.valueOf(ByteBufUtil.getBytes(attachment));
+		}
+		if (jsonNode.isArray() && isLazyType(paramJavaType.getRawClass())) {
+			Iterator<Object> iterator = new LazyIterator((ArrayNode) jsonNode, paramJavaType.containedTypeOrUnknown(0));
+			if (paramJavaType.getRawClass() == Iterator.class) {
+				return iterator;
+			}
+			return StreamSupport.stream(
+					// a null element is bound to null
+					Spliterators.spliterator(iterator, jsonNode.size(), Spliterator.ORDERED),
+					false);
+		}
+		return codec.treeToValue(jsonNode, paramJavaType);
+	}
 
-		return mapper.readerFor(paramJavaType).with(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY)
-				.readValue(paramJsonParser);
+	private String encode(JsonNode result) throws IOException {
+		ByteBuf encoded = Unpooled.buffer();
+		try {
+			codec.writeValue(result, encoded);
+			return encoded.toString(StandardCharsets.UTF_8);
+		} finally {
+			encoded.release();
+		}
 	}
 
 	private MethodInfo findMatchingMethodByParams(Set<Method> methods, JsonNode paramsNode) {
@@ -304,7 +818,7 @@ public class JsonRpcServerHandler extends SimpleChannelInboundHandler<JsonRpcReq
 		}
 		if (node.isArray()) {
 			return type.isArray() ? node.size() == 0 || isMatchingType(node.get(0), type.getComponentType())
-					: Collection.class.isAssignableFrom(type);
+					: Collection.class.isAssignableFrom(type) || isLazyType(type);
 		}
 		if (node.isBoolean()) {
 			return boolean.class.isAssignableFrom(type) || Boolean.class.isAssignableFrom(type);
@@ -316,6 +830,14 @@ public class JsonRpcServerHandler extends SimpleChannelInboundHandler<JsonRpcReq
 		return false;
 	}
 
+	/**
+	 * An {@link Iterator} or {@link Stream} param is converted element by element
+	 * while the method consumes it, instead of into a whole collection.
+	 */
+	private boolean isLazyType(Class<?> type) {
+		return type == Iterator.class || type == Stream.class;
+	}
+
 	private boolean byteOrCharAssignable(Class<?> type) {
 		return byte[].class.isAssignableFrom(type) || Byte[].class.isAssignableFrom(type)
 				|| char[].class.isAssignableFrom(type) || Character[].class.isAssignableFrom(type);
@@ -412,11 +934,282 @@ public class JsonRpcServerHandler extends SimpleChannelInboundHandler<JsonRpcReq
 		return bestMethodInfo;
 	}
 
+	/**
+	 * The invocation of a call, completed once by its result, its error or its
+	 * cancellation. A {@link CompletionStage} result is completed asynchronously.
+	 */
+	private class Invocation implements Runnable {
+		private final ChannelHandlerContext ctx;
+		private final String jsonrpc;
+		private final JsonRpcContext context;
+		private final Object id;
+		private final String methodName;
+		private final Object target;
+		private final MethodInfo methodInfo;
+		private final ResultCache<JsonNode> resultCache;
+		private final String cacheKey;
+		private final ResultCache.Flight<JsonNode> flight;
+		private final long startNanos;
+		private final AtomicBoolean started = new AtomicBoolean();
+		private final AtomicBoolean completed = new AtomicBoolean();
+		private volatile boolean cancelled;
+		private volatile boolean detached;
+		private volatile boolean registered;
+		private volatile Future<?> task;
+		private volatile CompletableFuture<?> asyncResult;
+		private final List<ByteBuf> attachments;
+		private final JsonRpcTrace trace;
+
+		private Invocation(ChannelHandlerContext ctx, String jsonrpc, JsonRpcContext context, Object target,
+				MethodInfo methodInfo, ResultCache<JsonNode> resultCache, String cacheKey,
+				ResultCache.Flight<JsonNode> flight, long startNanos, List<ByteBuf> attachments, JsonRpcTrace trace) {
+			this.ctx = ctx;
+			this.jsonrpc = jsonrpc;
+			this.context = context;
+			this.id = context.getId();
+			this.methodName = context.getMethod();
+			this.target = target;
+			this.methodInfo = methodInfo;
+			this.resultCache = resultCache;
+			this.cacheKey = cacheKey;
+			this.flight = flight;
+			this.startNanos = startNanos;
+			this.attachments = attachments;
+			this.trace = trace;
+			if (attachments != null) {
+				for (ByteBuf attachment : attachments) {
+					attachment.retain();
+				}
+			}
+		}
+
+		/**
+		 * Make the invocation cancellable by its id.
+		 */
+		private void register() {
+			if (id == null) {
+				return;
+			}
+			Map<String, Invocation> invocations = ctx.channel().attr(INVOCATION_FOR_ID).get();
+			if (invocations == null) {
+				ctx.channel().attr(INVOCATION_FOR_ID).setIfAbsent(new ConcurrentHashMap<>());
+				invocations = ctx.channel().attr(INVOCATION_FOR_ID).get();
+			}
+			registered = true;
+			invocations.put(id.toString(), this);
+		}
+
+		@Override
+		public void run() {
+			if (!started.compareAndSet(false, true)) {
+				return;
+			}
+			if (context.isExpired() && (flight == null || flight.abandon())) {
+				// the caller, and the followers if any, have stopped waiting while it was queued
+				log.debug("Skip the expired call: {}", context);
+				if (flight != null) {
+					resultCache.leave(cacheKey, flight);
+					flight.completeExceptionally(JsonRpcException.DEADLINE_EXCEEDED_EXCEPTION);
+				}
+				ChannelFuture written = null;
+				if (!detached) {
+					written = returnError(ctx, jsonrpc, id, JsonRpcException.DEADLINE_EXCEEDED_EXCEPTION, trace);
+				}
+				complete(true, written);
+				return;
+			}
+			JsonRpcContext previous = JsonRpcContext.enter(context);
+			try {
+				Object result = invoke(target, methodInfo.method, methodInfo.arguments, methodInfo.channelParamsIndex,
+						ctx.channel(), trace);
+				if (result instanceof CompletionStage) {
+					CompletableFuture<?> future = ((CompletionStage<?>) result).toCompletableFuture();
+					if (!registered && !future.isDone()) {
+						register();
+					}
+					asyncResult = future;
+					if (cancelled) {
+						future.cancel(true);
+					}
+					future.whenComplete((value, cause) -> {
+						if (cause != null) {
+							fail(cause);
+						} else {
+							succeed(value);
+						}
+					});
+				} else {
+					succeed(result);
+				}
+			} catch (Throwable e) {
+				fail(e);
+			} finally {
+				JsonRpcContext.restore(previous);
+			}
+		}
+
+		private void succeed(Object value) {
+			if (trace != null) {
+				trace.mark(JsonRpcTrace.Phase.INVOKED);
+			}
+			List<ByteBuf> resultAttachments = null;
+			try {
+				JsonNode result;
+				if (binaryAttachments && resultCache == null && JsonRpcEnvelopeEncoder.VERSION.equals(jsonrpc)
+						&& JsonRpcAttachments.isBinary(value)) {
+					resultAttachments = Collections.singletonList(JsonRpcAttachments.toByteBuf(value));
+					result = JsonRpcAttachments.placeholder(0);
+				} else {
+					result = value == null ? NullNode.getInstance() : codec.valueToTree(value);
+				}
+				if (resultCache != null) {
+					// encoded once, the hits are written as raw bytes
+					result = new POJONode(new RawValue(encode(result)));
+					resultCache.put(cacheKey, result);
+					flight.complete(result);
+				}
+				ChannelFuture written = null;
+				if (id != null && !detached) {
+					JsonRpcResponse response = new JsonRpcResponse(jsonrpc, id, result, null);
+					response.setAttachments(resultAttachments);
+					response.setTrace(trace);
+					resultAttachments = null;
+					written = ctx.writeAndFlush(response);
+				}
+				complete(cancelled, written);
+			} catch (Throwable e) {
+				fail(e);
+			} finally {
+				// not written
+				JsonRpcAttachments.release(resultAttachments);
+			}
+		}
+
+		private void fail(Throwable e) {
+			if (completed.get()) {
+				return;
+			}
+			if (trace != null) {
+				trace.mark(JsonRpcTrace.Phase.INVOKED);
+			}
+			if (flight != null) {
+				flight.completeExceptionally(getException(e));
+			}
+			ChannelFuture written = null;
+			if (!detached) {
+				written = handleError(ctx, id, jsonrpc, e, trace);
+			}
+			complete(true, written);
+		}
+
+		private void cancel() {
+			// nobody reads the response of this call
+			detached = true;
+			if (flight != null) {
+				if (!flight.abandon()) {
+					// the followers still wait for the result
+					return;
+				}
+				resultCache.leave(cacheKey, flight);
+			}
+			cancelled = true;
+			Future<?> task = this.task;
+			if (task != null) {
+				task.cancel(true);
+			}
+			CompletableFuture<?> asyncResult = this.asyncResult;
+			if (asyncResult != null) {
+				asyncResult.cancel(true);
+			}
+			if (started.compareAndSet(false, true)) {
+				// still queued, it will never run
+				if (flight != null) {
+					flight.completeExceptionally(new CancellationException());
+				}
+				complete(true);
+			}
+		}
+
+		private void complete(boolean error) {
+			complete(error, null);
+		}
+
+		/**
+		 * @param written the future of writing the response, or {@code null} if not
+		 *                written
+		 */
+		private void complete(boolean error, ChannelFuture written) {
+			if (!completed.compareAndSet(false, true)) {
+				return;
+			}
+			if (registered) {
+				Map<String, Invocation> invocations = ctx.channel().attr(INVOCATION_FOR_ID).get();
+				if (invocations != null) {
+					invocations.remove(id.toString(), this);
+				}
+			}
+			if (flight != null) {
+				resultCache.leave(cacheKey, flight);
+			}
+			admissionControl.release(methodInfo.serviceName, methodInfo.method, startNanos);
+			metrics.serverCallCompleted(methodName, System.nanoTime() - startNanos, error);
+			JsonRpcAttachments.release(attachments);
+			if (trace != null) {
+				trace.setError(error);
+				if (written == null) {
+					trace.complete();
+				} else {
+					written.addListener(future -> {
+						trace.mark(JsonRpcTrace.Phase.WRITTEN);
+						if (!future.isSuccess()) {
+							trace.setError(true);
+						}
+						trace.complete();
+					});
+				}
+			}
+		}
+	}
+
 	private class MethodInfo {
+		private String serviceName;
 		private Method method;
 		private int channelParamsIndex;
 		private List<JsonNode> arguments;
 
 	}
 
+	/**
+	 * Converts the elements of an array param one by one while the method
+	 * consumes them. The tree of the params is only read, it may still be read by
+	 * others, like the trace of the call.
+	 */
+	private class LazyIterator implements Iterator<Object> {
+		private final ArrayNode arrayNode;
+		private final JavaType elementType;
+		private int index;
+
+		private LazyIterator(ArrayNode arrayNode, JavaType elementType) {
+			this.arrayNode = arrayNode;
+			this.elementType = elementType;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return index < arrayNode.size();
+		}
+
+		@Override
+		public Object next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			JsonNode element = arrayNode.get(index++);
+			try {
+				return codec.treeToValue(element, elementType);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
 }
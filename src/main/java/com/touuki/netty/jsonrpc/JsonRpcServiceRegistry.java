@@ -0,0 +1,152 @@
+package com.touuki.netty.jsonrpc;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The services of a {@link JsonRpcServerHandler}, called by
+ * {@code serviceName.methodName}. The method table is precomputed from the
+ * service interfaces when a service is registered and replaced as a whole, so
+ * services can be registered and unregistered at runtime while the calls are
+ * dispatched without locking.
+ */
+public class JsonRpcServiceRegistry {
+	public static final char SEPARATOR = '.';
+
+	private final Map<String, Service> services = new LinkedHashMap<>();
+	private volatile Map<String, ServiceMethods> methodTable = Collections.emptyMap();
+
+	/**
+	 * Register a service by the interfaces of the handler, or its class if it
+	 * implements none.
+	 *
+	 * @param serviceName the name of the service
+	 * @param handler     the handler to invoke
+	 */
+	public void register(String serviceName, Object handler) {
+		Class<?>[] interfaces = handler.getClass().getInterfaces();
+		if (!Proxy.isProxyClass(handler.getClass()) && interfaces.length == 0) {
+			interfaces = new Class<?>[] { handler.getClass() };
+		}
+		register(serviceName, handler, interfaces);
+	}
+
+	/**
+	 * Register a service, or replace the service of the same name.
+	 *
+	 * @param serviceName      the name of the service, the methods of a service
+	 *                         named {@code ""} are called without prefix
+	 * @param handler          the handler to invoke
+	 * @param remoteInterfaces the interfaces whose methods can be called
+	 * @throws IllegalArgumentException if the service name is invalid, or a method
+	 *                                  has the full name of a method of another
+	 *                                  service, the registry is then unchanged
+	 */
+	public synchronized void register(String serviceName, Object handler, Class<?>... remoteInterfaces) {
+		if (serviceName.indexOf(SEPARATOR) >= 0 || "rpc".equals(serviceName)) {
+			throw new IllegalArgumentException("Invalid service name: " + serviceName);
+		}
+		Service previous = services.put(serviceName, new Service(handler, remoteInterfaces));
+		try {
+			rebuild();
+		} catch (IllegalArgumentException e) {
+			if (previous == null) {
+				services.remove(serviceName);
+			} else {
+				services.put(serviceName, previous);
+			}
+			throw e;
+		}
+	}
+
+	public synchronized boolean unregister(String serviceName) {
+		if (services.remove(serviceName) != null) {
+			rebuild();
+			return true;
+		}
+		return false;
+	}
+
+	public synchronized Set<String> getServiceNames() {
+		return new LinkedHashSet<>(services.keySet());
+	}
+
+	/**
+	 * @param methodName the full method name of a call
+	 * @return the handler and the methods of the name, or {@code null} if not
+	 *         found.
+	 */
+	ServiceMethods lookup(String methodName) {
+		return methodTable.get(methodName);
+	}
+
+	private void rebuild() {
+		Map<String, Set<Method>> methodsForName = new HashMap<>();
+		Map<String, String> serviceForName = new HashMap<>();
+		for (Map.Entry<String, Service> entry : services.entrySet()) {
+			String prefix = entry.getKey().isEmpty() ? "" : entry.getKey() + SEPARATOR;
+			Service service = entry.getValue();
+			for (Class<?> clazz : service.remoteInterfaces) {
+				for (Method method : clazz.getMethods()) {
+					if (method.getDeclaringClass() == Object.class) {
+						continue;
+					}
+					JsonRpcMethod jsonRpcMethod = method.getAnnotation(JsonRpcMethod.class);
+					if (jsonRpcMethod == null || !jsonRpcMethod.required()) {
+						addMethod(methodsForName, serviceForName, prefix + method.getName(), method, entry.getKey());
+					}
+					if (jsonRpcMethod != null && !jsonRpcMethod.value().isEmpty()) {
+						addMethod(methodsForName, serviceForName, prefix + jsonRpcMethod.value(), method, entry.getKey());
+					}
+				}
+			}
+		}
+		Map<String, ServiceMethods> newMethodTable = new HashMap<>();
+		for (Map.Entry<String, Set<Method>> entry : methodsForName.entrySet()) {
+			String serviceName = serviceForName.get(entry.getKey());
+			newMethodTable.put(entry.getKey(), new ServiceMethods(serviceName, services.get(serviceName).handler,
+					Collections.unmodifiableSet(entry.getValue())));
+		}
+		methodTable = newMethodTable;
+	}
+
+	private void addMethod(Map<String, Set<Method>> methodsForName, Map<String, String> serviceForName, String name,
+			Method method, String serviceName) {
+		// like "a.b" of the "" service and "b" of the "a" service, a call can't be
+		// dispatched to both handlers
+		String existing = serviceForName.putIfAbsent(name, serviceName);
+		if (existing != null && !existing.equals(serviceName)) {
+			throw new IllegalArgumentException("Method " + name + " of service \"" + serviceName
+					+ "\" conflicts with service \"" + existing + "\"");
+		}
+		methodsForName.computeIfAbsent(name, key -> new LinkedHashSet<>()).add(method);
+	}
+
+	private static class Service {
+		private final Object handler;
+		private final Class<?>[] remoteInterfaces;
+
+		private Service(Object handler, Class<?>[] remoteInterfaces) {
+			this.handler = handler;
+			this.remoteInterfaces = remoteInterfaces;
+		}
+	}
+
+	static class ServiceMethods {
+		final String serviceName;
+		final Object handler;
+		final Set<Method> methods;
+
+		private ServiceMethods(String serviceName, Object handler, Set<Method> methods) {
+			this.serviceName = serviceName;
+			this.handler = handler;
+			this.methods = methods;
+		}
+	}
+}
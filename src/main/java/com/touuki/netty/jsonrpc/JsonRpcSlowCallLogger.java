@@ -0,0 +1,31 @@
+package com.touuki.netty.jsonrpc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs the phases of the sampled calls slower than a threshold, as a warning.
+ */
+public class JsonRpcSlowCallLogger implements JsonRpcTraceListener {
+	private static final Logger log = LoggerFactory.getLogger(JsonRpcSlowCallLogger.class);
+
+	private final long thresholdNanos;
+
+	/**
+	 * @param threshold the min time from the first to the last phase of the calls
+	 *                  logged
+	 * @param unit      the unit of the threshold
+	 */
+	public JsonRpcSlowCallLogger(long threshold, TimeUnit unit) {
+		this.thresholdNanos = unit.toNanos(threshold);
+	}
+
+	@Override
+	public void traceCompleted(JsonRpcTrace trace) {
+		if (trace.getTotalNanos() >= thresholdNanos) {
+			log.warn("Slow call: {}", trace);
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package com.touuki.netty.jsonrpc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+/**
+ * Publishes notifications to the channels subscribed to a topic by
+ * {@code rpc.subscribe}, see
+ * {@link JsonRpcServerHandler#setTopicPublisher(JsonRpcTopicPublisher)}. The
+ * notification of a topic is called by the topic name with the value as the
+ * only param.
+ * <p>
+ * When a channel is not writable, the notifications to it are conflated: only
+ * the latest value of a topic, or of a key in the topic, is kept and sent when
+ * the channel becomes writable again. So a slow subscriber costs at most a
+ * value per key, and doesn't slow down the others.
+ */
+public class JsonRpcTopicPublisher {
+	private static final AttributeKey<Subscriber> SUBSCRIBER = AttributeKey.valueOf("SUBSCRIBER");
+
+	private final ObjectMapper mapper;
+	private final Map<String, Set<Channel>> channelsForTopic = new ConcurrentHashMap<>();
+
+	public JsonRpcTopicPublisher(ObjectMapper mapper) {
+		this.mapper = mapper;
+	}
+
+	/**
+	 * Publish a value conflated with the previous values of the topic.
+	 *
+	 * @param topic the topic
+	 * @param value the value
+	 * @return the number of subscribers of the topic
+	 */
+	public int publish(String topic, Object value) {
+		return publish(topic, null, value);
+	}
+
+	/**
+	 * Publish a value conflated with the previous values of the same key in the
+	 * topic.
+	 *
+	 * @param topic the topic
+	 * @param key   the key of the value, {@code null} to conflate with the whole
+	 *              topic
+	 * @param value the value
+	 * @return the number of subscribers of the topic
+	 */
+	public int publish(String topic, String key, Object value) {
+		Set<Channel> channels = channelsForTopic.get(topic);
+		if (channels == null || channels.isEmpty()) {
+			return 0;
+		}
+		JsonNode params = mapper.createArrayNode().add(mapper.<JsonNode>valueToTree(value));
+		JsonRpcRequest notification = new JsonRpcRequest(JsonRpcClientHandler.JSONRPC_VERSION, null, topic, params);
+		String conflationKey = key == null ? topic : topic + '\n' + key;
+		int count = 0;
+		for (Channel channel : channels) {
+			Subscriber subscriber = channel.attr(SUBSCRIBER).get();
+			if (subscriber != null) {
+				if (channel.eventLoop().inEventLoop()) {
+					subscriber.offer(conflationKey, notification);
+				} else {
+					channel.eventLoop().execute(() -> subscriber.offer(conflationKey, notification));
+				}
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @param topic the topic
+	 * @return the number of subscribers of the topic.
+	 */
+	public int getSubscriberCount(String topic) {
+		Set<Channel> channels = channelsForTopic.get(topic);
+		return channels == null ? 0 : channels.size();
+	}
+
+	/**
+	 * Must be called from the event loop of the channel.
+	 */
+	void subscribe(Channel channel, Collection<String> topics) {
+		Subscriber subscriber = channel.attr(SUBSCRIBER).get();
+		if (subscriber == null) {
+			subscriber = new Subscriber(channel);
+			channel.attr(SUBSCRIBER).set(subscriber);
+			channel.closeFuture().addListener(future -> unsubscribe(channel, channel.attr(SUBSCRIBER).get().topics));
+		}
+		for (String topic : topics) {
+			if (subscriber.topics.add(topic)) {
+				// added in the compute, the set can't be removed as empty meanwhile
+				channelsForTopic.compute(topic, (t, channels) -> {
+					if (channels == null) {
+						channels = ConcurrentHashMap.newKeySet();
+					}
+					channels.add(channel);
+					return channels;
+				});
+			}
+		}
+	}
+
+	/**
+	 * Must be called from the event loop of the channel.
+	 */
+	void unsubscribe(Channel channel, Collection<String> topics) {
+		Subscriber subscriber = channel.attr(SUBSCRIBER).get();
+		if (subscriber == null) {
+			return;
+		}
+		// may be the topics of the subscriber
+		for (String topic : new ArrayList<>(topics)) {
+			subscriber.topics.remove(topic);
+			channelsForTopic.computeIfPresent(topic, (t, channels) -> {
+				channels.remove(channel);
+				return channels.isEmpty() ? null : channels;
+			});
+			subscriber.discard(topic);
+		}
+	}
+
+	/**
+	 * Send the conflated notifications while the channel is writable. Must be
+	 * called from the event loop of the channel.
+	 */
+	void flush(Channel channel) {
+		Subscriber subscriber = channel.attr(SUBSCRIBER).get();
+		if (subscriber != null) {
+			subscriber.flush();
+		}
+	}
+
+	/**
+	 * The subscriptions of a channel, only accessed from its event loop.
+	 */
+	private static class Subscriber {
+		private final Channel channel;
+		private final Set<String> topics = new HashSet<>();
+		private final Map<String, JsonRpcRequest> conflated = new LinkedHashMap<>();
+
+		private Subscriber(Channel channel) {
+			this.channel = channel;
+		}
+
+		private void offer(String conflationKey, JsonRpcRequest notification) {
+			if (!topics.contains(notification.getMethod())) {
+				// unsubscribed in the meantime
+				return;
+			}
+			if (conflated.isEmpty() && channel.isWritable()) {
+				channel.writeAndFlush(notification);
+			} else {
+				// the latest value goes to the end
+				conflated.remove(conflationKey);
+				conflated.put(conflationKey, notification);
+			}
+		}
+
+		private void flush() {
+			if (conflated.isEmpty()) {
+				return;
+			}
+			Iterator<JsonRpcRequest> iterator = conflated.values().iterator();
+			while (iterator.hasNext() && channel.isWritable()) {
+				channel.write(iterator.next());
+				iterator.remove();
+			}
+			channel.flush();
+		}
+
+		private void discard(String topic) {
+			conflated.values().removeIf(notification -> topic.equals(notification.getMethod()));
+		}
+	}
+}
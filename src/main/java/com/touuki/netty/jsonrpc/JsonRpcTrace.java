@@ -0,0 +1,200 @@
+package com.touuki.netty.jsonrpc;
+
+import java.util.concurrent.TimeUnit;
+
+import io.netty.channel.Channel;
+
+/**
+ * The phases of a sampled call on the server or the client side, timestamped by
+ * {@link System#nanoTime()}. Passed to the {@link JsonRpcTraceListener}s of the
+ * {@link JsonRpcTracer} once the call is completed.
+ */
+public final class JsonRpcTrace {
+	private static final Phase[] PHASES = Phase.values();
+
+	/**
+	 * The phases in the order they may be recorded, a server records
+	 * {@code RECEIVED} to {@code WRITTEN} but {@code BOUND} is after
+	 * {@code DISPATCHED}, a client records {@code STARTED}, {@code BOUND},
+	 * {@code ENCODED}, {@code WRITTEN}, then {@code RECEIVED} to
+	 * {@code PARSED} of the response and {@code COMPLETED}.
+	 */
+	public enum Phase {
+		/** The client starts sending the request. */
+		STARTED,
+		/** The first byte of the frame is read. */
+		RECEIVED,
+		/** The frame is complete. */
+		FRAMED,
+		/** The frame is parsed into a request or a response. */
+		PARSED,
+		/** The server resolves the method and admits the call. */
+		DISPATCHED,
+		/** The params are converted, into the arguments on the server. */
+		BOUND,
+		/** The server method returns, or its asynchronous result completes. */
+		INVOKED,
+		/** The request or the response is serialized into a frame. */
+		ENCODED,
+		/** The frame is written to the socket. */
+		WRITTEN,
+		/** The client converts the result and completes the call. */
+		COMPLETED
+	}
+
+	private final JsonRpcTracer tracer;
+	private final String traceId;
+	private final boolean server;
+	private final Channel channel;
+	private final String method;
+	private final long[] nanos = new long[PHASES.length];
+	private volatile Object id;
+	private volatile boolean error;
+
+	JsonRpcTrace(JsonRpcTracer tracer, String traceId, boolean server, Channel channel, String method, Object id) {
+		this.tracer = tracer;
+		this.traceId = traceId;
+		this.server = server;
+		this.channel = channel;
+		this.method = method;
+		this.id = id;
+	}
+
+	/**
+	 * @return the id shared by the traces of a call across the nodes.
+	 */
+	public String getTraceId() {
+		return traceId;
+	}
+
+	/**
+	 * @return whether the call is traced by the server, or by the client.
+	 */
+	public boolean isServer() {
+		return server;
+	}
+
+	public Channel getChannel() {
+		return channel;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return the id of the request, {@code null} for a notification.
+	 */
+	public Object getId() {
+		return id;
+	}
+
+	/**
+	 * @return whether the call failed, timed out or was cancelled.
+	 */
+	public boolean isError() {
+		return error;
+	}
+
+	/**
+	 * @param phase the phase
+	 * @return the {@link System#nanoTime()} of the phase, {@code 0} if not
+	 *         recorded.
+	 */
+	public long getNanos(Phase phase) {
+		return nanos[phase.ordinal()];
+	}
+
+	/**
+	 * @param phase the phase
+	 * @return the time from the previous recorded phase to the phase, {@code 0} if
+	 *         either isn't recorded.
+	 */
+	public long getElapsedNanos(Phase phase) {
+		long end = nanos[phase.ordinal()];
+		long start = 0;
+		for (Phase other : PHASES) {
+			long at = nanos[other.ordinal()];
+			if (other != phase && at != 0 && at - end <= 0 && (start == 0 || at - start > 0)) {
+				start = at;
+			}
+		}
+		return end == 0 || start == 0 ? 0 : end - start;
+	}
+
+	/**
+	 * @return the time from the first to the last recorded phase.
+	 */
+	public long getTotalNanos() {
+		long first = 0;
+		long last = 0;
+		for (long at : nanos) {
+			if (at != 0) {
+				if (first == 0 || at - first < 0) {
+					first = at;
+				}
+				if (last == 0 || at - last > 0) {
+					last = at;
+				}
+			}
+		}
+		return last - first;
+	}
+
+	/**
+	 * Record the phase if not recorded yet.
+	 */
+	void mark(Phase phase) {
+		mark(phase, System.nanoTime());
+	}
+
+	void mark(Phase phase, long at) {
+		if (nanos[phase.ordinal()] == 0 && at != 0) {
+			nanos[phase.ordinal()] = at;
+		}
+	}
+
+	void setId(Object id) {
+		this.id = id;
+	}
+
+	void setError(boolean error) {
+		this.error = error;
+	}
+
+	/**
+	 * Pass the trace to the listeners of its tracer.
+	 */
+	void complete() {
+		tracer.complete(this);
+	}
+
+	/**
+	 * @return the recorded phases in the order of time, each with the time since
+	 *         the previous one in microseconds.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(server ? "server " : "client ").append(method).append(" [traceId=")
+				.append(traceId).append(", id=").append(id).append(", error=").append(error).append(", totalMicros=")
+				.append(TimeUnit.NANOSECONDS.toMicros(getTotalNanos()));
+		long previous = 0;
+		while (true) {
+			Phase next = null;
+			for (Phase phase : PHASES) {
+				long at = nanos[phase.ordinal()];
+				if (at != 0 && (previous == 0 || at - previous > 0)
+						&& (next == null || at - nanos[next.ordinal()] < 0)) {
+					next = phase;
+				}
+			}
+			if (next == null) {
+				break;
+			}
+			builder.append(", ").append(next.name().toLowerCase()).append('=');
+			builder.append(previous == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(nanos[next.ordinal()] - previous));
+			previous = nanos[next.ordinal()];
+		}
+		return builder.append(']').toString();
+	}
+}
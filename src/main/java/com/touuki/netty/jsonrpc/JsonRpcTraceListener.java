@@ -0,0 +1,17 @@
+package com.touuki.netty.jsonrpc;
+
+/**
+ * Receives the sampled calls of a {@link JsonRpcTracer} once completed, on the
+ * thread completing the call, which may be an event loop, so implementations
+ * should not block.
+ *
+ * @see JsonRpcSlowCallLogger
+ */
+@FunctionalInterface
+public interface JsonRpcTraceListener {
+
+	/**
+	 * @param trace the phases of the completed call
+	 */
+	void traceCompleted(JsonRpcTrace trace);
+}
@@ -0,0 +1,213 @@
+package com.touuki.netty.jsonrpc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+/**
+ * Samples the calls of {@link JsonRpcServerHandler} and
+ * {@link JsonRpcClientHandler}, timestamps the phases of each sampled call by
+ * {@link System#nanoTime()}, and passes them as a {@link JsonRpcTrace} to the
+ * listeners once the call is completed. Nothing is allocated for a call which
+ * is not sampled.
+ * <p>
+ * A sampled request sends its trace id in the {@code traceId} member. The
+ * server keeps the trace id if it samples the call too, or traces the call
+ * whatever its own sampling rate if it trusts the propagated ids, and the
+ * requests sent while invoking it carry the same trace id, so the traces of a
+ * call can be correlated across the nodes.
+ *
+ * <pre>
+ * jsonRpcServerHandler.setTracer(JsonRpcTracer.builder().samplingRate(0.01)
+ * 		.slowCallThreshold(100, TimeUnit.MILLISECONDS).build());
+ * </pre>
+ */
+public class JsonRpcTracer {
+	private static final Logger log = LoggerFactory.getLogger(JsonRpcTracer.class);
+	/**
+	 * The {@link System#nanoTime()} when the first byte and the last byte of the
+	 * latest frame were read from the channel.
+	 */
+	static final AttributeKey<long[]> INBOUND = AttributeKey.valueOf("JSONRPC_TRACE_INBOUND");
+
+	private final double samplingRate;
+	private final boolean trustPropagatedIds;
+	private final JsonRpcTraceListener[] listeners;
+
+	private JsonRpcTracer(Builder builder) {
+		this.samplingRate = builder.samplingRate;
+		this.trustPropagatedIds = builder.trustPropagatedIds;
+		this.listeners = builder.listeners.toArray(new JsonRpcTraceListener[0]);
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public double getSamplingRate() {
+		return samplingRate;
+	}
+
+	public boolean isTrustPropagatedIds() {
+		return trustPropagatedIds;
+	}
+
+	/**
+	 * @return the tracer of the server handler if any, else of the client
+	 *         handler, may be {@code null}.
+	 */
+	static JsonRpcTracer of(JsonRpcClientHandler jsonRpcClientHandler, JsonRpcServerHandler jsonRpcServerHandler) {
+		if (jsonRpcServerHandler != null && jsonRpcServerHandler.getTracer() != null) {
+			return jsonRpcServerHandler.getTracer();
+		} else if (jsonRpcClientHandler != null) {
+			return jsonRpcClientHandler.getTracer();
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Record when the latest frame of the channel was received.
+	 */
+	static void received(Channel channel, long receivedNanos, long framedNanos) {
+		long[] inbound = channel.attr(INBOUND).get();
+		if (inbound == null) {
+			inbound = new long[2];
+			channel.attr(INBOUND).set(inbound);
+		}
+		inbound[0] = receivedNanos;
+		inbound[1] = framedNanos;
+	}
+
+	private boolean sample() {
+		return samplingRate >= 1 || (samplingRate > 0 && ThreadLocalRandom.current().nextDouble() < samplingRate);
+	}
+
+	static String newTraceId() {
+		return Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+	}
+
+	/**
+	 * Start tracing a request received by the server, if it is sampled or carries
+	 * a trusted trace id. Must be called from the event loop of the channel.
+	 *
+	 * @param parsedNanos when the request was parsed
+	 * @return the trace, or {@code null} if the request is not traced.
+	 */
+	JsonRpcTrace startServer(Channel channel, JsonRpcRequest request, long parsedNanos) {
+		String traceId = request.getTraceId();
+		if (traceId == null || !trustPropagatedIds) {
+			// a peer can't make every call traced by sending trace ids
+			if (!sample()) {
+				return null;
+			}
+			if (traceId == null) {
+				traceId = newTraceId();
+			}
+		}
+		JsonRpcTrace trace = new JsonRpcTrace(this, traceId, true, channel, request.getMethod(), request.getId());
+		long[] inbound = channel.attr(INBOUND).get();
+		if (inbound != null) {
+			trace.mark(JsonRpcTrace.Phase.RECEIVED, inbound[0]);
+			trace.mark(JsonRpcTrace.Phase.FRAMED, inbound[1]);
+		}
+		trace.mark(JsonRpcTrace.Phase.PARSED, parsedNanos);
+		return trace;
+	}
+
+	/**
+	 * Start tracing a request sent by the client, if it's invoked by a traced call
+	 * or is sampled.
+	 *
+	 * @param parentTraceId the trace id of the call being invoked, may be
+	 *                      {@code null}
+	 * @return the trace, or {@code null} if the request is not traced.
+	 */
+	JsonRpcTrace startClient(Channel channel, String method, String parentTraceId) {
+		String traceId = parentTraceId;
+		if (traceId == null) {
+			if (!sample()) {
+				return null;
+			}
+			traceId = newTraceId();
+		}
+		JsonRpcTrace trace = new JsonRpcTrace(this, traceId, false, channel, method, null);
+		trace.mark(JsonRpcTrace.Phase.STARTED);
+		return trace;
+	}
+
+	void complete(JsonRpcTrace trace) {
+		for (JsonRpcTraceListener listener : listeners) {
+			try {
+				listener.traceCompleted(trace);
+			} catch (RuntimeException e) {
+				log.warn("Trace listener failed", e);
+			}
+		}
+	}
+
+	public static class Builder {
+		private final List<JsonRpcTraceListener> listeners = new ArrayList<>();
+		private double samplingRate;
+		private boolean trustPropagatedIds;
+
+		private Builder() {
+		}
+
+		/**
+		 * @param samplingRate the fraction of the calls traced, from 0 to 1
+		 * @return this builder
+		 */
+		public Builder samplingRate(double samplingRate) {
+			if (samplingRate < 0 || samplingRate > 1) {
+				throw new IllegalArgumentException("samplingRate must be between 0 and 1");
+			}
+			this.samplingRate = samplingRate;
+			return this;
+		}
+
+		/**
+		 * @param trustPropagatedIds whether the server traces every call carrying a
+		 *                           trace id, instead of only the sampled ones,
+		 *                           {@code false} by default. Only trust the peers
+		 *                           sampling their requests.
+		 * @return this builder
+		 */
+		public Builder trustPropagatedIds(boolean trustPropagatedIds) {
+			this.trustPropagatedIds = trustPropagatedIds;
+			return this;
+		}
+
+		/**
+		 * @param listener called with every completed trace
+		 * @return this builder
+		 */
+		public Builder listener(JsonRpcTraceListener listener) {
+			listeners.add(listener);
+			return this;
+		}
+
+		/**
+		 * Log the traced calls slower than the threshold.
+		 *
+		 * @param threshold the threshold
+		 * @param unit      the unit of threshold
+		 * @return this builder
+		 * @see JsonRpcSlowCallLogger
+		 */
+		public Builder slowCallThreshold(long threshold, TimeUnit unit) {
+			return listener(new JsonRpcSlowCallLogger(threshold, unit));
+		}
+
+		public JsonRpcTracer build() {
+			return new JsonRpcTracer(this);
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package com.touuki.netty.jsonrpc;
+
+import java.net.SocketAddress;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+
+/**
+ * The Netty transports {@link JsonRpcServer} and {@link JsonRpcClient} can run
+ * on. The native ones are looked up by reflection, so they are only used when
+ * their jar and native library are on the classpath, like
+ * {@code netty-transport-native-epoll} with the {@code linux-x86_64}
+ * classifier, or {@code netty-incubator-transport-native-io_uring}. Unix domain
+ * sockets, addressed by {@link DomainSocketAddress}, are only supported by
+ * epoll.
+ */
+public enum JsonRpcTransport {
+	IO_URING("io.netty.incubator.channel.uring.IOUring", "io.netty.incubator.channel.uring.IOUringEventLoopGroup",
+			"io.netty.incubator.channel.uring.IOUringServerSocketChannel",
+			"io.netty.incubator.channel.uring.IOUringSocketChannel", null, null,
+			"io.netty.incubator.channel.uring.IOUringChannelOption"),
+	EPOLL("io.netty.channel.epoll.Epoll", "io.netty.channel.epoll.EpollEventLoopGroup",
+			"io.netty.channel.epoll.EpollServerSocketChannel", "io.netty.channel.epoll.EpollSocketChannel",
+			"io.netty.channel.epoll.EpollServerDomainSocketChannel", "io.netty.channel.epoll.EpollDomainSocketChannel",
+			"io.netty.channel.epoll.EpollChannelOption"),
+	NIO(null, "io.netty.channel.nio.NioEventLoopGroup", "io.netty.channel.socket.nio.NioServerSocketChannel",
+			"io.netty.channel.socket.nio.NioSocketChannel", null, null, null);
+
+	private final String availabilityClassName;
+	private final String eventLoopGroupClassName;
+	private final String serverChannelClassName;
+	private final String channelClassName;
+	private final String serverDomainSocketChannelClassName;
+	private final String domainSocketChannelClassName;
+	private final String channelOptionClassName;
+	private volatile Boolean available;
+
+	JsonRpcTransport(String availabilityClassName, String eventLoopGroupClassName, String serverChannelClassName,
+			String channelClassName, String serverDomainSocketChannelClassName, String domainSocketChannelClassName,
+			String channelOptionClassName) {
+		this.availabilityClassName = availabilityClassName;
+		this.eventLoopGroupClassName = eventLoopGroupClassName;
+		this.serverChannelClassName = serverChannelClassName;
+		this.channelClassName = channelClassName;
+		this.serverDomainSocketChannelClassName = serverDomainSocketChannelClassName;
+		this.domainSocketChannelClassName = domainSocketChannelClassName;
+		this.channelOptionClassName = channelOptionClassName;
+	}
+
+	/**
+	 * @return the first available transport of io_uring, epoll and NIO.
+	 */
+	public static JsonRpcTransport best() {
+		for (JsonRpcTransport transport : values()) {
+			if (transport.isAvailable()) {
+				return transport;
+			}
+		}
+		return NIO;
+	}
+
+	/**
+	 * @param address the address to bind or connect
+	 * @return the first available transport supporting the address.
+	 */
+	public static JsonRpcTransport best(SocketAddress address) {
+		for (JsonRpcTransport transport : values()) {
+			if (transport.isAvailable() && transport.supports(address)) {
+				return transport;
+			}
+		}
+		throw new IllegalStateException("No available transport supports " + address);
+	}
+
+	/**
+	 * @param address the address to bind or connect
+	 * @return whether the transport supports the type of the address, regardless
+	 *         of its availability.
+	 */
+	public boolean supports(SocketAddress address) {
+		return !(address instanceof DomainSocketAddress) || domainSocketChannelClassName != null;
+	}
+
+	public boolean isAvailable() {
+		Boolean available = this.available;
+		if (available == null) {
+			if (availabilityClassName == null) {
+				available = true;
+			} else {
+				try {
+					available = (Boolean) loadClass(availabilityClassName).getMethod("isAvailable").invoke(null);
+				} catch (Exception | LinkageError e) {
+					// the jar or the native library is missing
+					available = false;
+				}
+			}
+			this.available = available;
+		}
+		return available;
+	}
+
+	/**
+	 * @param threads the number of event loops, 0 for the Netty default
+	 */
+	EventLoopGroup newEventLoopGroup(int threads) {
+		try {
+			return (EventLoopGroup) loadClass(eventLoopGroupClassName).getConstructor(int.class).newInstance(threads);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(name() + " transport is not available", e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	Class<? extends ServerChannel> serverChannelClass(SocketAddress localAddress) {
+		checkSupports(localAddress);
+		return (Class<? extends ServerChannel>) loadClass(
+				localAddress instanceof DomainSocketAddress ? serverDomainSocketChannelClassName : serverChannelClassName);
+	}
+
+	@SuppressWarnings("unchecked")
+	Class<? extends Channel> channelClass(SocketAddress remoteAddress) {
+		checkSupports(remoteAddress);
+		return (Class<? extends Channel>) loadClass(
+				remoteAddress instanceof DomainSocketAddress ? domainSocketChannelClassName : channelClassName);
+	}
+
+	private void checkSupports(SocketAddress address) {
+		if (!supports(address)) {
+			throw new IllegalStateException(name() + " transport doesn't support " + address);
+		}
+	}
+
+	/**
+	 * @return the {@code SO_REUSEPORT} option of the native transport, or
+	 *         {@code null} if not supported.
+	 */
+	@SuppressWarnings("unchecked")
+	ChannelOption<Boolean> reusePortOption() {
+		if (channelOptionClassName == null) {
+			return null;
+		}
+		try {
+			return (ChannelOption<Boolean>) loadClass(channelOptionClassName).getField("SO_REUSEPORT").get(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	private static Class<?> loadClass(String className) {
+		try {
+			return Class.forName(className, true, JsonRpcTransport.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException(className + " is not on the classpath", e);
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package com.touuki.netty.jsonrpc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of latencies in nanoseconds with log-linear buckets
+ * like HdrHistogram: values below 32 are counted exactly, above that each power
+ * of two range is split into 32 buckets, which keeps the relative error of a
+ * percentile around 3%. Recording never allocates.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_SHIFT = 40;
+	private static final long MAX_VALUE = (2L * SUB_BUCKET_COUNT << MAX_SHIFT) - 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKET_COUNT * (MAX_SHIFT + 2));
+	private final LongAdder totalCount = new LongAdder();
+	private final LongAdder totalValue = new LongAdder();
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		} else if (nanos > MAX_VALUE) {
+			nanos = MAX_VALUE;
+		}
+		counts.incrementAndGet(indexOf(nanos));
+		totalCount.increment();
+		totalValue.add(nanos);
+	}
+
+	public long getCount() {
+		return totalCount.sum();
+	}
+
+	public double getMean(TimeUnit unit) {
+		long count = totalCount.sum();
+		return count == 0 ? 0 : (double) totalValue.sum() / count / unit.toNanos(1);
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @param unit       the unit of the returned value
+	 * @return the highest value of the bucket where the percentile falls in
+	 */
+	public double getValueAtPercentile(double percentile, TimeUnit unit) {
+		long[] snapshot = new long[counts.length()];
+		long count = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+		long cumulative = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			cumulative += snapshot[i];
+			if (cumulative >= rank) {
+				return (double) highestValueOf(i) / unit.toNanos(1);
+			}
+		}
+		return (double) MAX_VALUE / unit.toNanos(1);
+	}
+
+	public double getMax(TimeUnit unit) {
+		for (int i = counts.length() - 1; i >= 0; i--) {
+			if (counts.get(i) > 0) {
+				return (double) highestValueOf(i) / unit.toNanos(1);
+			}
+		}
+		return 0;
+	}
+
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+		totalCount.reset();
+		totalValue.reset();
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+		return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	static long highestValueOf(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long lowest = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return "LatencyHistogram [count=" + getCount() + ", mean=" + getMean(TimeUnit.MICROSECONDS) + "us, p50="
+				+ getValueAtPercentile(50, TimeUnit.MICROSECONDS) + "us, p99="
+				+ getValueAtPercentile(99, TimeUnit.MICROSECONDS) + "us, p999="
+				+ getValueAtPercentile(99.9, TimeUnit.MICROSECONDS) + "us, max=" + getMax(TimeUnit.MICROSECONDS)
+				+ "us]";
+	}
+}
@@ -12,4 +12,22 @@ public class ProxyUtils {
 		return (T) Proxy.newProxyInstance(classLoader, new Class<?>[] { proxyInterface },
 				new JsonRpcClientInvocationHandler(client));
 	}
+
+	/**
+	 * Create a client proxy whose calls are sent to the channel chosen by the
+	 * selector, unless a {@link Channel}, a {@link io.netty.channel.group.ChannelGroup}
+	 * or another {@link JsonRpcChannelSelector} is given in the parameters.
+	 *
+	 * @param classLoader    the class loader to define the proxy class
+	 * @param proxyInterface the client interface
+	 * @param client         the client handler to send the calls
+	 * @param selector       the default selector of the channel
+	 * @return the proxy
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T createClientProxy(ClassLoader classLoader, Class<T> proxyInterface,
+			JsonRpcClientHandler client, JsonRpcChannelSelector selector) {
+		return (T) Proxy.newProxyInstance(classLoader, new Class<?>[] { proxyInterface },
+				new JsonRpcClientInvocationHandler(client, selector));
+	}
 }
@@ -4,19 +4,42 @@ import java.lang.reflect.Type;
 import java.util.concurrent.CompletableFuture;
 
 class Request {
-    private CompletableFuture onReply;
+    private CompletableFuture<Object> onReply;
     private Type responseType;
+    private String method;
+    private long startNanos;
+    private JsonRpcTrace trace;
 
-    public Request(CompletableFuture onReply, Type responseType) {
+    public Request(CompletableFuture<Object> onReply, Type responseType, String method, long startNanos) {
+        this(onReply, responseType, method, startNanos, null);
+    }
+
+    public Request(CompletableFuture<Object> onReply, Type responseType, String method, long startNanos,
+            JsonRpcTrace trace) {
         this.onReply = onReply;
         this.responseType = responseType;
+        this.method = method;
+        this.startNanos = startNanos;
+        this.trace = trace;
     }
 
-    public CompletableFuture getOnReply() {
+    public CompletableFuture<Object> getOnReply() {
         return onReply;
     }
 
     public Type getResponseType() {
         return responseType;
     }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public JsonRpcTrace getTrace() {
+        return trace;
+    }
 }
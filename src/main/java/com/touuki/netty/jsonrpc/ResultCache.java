@@ -0,0 +1,184 @@
+package com.touuki.netty.jsonrpc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+/**
+ * A bounded LRU cache with expiry, split in segments locked separately, and a
+ * table of the in-flight computations to coalesce concurrent misses.
+ */
+class ResultCache<V> {
+	private static final int SEGMENTS = 16;
+
+	private final long ttlNanos;
+	private final List<Segment<V>> segments;
+	private final Map<String, Flight<V>> inFlight = new ConcurrentHashMap<>();
+
+	ResultCache(int maxSize, long ttlNanos) {
+		this.ttlNanos = ttlNanos;
+		int segmentCount = Math.max(1, Math.min(SEGMENTS, maxSize));
+		this.segments = new ArrayList<>(segmentCount);
+		for (int i = 0; i < segmentCount; i++) {
+			// the remainder goes to the first segments, so the total is maxSize
+			segments.add(new Segment<>(maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0)));
+		}
+	}
+
+	/**
+	 * @param params the params of a call, may be {@code null}
+	 * @return the params as JSON with the fields of the objects sorted by name, so
+	 *         the same params sent in another field order have the same key
+	 */
+	static String keyOf(JsonNode params) {
+		if (params == null) {
+			return "";
+		}
+		StringBuilder key = new StringBuilder();
+		appendKey(key, params);
+		return key.toString();
+	}
+
+	private static void appendKey(StringBuilder key, JsonNode node) {
+		if (node.isObject()) {
+			List<String> names = new ArrayList<>(node.size());
+			for (Iterator<String> it = node.fieldNames(); it.hasNext();) {
+				names.add(it.next());
+			}
+			Collections.sort(names);
+			key.append('{');
+			for (int i = 0; i < names.size(); i++) {
+				if (i > 0) {
+					key.append(',');
+				}
+				key.append(TextNode.valueOf(names.get(i))).append(':');
+				appendKey(key, node.get(names.get(i)));
+			}
+			key.append('}');
+		} else if (node.isArray()) {
+			key.append('[');
+			for (int i = 0; i < node.size(); i++) {
+				if (i > 0) {
+					key.append(',');
+				}
+				appendKey(key, node.get(i));
+			}
+			key.append(']');
+		} else {
+			key.append(node);
+		}
+	}
+
+	V get(String key) {
+		return segmentFor(key).get(key, System.nanoTime());
+	}
+
+	void put(String key, V value) {
+		segmentFor(key).put(key, value, System.nanoTime() + ttlNanos);
+	}
+
+	/**
+	 * @param key    the key
+	 * @param flight the flight to complete if the caller is the first
+	 * @return the flight of the first caller computing the key, or {@code null} if
+	 *         the caller is the first and must compute it, then call
+	 *         {@link #leave(String, Flight)}
+	 */
+	Flight<V> join(String key, Flight<V> flight) {
+		return inFlight.putIfAbsent(key, flight);
+	}
+
+	void leave(String key, Flight<V> flight) {
+		inFlight.remove(key, flight);
+	}
+
+	private Segment<V> segmentFor(String key) {
+		int hash = key.hashCode();
+		return segments.get(((hash ^ (hash >>> 16)) & 0x7fffffff) % segments.size());
+	}
+
+	private static class Segment<V> extends LinkedHashMap<String, Entry<V>> {
+		private static final long serialVersionUID = 1L;
+		private final int maxSize;
+
+		private Segment(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		private synchronized V get(String key, long now) {
+			Entry<V> entry = super.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (now - entry.expireNanos >= 0) {
+				remove(key);
+				return null;
+			}
+			return entry.value;
+		}
+
+		private synchronized void put(String key, V value, long expireNanos) {
+			super.put(key, new Entry<>(value, expireNanos));
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+			return size() > maxSize;
+		}
+	}
+
+	/**
+	 * The computation of a key by its first caller, and the same calls waiting for
+	 * it.
+	 */
+	static class Flight<V> extends CompletableFuture<V> {
+		private final List<JsonRpcContext> followers = new ArrayList<>();
+		private boolean abandoned;
+
+		/**
+		 * @return {@code false} if the first caller has abandoned the computation, the
+		 *         follower must leave it and join again
+		 */
+		synchronized boolean follow(JsonRpcContext follower) {
+			if (abandoned) {
+				return false;
+			}
+			followers.add(follower);
+			return true;
+		}
+
+		/**
+		 * Abandon the computation, unless a follower still waits for it.
+		 *
+		 * @return {@code true} if abandoned
+		 */
+		synchronized boolean abandon() {
+			for (JsonRpcContext follower : followers) {
+				if (follower.getChannel().isActive() && !follower.isExpired()) {
+					return false;
+				}
+			}
+			abandoned = true;
+			return true;
+		}
+	}
+
+	private static class Entry<V> {
+		private final V value;
+		private final long expireNanos;
+
+		private Entry(V value, long expireNanos) {
+			this.value = value;
+			this.expireNanos = expireNanos;
+		}
+	}
+}
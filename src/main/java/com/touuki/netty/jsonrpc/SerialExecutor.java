@@ -0,0 +1,66 @@
+package com.touuki.netty.jsonrpc;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs its tasks one by one in the order they are added, on a shared executor.
+ * There is no thread and no lock per instance, just a queue and a flag, so one
+ * can be kept for every channel. Every task is submitted to the executor
+ * separately, with its own priority.
+ */
+class SerialExecutor {
+	private final Executor executor;
+	private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	SerialExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	void execute(Runnable runnable, JsonRpcPriority priority) {
+		tasks.add(new Task(runnable, priority));
+		schedule();
+	}
+
+	private void schedule() {
+		Task head = tasks.peek();
+		if (head != null && scheduled.compareAndSet(false, true)) {
+			try {
+				JsonRpcPriorityExecutor.execute(executor, this::runNext, head.priority);
+			} catch (RuntimeException e) {
+				scheduled.set(false);
+				throw e;
+			}
+		}
+	}
+
+	private void runNext() {
+		Task task = tasks.poll();
+		try {
+			if (task != null) {
+				// an interrupt cancelling the previous task isn't for this one
+				Thread.interrupted();
+				task.runnable.run();
+			}
+		} finally {
+			scheduled.set(false);
+			// a task added while running couldn't schedule itself
+			if (!tasks.isEmpty()) {
+				schedule();
+			}
+		}
+	}
+
+	private static class Task {
+		private final Runnable runnable;
+		private final JsonRpcPriority priority;
+
+		private Task(Runnable runnable, JsonRpcPriority priority) {
+			this.runnable = runnable;
+			this.priority = priority;
+		}
+	}
+}
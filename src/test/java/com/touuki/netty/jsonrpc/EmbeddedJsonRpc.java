@@ -0,0 +1,72 @@
+package com.touuki.netty.jsonrpc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * Runs the handlers on an {@link EmbeddedChannel} with the TCP framing, the
+ * frames written and read as JSON text.
+ */
+final class EmbeddedJsonRpc {
+	static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private EmbeddedJsonRpc() {
+	}
+
+	static EmbeddedChannel server(JsonRpcServerHandler jsonRpcServerHandler) {
+		return new EmbeddedChannel(new JsonRpcProtocolHandler(jsonRpcServerHandler));
+	}
+
+	static EmbeddedChannel client(JsonRpcClientHandler jsonRpcClientHandler) {
+		return new EmbeddedChannel(new JsonRpcProtocolHandler(jsonRpcClientHandler));
+	}
+
+	/**
+	 * Write frames to the channel as received from the peer.
+	 */
+	static void receive(EmbeddedChannel channel, String... frames) {
+		for (String frame : frames) {
+			channel.writeInbound(Unpooled.copiedBuffer(frame, StandardCharsets.UTF_8));
+		}
+		channel.runPendingTasks();
+	}
+
+	/**
+	 * @return the next frame sent to the peer as a tree, or {@code null} if none.
+	 */
+	static JsonNode sent(EmbeddedChannel channel) throws IOException {
+		channel.runPendingTasks();
+		ByteBuf frame = channel.readOutbound();
+		if (frame == null) {
+			return null;
+		}
+		try {
+			return MAPPER.readTree(frame.toString(StandardCharsets.UTF_8));
+		} finally {
+			frame.release();
+		}
+	}
+
+	/**
+	 * @return the error code of the next frame sent, or 0 if it's not an error.
+	 */
+	static int sentErrorCode(EmbeddedChannel channel) throws IOException {
+		JsonNode response = sent(channel);
+		return response == null || !response.has("error") ? 0 : response.get("error").get("code").intValue();
+	}
+
+	static String call(Object id, String method, String params) {
+		return "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"method\":\"" + method + "\",\"params\":" + params + "}";
+	}
+
+	static String notification(String method, String params) {
+		return "{\"jsonrpc\":\"2.0\",\"method\":\"" + method + "\",\"params\":" + params + "}";
+	}
+}
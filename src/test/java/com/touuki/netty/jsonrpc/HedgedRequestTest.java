@@ -0,0 +1,177 @@
+package com.touuki.netty.jsonrpc;
+
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.MAPPER;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.receive;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.sent;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class HedgedRequestTest {
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+	private JsonRpcClientHandler client;
+	private EmbeddedChannel first;
+	private EmbeddedChannel second;
+	private JsonRpcChannelSelector selector;
+
+	@Before
+	public void setUp() {
+		client = new JsonRpcClientHandler(MAPPER, false, executor);
+		first = EmbeddedJsonRpc.client(client);
+		second = EmbeddedJsonRpc.client(client);
+		selector = new JsonRpcChannelSelector() {
+			@Override
+			public Channel select() {
+				return first;
+			}
+
+			@Override
+			public Channel select(Object routingKey, Collection<Channel> excluded) {
+				for (Channel channel : Arrays.asList(first, second)) {
+					if (channel.isActive() && !excluded.contains(channel)) {
+						return channel;
+					}
+				}
+				return null;
+			}
+		};
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	private CompletableFuture<Object> send(long delayMilliseconds) {
+		HedgedRequest.Policy policy = new HedgedRequest.Policy(delayMilliseconds, 95, 1, 1);
+		return new HedgedRequest(client, policy, selector, null, "get", null, String.class, -1).send(first);
+	}
+
+	/**
+	 * Wait for the timers of the executor due before the delay.
+	 */
+	private void awaitTimers(long delayMilliseconds) throws Exception {
+		executor.schedule(() -> {
+		}, delayMilliseconds, TimeUnit.MILLISECONDS).get();
+	}
+
+	private static String result(JsonNode request, String result) {
+		return "{\"jsonrpc\":\"2.0\",\"id\":" + request.get("id") + ",\"result\":\"" + result + "\"}";
+	}
+
+	@Test
+	public void testSlowCallIsHedgedOnAnotherChannel() throws Exception {
+		CompletableFuture<Object> result = send(20);
+		JsonNode request = sent(first);
+		assertNull(sent(second));
+
+		awaitTimers(40);
+		JsonNode hedge = sent(second);
+		assertEquals("get", hedge.get("method").textValue());
+		receive(second, result(hedge, "from second"));
+		assertEquals("from second", result.get());
+
+		// the first call lost, it's cancelled on the server
+		JsonNode cancel = sent(first);
+		assertEquals("rpc.cancel", cancel.get("method").textValue());
+		assertEquals(request.get("id"), cancel.get("params").get(0));
+		assertEquals(0, client.getPendingRequestCount(first));
+	}
+
+	@Test
+	public void testConnectionFailureIsRetriedOnAnotherChannel() throws Exception {
+		CompletableFuture<Object> result = send(10000);
+		sent(first);
+		first.close();
+
+		JsonNode retry = sent(second);
+		receive(second, result(retry, "retried"));
+		assertEquals("retried", result.get());
+	}
+
+	@Test
+	public void testErrorResponseIsNotRetried() throws Exception {
+		CompletableFuture<Object> result = send(10000);
+		JsonNode request = sent(first);
+		receive(first, "{\"jsonrpc\":\"2.0\",\"id\":" + request.get("id")
+				+ ",\"error\":{\"code\":-32001,\"message\":\"failed\"}}");
+		try {
+			result.get();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof JsonRpcException);
+		}
+		assertTrue(result.isCompletedExceptionally());
+		assertNull(sent(second));
+	}
+
+	@Test
+	public void testHedgesAreLimitedByTheRetryBudget() throws Exception {
+		client.setRetryBudget(new JsonRpcRetryBudget(0, 0, 1));
+		CompletableFuture<Object> hedged = send(10);
+		JsonNode request = sent(first);
+		awaitTimers(30);
+		receive(second, result(sent(second), "hedged"));
+		assertEquals("hedged", hedged.get());
+		sent(first);
+
+		CompletableFuture<Object> notHedged = send(10);
+		request = sent(first);
+		awaitTimers(30);
+		assertNull(sent(second));
+		receive(first, result(request, "not hedged"));
+		assertEquals("not hedged", notHedged.get());
+	}
+
+	@Test
+	public void testRetryBudgetIsARatioOfTheCalls() {
+		JsonRpcRetryBudget budget = new JsonRpcRetryBudget(0.5, 0, 2);
+		assertTrue(budget.tryWithdraw());
+		assertTrue(budget.tryWithdraw());
+		assertFalse(budget.tryWithdraw());
+		budget.deposit();
+		assertFalse(budget.tryWithdraw());
+		budget.deposit();
+		assertTrue(budget.tryWithdraw());
+	}
+
+	@Test
+	public void testSendingDoesNotWaitForTheWrite() throws Exception {
+		ChannelPromise[] write = new ChannelPromise[1];
+		EmbeddedChannel channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+			@Override
+			public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+				write[0] = promise;
+			}
+		}, new JsonRpcProtocolHandler(client));
+
+		CompletableFuture<String> result = client.sendRequest(channel, "get", null, String.class);
+		assertFalse(result.isDone());
+		assertEquals(1, client.getPendingRequestCount(channel));
+
+		write[0].setFailure(new ClosedChannelException());
+		assertTrue(result.isCompletedExceptionally());
+		assertEquals(0, client.getPendingRequestCount(channel));
+	}
+}
@@ -0,0 +1,111 @@
+package com.touuki.netty.jsonrpc;
+
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.MAPPER;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.call;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.receive;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.sent;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class InMemoryJsonRpcMetricsTest {
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+	public interface Service {
+		String echo(String value);
+
+		String fail();
+	}
+
+	public static class ServiceImpl implements Service {
+		@Override
+		public String echo(String value) {
+			return value;
+		}
+
+		@Override
+		public String fail() {
+			throw new IllegalStateException("failed");
+		}
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testServerCallsAndFrames() throws Exception {
+		JsonRpcServerHandler handler = new JsonRpcServerHandler(MAPPER, new ServiceImpl(), Service.class);
+		InMemoryJsonRpcMetrics metrics = new InMemoryJsonRpcMetrics();
+		handler.setMetrics(metrics);
+		EmbeddedChannel channel = EmbeddedJsonRpc.server(handler);
+
+		receive(channel, call(1, "echo", "[\"a\"]"), call(2, "echo", "[\"b\"]"), call(3, "fail", "[]"));
+		assertNotNull(sent(channel));
+		assertNotNull(sent(channel));
+		assertNotNull(sent(channel));
+
+		InMemoryJsonRpcMetrics.MethodMetrics echo = metrics.getServerMethods().get("echo");
+		assertEquals(2, echo.getCalls());
+		assertEquals(0, echo.getErrors());
+		assertEquals(2, echo.getLatency().getCount());
+		assertEquals(1, metrics.getServerMethods().get("fail").getErrors());
+		assertEquals(0, metrics.getServerInFlight());
+		assertEquals(3, metrics.getFramesRead());
+		assertEquals(3, metrics.getFramesWritten());
+		assertTrue(metrics.getBytesRead() > 0 && metrics.getBytesWritten() > 0);
+	}
+
+	@Test
+	public void testClientCallsAndPending() throws Exception {
+		JsonRpcClientHandler handler = new JsonRpcClientHandler(MAPPER, false, executor);
+		InMemoryJsonRpcMetrics metrics = new InMemoryJsonRpcMetrics();
+		handler.setMetrics(metrics);
+		EmbeddedChannel channel = EmbeddedJsonRpc.client(handler);
+
+		CompletableFuture<String> ok = handler.sendRequest(channel, "echo", new Object[] { "a" }, String.class);
+		CompletableFuture<String> failed = handler.sendRequest(channel, "echo", new Object[] { "b" }, String.class);
+		assertEquals(2, metrics.getClientPending());
+
+		long firstId = sent(channel).get("id").longValue();
+		long secondId = sent(channel).get("id").longValue();
+		receive(channel, "{\"jsonrpc\":\"2.0\",\"id\":" + firstId + ",\"result\":\"a\"}",
+				"{\"jsonrpc\":\"2.0\",\"id\":" + secondId + ",\"error\":{\"code\":-32001,\"message\":\"x\"}}");
+		assertEquals("a", ok.get());
+		assertTrue(failed.isCompletedExceptionally());
+
+		InMemoryJsonRpcMetrics.MethodMetrics echo = metrics.getClientMethods().get("echo");
+		assertEquals(2, echo.getCalls());
+		assertEquals(1, echo.getErrors());
+		assertEquals(0, metrics.getClientPending());
+	}
+
+	@Test
+	public void testHistogramPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500.5, histogram.getMean(TimeUnit.MICROSECONDS), 0.01);
+		// the buckets are within 1/32 of their values
+		assertEquals(500, histogram.getValueAtPercentile(50, TimeUnit.MICROSECONDS), 500 / 32.0);
+		assertEquals(990, histogram.getValueAtPercentile(99, TimeUnit.MICROSECONDS), 990 / 32.0);
+		assertEquals(1000, histogram.getMax(TimeUnit.MICROSECONDS), 1000 / 32.0);
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(50, TimeUnit.MICROSECONDS), 0);
+	}
+}
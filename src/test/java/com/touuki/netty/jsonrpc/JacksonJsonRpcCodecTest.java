@@ -0,0 +1,35 @@
+package com.touuki.netty.jsonrpc;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class JacksonJsonRpcCodecTest {
+
+	@Test
+	public void testDefaultCodecComplies() throws IOException {
+		JsonRpcCodecCompliance.verifyReadTree(JacksonJsonRpcCodec.DEFAULT);
+		JsonRpcCodecCompliance.verifyBinding(JacksonJsonRpcCodec.DEFAULT);
+		JsonRpcCodecCompliance.verifyWriting(JacksonJsonRpcCodec.DEFAULT);
+		JsonRpcCodecCompliance.verifyEnvelope(JacksonJsonRpcCodec.DEFAULT);
+	}
+
+	@Test
+	public void testCodecOfAnApplicationMapperComplies() {
+		JsonRpcCodecCompliance.verify(new JacksonJsonRpcCodec(new ObjectMapper()));
+	}
+
+	@Test(expected = AssertionError.class)
+	public void testBrokenCodecIsDetected() {
+		JsonRpcCodecCompliance.verify(new JacksonJsonRpcCodec(new ObjectMapper()) {
+			@Override
+			public Object treeToValue(JsonNode node, Type type) throws IOException {
+				return null;
+			}
+		});
+	}
+}
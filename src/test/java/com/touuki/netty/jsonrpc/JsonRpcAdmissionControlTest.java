@@ -0,0 +1,102 @@
+package com.touuki.netty.jsonrpc;
+
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.MAPPER;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.call;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.receive;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.sent;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.sentErrorCode;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class JsonRpcAdmissionControlTest {
+
+	public interface Service {
+		String echo(String value);
+
+		@JsonRpcMethod(maxConcurrency = 1)
+		CompletableFuture<String> slow();
+	}
+
+	public static class ServiceImpl implements Service {
+		CompletableFuture<String> pending = new CompletableFuture<>();
+
+		@Override
+		public String echo(String value) {
+			return value;
+		}
+
+		@Override
+		public CompletableFuture<String> slow() {
+			return pending;
+		}
+	}
+
+	@Test
+	public void testChannelRateLimitRejectsBeyondTheBurst() throws Exception {
+		JsonRpcServerHandler handler = new JsonRpcServerHandler(MAPPER, new ServiceImpl(), Service.class);
+		handler.setAdmissionControl(JsonRpcAdmissionControl.builder().channelRateLimit(0.001, 2).build());
+		InMemoryJsonRpcMetrics metrics = new InMemoryJsonRpcMetrics();
+		handler.setMetrics(metrics);
+		EmbeddedChannel channel = EmbeddedJsonRpc.server(handler);
+
+		receive(channel, call(1, "echo", "[\"a\"]"), call(2, "echo", "[\"b\"]"), call(3, "echo", "[\"c\"]"));
+		assertEquals("a", sent(channel).get("result").textValue());
+		assertEquals("b", sent(channel).get("result").textValue());
+		assertEquals(JsonRpcException.TOO_MANY_REQUESTS, sentErrorCode(channel));
+		assertEquals(1, metrics.getServerMethods().get("echo").getRejected());
+
+		// each channel has its own bucket
+		EmbeddedChannel other = EmbeddedJsonRpc.server(handler);
+		receive(other, call(1, "echo", "[\"d\"]"));
+		assertEquals("d", sent(other).get("result").textValue());
+	}
+
+	@Test
+	public void testMaxConcurrencyRejectsWhileInFlight() throws Exception {
+		ServiceImpl service = new ServiceImpl();
+		JsonRpcServerHandler handler = new JsonRpcServerHandler(MAPPER, service, Service.class);
+		EmbeddedChannel channel = EmbeddedJsonRpc.server(handler);
+
+		receive(channel, call(1, "slow", "[]"), call(2, "slow", "[]"));
+		assertEquals(JsonRpcException.SERVER_BUSY, sentErrorCode(channel));
+
+		service.pending.complete("done");
+		assertEquals("done", sent(channel).get("result").textValue());
+		service.pending = CompletableFuture.completedFuture("again");
+		receive(channel, call(3, "slow", "[]"));
+		assertEquals("again", sent(channel).get("result").textValue());
+	}
+
+	@Test
+	public void testAdaptiveLimitGrowsWhenUsedAndShrinksWhenSlow() throws Exception {
+		JsonRpcAdmissionControl admissionControl = JsonRpcAdmissionControl.builder()
+				.adaptiveLimit(2, 1, 10, 50, TimeUnit.MILLISECONDS).build();
+		Method method = Service.class.getMethod("echo", String.class);
+
+		assertTrue(admissionControl.tryAcquire("", method));
+		assertTrue(admissionControl.tryAcquire("", method));
+		assertFalse(admissionControl.tryAcquire("", method));
+
+		admissionControl.release("", method, System.nanoTime());
+		assertEquals(3, admissionControl.getAdaptiveLimit());
+		admissionControl.release("", method, System.nanoTime());
+
+		Thread.sleep(60);
+		assertTrue(admissionControl.tryAcquire("", method));
+		admissionControl.release("", method, System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+		assertEquals(2, admissionControl.getAdaptiveLimit());
+		// decreased at most once per target latency
+		assertTrue(admissionControl.tryAcquire("", method));
+		admissionControl.release("", method, System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+		assertEquals(2, admissionControl.getAdaptiveLimit());
+	}
+}
@@ -0,0 +1,102 @@
+package com.touuki.netty.jsonrpc;
+
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.MAPPER;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.sent;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.sentErrorCode;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.json.JsonObjectDecoder;
+
+public class JsonRpcAttachmentsTest {
+
+	public interface Service {
+		int length(byte[] bytes);
+	}
+
+	public static class ServiceImpl implements Service {
+		@Override
+		public int length(byte[] bytes) {
+			return bytes.length;
+		}
+	}
+
+	private static JsonRpcServerHandler serverHandler() {
+		JsonRpcServerHandler handler = new JsonRpcServerHandler(MAPPER, new ServiceImpl(), Service.class);
+		handler.setBinaryAttachments(true);
+		return handler;
+	}
+
+	private static ByteBuf segment(int length) {
+		ByteBuf segment = Unpooled.buffer();
+		segment.writeByte(JsonRpcAttachments.SEGMENT_MARKER);
+		segment.writeInt(length);
+		segment.writeZero(length);
+		return segment;
+	}
+
+	private static ByteBuf object(int attachments) {
+		return Unpooled.copiedBuffer("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"length\",\"params\":[{\"$attachment\":0}],"
+				+ "\"attachments\":" + attachments + "}", StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testSegmentBeforeObject() throws Exception {
+		EmbeddedChannel channel = EmbeddedJsonRpc.server(serverHandler());
+		// the segment and the object may share a read
+		channel.writeInbound(Unpooled.wrappedBuffer(segment(5), object(1)));
+		assertEquals(5, sent(channel).get("result").intValue());
+	}
+
+	@Test
+	public void testCountMismatchRejected() throws Exception {
+		EmbeddedChannel channel = EmbeddedJsonRpc.server(serverHandler());
+		channel.writeInbound(segment(5), segment(5), object(1));
+		assertEquals(JsonRpcException.INVALID_REQUEST, sentErrorCode(channel));
+	}
+
+	@Test
+	public void testTooLongSegmentsRejected() throws Exception {
+		EmbeddedChannel channel = new EmbeddedChannel(new JsonRpcProtocolHandler(null, serverHandler(), 16));
+		channel.writeInbound(segment(10), segment(10));
+		assertEquals(JsonRpcException.PARSE_ERROR, sentErrorCode(channel));
+		assertFalse(channel.isOpen());
+	}
+
+	@Test
+	public void testTooManySegmentsReleased() throws Exception {
+		EmbeddedChannel channel = new EmbeddedChannel(new JsonNodeToJsonRpcObjectDecoder(null, serverHandler(), 1024));
+		List<ByteBuf> contents = new ArrayList<>();
+		for (int i = 0; i <= JsonRpcAttachments.MAX_SEGMENTS; i++) {
+			ByteBuf content = Unpooled.buffer(1).writeByte(i);
+			contents.add(content);
+			channel.writeInbound(new JsonRpcAttachments.Segment(content));
+		}
+		channel.runPendingTasks();
+		for (ByteBuf content : contents) {
+			assertEquals(0, content.refCnt());
+		}
+		assertFalse(channel.isOpen());
+	}
+
+	@Test
+	public void testJsonObjectDecoderReplaced() throws Exception {
+		EmbeddedChannel channel = new EmbeddedChannel(new JsonObjectDecoder(),
+				new JsonRpcProtocolHandler(serverHandler()));
+		assertNull(channel.pipeline().get(JsonObjectDecoder.class));
+		assertNotNull(channel.pipeline().get(JsonRpcFrameDecoder.class));
+		channel.writeInbound(segment(3), object(1));
+		assertEquals(3, sent(channel).get("result").intValue());
+	}
+}
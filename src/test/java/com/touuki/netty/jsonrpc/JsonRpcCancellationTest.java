@@ -0,0 +1,150 @@
+package com.touuki.netty.jsonrpc;
+
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.MAPPER;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.call;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.notification;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.receive;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.sent;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class JsonRpcCancellationTest {
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+	public interface Service {
+		int count();
+
+		CompletableFuture<String> later();
+
+		@JsonRpcCacheable
+		int shared();
+	}
+
+	public static class ServiceImpl implements Service {
+		final AtomicInteger invocations = new AtomicInteger();
+		final CompletableFuture<String> later = new CompletableFuture<>();
+
+		@Override
+		public int count() {
+			return invocations.incrementAndGet();
+		}
+
+		@Override
+		public CompletableFuture<String> later() {
+			return later;
+		}
+
+		@Override
+		public int shared() {
+			return invocations.incrementAndGet();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testClientSendsCancelAndReportsIt() throws Exception {
+		JsonRpcClientHandler handler = new JsonRpcClientHandler(MAPPER, false, executor);
+		InMemoryJsonRpcMetrics metrics = new InMemoryJsonRpcMetrics();
+		handler.setMetrics(metrics);
+		EmbeddedChannel channel = EmbeddedJsonRpc.client(handler);
+
+		CompletableFuture<String> result = handler.sendRequest(channel, "slow", null, String.class);
+		long id = sent(channel).get("id").longValue();
+		assertEquals(1, handler.getPendingRequestCount(channel));
+
+		result.cancel(true);
+		JsonNode cancel = sent(channel);
+		assertEquals("rpc.cancel", cancel.get("method").textValue());
+		assertEquals(id, cancel.get("params").get(0).longValue());
+		assertTrue(cancel.get("id") == null);
+		assertEquals(0, handler.getPendingRequestCount(channel));
+		assertEquals(1, metrics.getClientMethods().get("slow").getCancelled());
+		assertEquals(0, metrics.getClientPending());
+
+		// a late response is dropped
+		receive(channel, "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"result\":\"late\"}");
+		assertEquals(1, metrics.getClientMethods().get("slow").getCancelled());
+		assertEquals(0, metrics.getClientMethods().get("slow").getCalls());
+	}
+
+	@Test
+	public void testQueuedCallIsDropped() throws Exception {
+		ServiceImpl service = new ServiceImpl();
+		JsonRpcServerHandler handler = new JsonRpcServerHandler(MAPPER, service, Service.class);
+		List<Runnable> queued = new ArrayList<>();
+		handler.setExecutor(queued::add);
+		EmbeddedChannel channel = EmbeddedJsonRpc.server(handler);
+
+		receive(channel, call(1, "count", "[]"), call("\"b\"", "count", "[]"));
+		receive(channel, call(2, "rpc.cancel", "[1]"), notification("rpc.cancel", "{\"id\":\"b\"}"));
+		assertTrue(sent(channel).get("result").isNull());
+		for (Runnable task : queued) {
+			task.run();
+		}
+		assertEquals(0, service.invocations.get());
+		assertNull(sent(channel));
+	}
+
+	@Test
+	public void testAsyncResultIsCancelled() throws Exception {
+		ServiceImpl service = new ServiceImpl();
+		JsonRpcServerHandler handler = new JsonRpcServerHandler(MAPPER, service, Service.class);
+		InMemoryJsonRpcMetrics metrics = new InMemoryJsonRpcMetrics();
+		handler.setMetrics(metrics);
+		EmbeddedChannel channel = EmbeddedJsonRpc.server(handler);
+
+		receive(channel, call(1, "later", "[]"), notification("rpc.cancel", "[1]"));
+		assertTrue(service.later.isCancelled());
+		assertNull(sent(channel));
+		assertEquals(0, metrics.getServerInFlight());
+	}
+
+	@Test
+	public void testClosedChannelCancelsItsCalls() throws Exception {
+		ServiceImpl service = new ServiceImpl();
+		JsonRpcServerHandler handler = new JsonRpcServerHandler(MAPPER, service, Service.class);
+		EmbeddedChannel channel = EmbeddedJsonRpc.server(handler);
+
+		receive(channel, call(1, "later", "[]"));
+		channel.close();
+		assertTrue(service.later.isCancelled());
+	}
+
+	@Test
+	public void testCancelledCallKeepsRunningForItsFollowers() throws Exception {
+		ServiceImpl service = new ServiceImpl();
+		JsonRpcServerHandler handler = new JsonRpcServerHandler(MAPPER, service, Service.class);
+		List<Runnable> queued = new ArrayList<>();
+		handler.setExecutor(queued::add);
+		EmbeddedChannel first = EmbeddedJsonRpc.server(handler);
+		EmbeddedChannel second = EmbeddedJsonRpc.server(handler);
+
+		receive(first, call(1, "shared", "[]"));
+		receive(second, call(2, "shared", "[]"));
+		receive(first, notification("rpc.cancel", "[1]"));
+
+		queued.remove(0).run();
+		assertNull(sent(first));
+		assertEquals(1, sent(second).get("result").intValue());
+		assertEquals(1, service.invocations.get());
+	}
+}
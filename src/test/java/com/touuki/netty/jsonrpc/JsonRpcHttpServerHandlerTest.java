@@ -0,0 +1,203 @@
+package com.touuki.netty.jsonrpc;
+
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.MAPPER;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.call;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.notification;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamChannelBootstrap;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+
+public class JsonRpcHttpServerHandlerTest {
+
+	public interface Service {
+		int add(int a, int b);
+	}
+
+	public static class ServiceImpl implements Service {
+		@Override
+		public int add(int a, int b) {
+			return a + b;
+		}
+	}
+
+	private static FullHttpRequest post(String uri, String body) {
+		FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, uri,
+				Unpooled.copiedBuffer(body, StandardCharsets.UTF_8));
+		request.headers().set(HttpHeaderNames.HOST, "localhost");
+		request.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, request.content().readableBytes());
+		return request;
+	}
+
+	private static JsonNode body(FullHttpResponse response) throws IOException {
+		try {
+			assertEquals(HttpResponseStatus.OK, response.status());
+			return MAPPER.readTree(response.content().toString(StandardCharsets.UTF_8));
+		} finally {
+			response.release();
+		}
+	}
+
+	private static EmbeddedChannel server(JsonRpcServerHandler handler) {
+		return new EmbeddedChannel(new JsonRpcHttpServerHandler(handler, "/jsonrpc"));
+	}
+
+	@Test
+	public void testBatchAndPipelinedRequests() throws Exception {
+		EmbeddedChannel channel = server(new JsonRpcServerHandler(MAPPER, new ServiceImpl(), Service.class));
+		channel.writeInbound(post("/jsonrpc", "[" + call(1, "add", "[1,2]") + "," + notification("add", "[0,0]")
+				+ "," + call("\"b\"", "add", "[3,4]") + "]"), post("/jsonrpc", call(1, "add", "[5,6]")));
+		channel.runPendingTasks();
+		JsonNode batch = body(channel.readOutbound());
+		assertEquals(2, batch.size());
+		assertEquals(1, batch.get(0).get("id").intValue());
+		assertEquals(3, batch.get(0).get("result").intValue());
+		assertEquals("b", batch.get(1).get("id").textValue());
+		assertEquals(7, batch.get(1).get("result").intValue());
+		// the ids of the pipelined requests may be reused
+		JsonNode single = body(channel.readOutbound());
+		assertEquals(1, single.get("id").intValue());
+		assertEquals(11, single.get("result").intValue());
+	}
+
+	@Test
+	public void testNotificationsAndInvalidRequests() throws Exception {
+		EmbeddedChannel channel = server(new JsonRpcServerHandler(MAPPER, new ServiceImpl(), Service.class));
+		channel.writeInbound(post("/jsonrpc", notification("add", "[1,2]")), post("/other", call(1, "add", "[1,2]")),
+				new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/jsonrpc"));
+		channel.runPendingTasks();
+		assertStatus(HttpResponseStatus.NO_CONTENT, channel.readOutbound());
+		assertStatus(HttpResponseStatus.NOT_FOUND, channel.readOutbound());
+		assertStatus(HttpResponseStatus.METHOD_NOT_ALLOWED, channel.readOutbound());
+	}
+
+	private static void assertStatus(HttpResponseStatus status, FullHttpResponse response) {
+		try {
+			assertEquals(status, response.status());
+		} finally {
+			response.release();
+		}
+	}
+
+	@Test
+	public void testCancelAnsweredAndSubscribeNotFound() throws Exception {
+		JsonRpcServerHandler handler = new JsonRpcServerHandler(MAPPER, new ServiceImpl(), Service.class);
+		handler.setTopicPublisher(new JsonRpcTopicPublisher(MAPPER));
+		EmbeddedChannel channel = server(handler);
+		channel.writeInbound(post("/jsonrpc", "[" + call(1, "rpc.cancel", "[1]") + "," + call(2, "rpc.subscribe",
+				"[\"price\"]") + "," + call(3, "rpc.unsubscribe", "[\"price\"]") + "]"));
+		channel.runPendingTasks();
+		JsonNode batch = body(channel.readOutbound());
+		assertEquals(3, batch.size());
+		assertTrue(batch.get(0).get("result").isNull());
+		assertEquals(JsonRpcException.METHOD_NOT_FOUND, batch.get(1).get("error").get("code").intValue());
+		assertEquals(JsonRpcException.METHOD_NOT_FOUND, batch.get(2).get("error").get("code").intValue());
+	}
+
+	@Test
+	public void testHttp2StreamsAnsweredIndependently() throws Exception {
+		JsonRpcServerHandler handler = new JsonRpcServerHandler(MAPPER, new ServiceImpl(), Service.class);
+		List<Runnable> queued = new ArrayList<>();
+		handler.setExecutor(queued::add);
+		EmbeddedChannel server = new EmbeddedChannel(Http2FrameCodecBuilder.forServer().build(),
+				new Http2MultiplexHandler(new ChannelInitializer<Channel>() {
+					@Override
+					protected void initChannel(Channel ch) {
+						ch.pipeline().addLast(new Http2StreamFrameToHttpObjectCodec(true));
+						ch.pipeline().addLast(new HttpObjectAggregator(65536));
+						ch.pipeline().addLast(new JsonRpcHttpServerHandler(handler, "/jsonrpc"));
+					}
+				}));
+		EmbeddedChannel client = new EmbeddedChannel(Http2FrameCodecBuilder.forClient().build(),
+				new Http2MultiplexHandler(new ChannelInboundHandlerAdapter()));
+		List<FullHttpResponse> first = new ArrayList<>();
+		List<FullHttpResponse> second = new ArrayList<>();
+		Http2StreamChannel firstStream = openStream(client, first);
+		Http2StreamChannel secondStream = openStream(client, second);
+		firstStream.writeAndFlush(post("/jsonrpc", call(1, "add", "[1,2]")));
+		secondStream.writeAndFlush(post("/jsonrpc", call(1, "add", "[3,4]")));
+		exchange(client, server);
+		assertEquals(2, queued.size());
+
+		// the second call is answered while the first one is still running
+		queued.get(1).run();
+		exchange(client, server);
+		assertEquals(0, first.size());
+		assertEquals(1, second.size());
+		assertEquals(7, body(second.get(0)).get("result").intValue());
+
+		queued.get(0).run();
+		exchange(client, server);
+		assertEquals(1, first.size());
+		assertEquals(3, body(first.get(0)).get("result").intValue());
+	}
+
+	private static Http2StreamChannel openStream(EmbeddedChannel client, List<FullHttpResponse> responses)
+			throws Exception {
+		Http2StreamChannel stream = new Http2StreamChannelBootstrap(client)
+				.handler(new ChannelInitializer<Channel>() {
+					@Override
+					protected void initChannel(Channel ch) {
+						ch.pipeline().addLast(new Http2StreamFrameToHttpObjectCodec(false));
+						ch.pipeline().addLast(new HttpObjectAggregator(65536));
+						ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+							@Override
+							public void channelRead(ChannelHandlerContext ctx, Object msg) {
+								responses.add((FullHttpResponse) msg);
+							}
+						});
+					}
+				}).open().get();
+		return stream;
+	}
+
+	/**
+	 * Pass the bytes written by each side to the other until both are quiet.
+	 */
+	private static void exchange(EmbeddedChannel client, EmbeddedChannel server) {
+		boolean exchanged;
+		do {
+			exchanged = transfer(client, server) | transfer(server, client);
+		} while (exchanged);
+	}
+
+	private static boolean transfer(EmbeddedChannel from, EmbeddedChannel to) {
+		from.runPendingTasks();
+		boolean transferred = false;
+		ByteBuf bytes;
+		while ((bytes = from.readOutbound()) != null) {
+			to.writeInbound(bytes);
+			transferred = true;
+		}
+		to.runPendingTasks();
+		return transferred;
+	}
+}
@@ -0,0 +1,108 @@
+package com.touuki.netty.jsonrpc;
+
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.MAPPER;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.call;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.receive;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.sent;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class JsonRpcPriorityExecutorTest {
+
+	public interface Service {
+		@JsonRpcMethod(priority = JsonRpcPriority.LOW)
+		String report(String name);
+
+		String query(String name);
+	}
+
+	public static class ServiceImpl implements Service {
+		final List<String> invoked = new ArrayList<>();
+
+		@Override
+		public String report(String name) {
+			invoked.add(name);
+			return name;
+		}
+
+		@Override
+		public String query(String name) {
+			invoked.add(name);
+			return name;
+		}
+	}
+
+	@Test
+	public void testQueuedTasksRunByWeightedRoundRobin() {
+		List<Runnable> delegate = new ArrayList<>();
+		JsonRpcPriorityExecutor executor = new JsonRpcPriorityExecutor(delegate::add, 1);
+		List<JsonRpcPriority> ran = new ArrayList<>();
+		executor.execute(() -> ran.add(null));
+		for (JsonRpcPriority priority : new JsonRpcPriority[] { JsonRpcPriority.LOW, JsonRpcPriority.NORMAL,
+				JsonRpcPriority.HIGH }) {
+			for (int i = 0; i < 20; i++) {
+				executor.execute(() -> ran.add(priority), priority);
+			}
+		}
+		assertEquals(1, delegate.size());
+		assertEquals(60, executor.getQueueSize());
+
+		// the slot of the first task runs the queued ones
+		delegate.remove(0).run();
+		assertEquals(0, executor.getQueueSize());
+		assertEquals(61, ran.size());
+		List<JsonRpcPriority> expected = new ArrayList<>();
+		expected.add(null);
+		expected.addAll(Collections.nCopies(16, JsonRpcPriority.HIGH));
+		expected.addAll(Collections.nCopies(4, JsonRpcPriority.NORMAL));
+		expected.add(JsonRpcPriority.LOW);
+		expected.addAll(Collections.nCopies(4, JsonRpcPriority.HIGH));
+		expected.addAll(Collections.nCopies(4, JsonRpcPriority.NORMAL));
+		expected.add(JsonRpcPriority.LOW);
+		assertEquals(expected, ran.subList(0, expected.size()));
+
+		// the slot is given back once the queues are empty
+		executor.execute(() -> ran.add(JsonRpcPriority.HIGH));
+		assertEquals(1, delegate.size());
+	}
+
+	@Test
+	public void testInterruptOfATaskDoesNotLeakToTheNext() {
+		List<Runnable> delegate = new ArrayList<>();
+		JsonRpcPriorityExecutor executor = new JsonRpcPriorityExecutor(delegate::add, 1);
+		boolean[] interrupted = new boolean[1];
+		executor.execute(() -> Thread.currentThread().interrupt());
+		executor.execute(() -> interrupted[0] = Thread.currentThread().isInterrupted());
+		delegate.remove(0).run();
+		assertFalse(interrupted[0]);
+	}
+
+	@Test
+	public void testCallsAreQueuedByTheirMethodPriority() throws Exception {
+		ServiceImpl service = new ServiceImpl();
+		JsonRpcServerHandler handler = new JsonRpcServerHandler(MAPPER, service, Service.class);
+		List<Runnable> delegate = new ArrayList<>();
+		handler.setExecutor(new JsonRpcPriorityExecutor(delegate::add, 1));
+		handler.setPriority("query", JsonRpcPriority.HIGH);
+		EmbeddedChannel channel = EmbeddedJsonRpc.server(handler);
+
+		receive(channel, call(1, "report", "[\"first\"]"), call(2, "report", "[\"low\"]"),
+				call(3, "query", "[\"high\"]"));
+		assertNull(sent(channel));
+		delegate.remove(0).run();
+		assertEquals(Arrays.asList("first", "high", "low"), service.invoked);
+		assertEquals("first", sent(channel).get("result").textValue());
+		assertEquals("high", sent(channel).get("result").textValue());
+		assertEquals("low", sent(channel).get("result").textValue());
+	}
+}
@@ -0,0 +1,67 @@
+package com.touuki.netty.jsonrpc;
+
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.MAPPER;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.call;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.receive;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.sent;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.sentErrorCode;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+import org.junit.Test;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class JsonRpcServiceRegistryTest {
+
+	public interface Greeter {
+		String hi(String name);
+	}
+
+	public interface Root {
+		@JsonRpcMethod("greeter.hi")
+		String rootHi(String name);
+	}
+
+	@Test
+	public void testCallsAreRoutedByServiceName() throws Exception {
+		JsonRpcServiceRegistry registry = new JsonRpcServiceRegistry();
+		registry.register("en", (Greeter) name -> "hi " + name, Greeter.class);
+		registry.register("fr", (Greeter) name -> "salut " + name, Greeter.class);
+		EmbeddedChannel channel = EmbeddedJsonRpc.server(new JsonRpcServerHandler(MAPPER, registry));
+
+		receive(channel, call(1, "en.hi", "[\"a\"]"), call(2, "fr.hi", "[\"b\"]"), call(3, "de.hi", "[\"c\"]"));
+		assertEquals("hi a", sent(channel).get("result").textValue());
+		assertEquals("salut b", sent(channel).get("result").textValue());
+		assertEquals(JsonRpcException.METHOD_NOT_FOUND, sentErrorCode(channel));
+
+		registry.unregister("fr");
+		receive(channel, call(4, "fr.hi", "[\"b\"]"));
+		assertEquals(JsonRpcException.METHOD_NOT_FOUND, sentErrorCode(channel));
+	}
+
+	@Test
+	public void testConflictingNamesAreRejected() throws Exception {
+		JsonRpcServiceRegistry registry = new JsonRpcServiceRegistry();
+		Greeter greeter = name -> "hi " + name;
+		registry.register("greeter", greeter, Greeter.class);
+		try {
+			registry.register("", (Root) name -> "root " + name, Root.class);
+			fail("greeter.hi is in both services");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals(new LinkedHashSet<>(Arrays.asList("greeter")), registry.getServiceNames());
+		assertSame(greeter, registry.lookup("greeter.hi").handler);
+
+		// replacing a service by itself is no conflict
+		registry.register("greeter", (Greeter) name -> "hello " + name, Greeter.class);
+		EmbeddedChannel channel = EmbeddedJsonRpc.server(new JsonRpcServerHandler(MAPPER, registry));
+		receive(channel, call(1, "greeter.hi", "[\"a\"]"));
+		assertEquals("hello a", sent(channel).get("result").textValue());
+	}
+}
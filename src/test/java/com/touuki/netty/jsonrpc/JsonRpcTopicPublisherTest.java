@@ -0,0 +1,102 @@
+package com.touuki.netty.jsonrpc;
+
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.MAPPER;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.call;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.receive;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.sent;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.sentErrorCode;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class JsonRpcTopicPublisherTest {
+	private JsonRpcTopicPublisher publisher;
+	private EmbeddedChannel channel;
+
+	public interface Service {
+		void noop();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		JsonRpcServerHandler handler = new JsonRpcServerHandler(MAPPER, (Service) () -> {
+		}, Service.class);
+		publisher = new JsonRpcTopicPublisher(MAPPER);
+		handler.setTopicPublisher(publisher);
+		channel = EmbeddedJsonRpc.server(handler);
+		receive(channel, call(1, "rpc.subscribe", "[\"price\",\"news\"]"));
+		assertTrue(sent(channel).get("result").isNull());
+	}
+
+	private JsonNode sentValue() throws Exception {
+		JsonNode notification = sent(channel);
+		assertNull(notification.get("id"));
+		return notification.get("params").get(0);
+	}
+
+	private void setWritable(boolean writable) {
+		channel.unsafe().outboundBuffer().setUserDefinedWritability(1, writable);
+		channel.runPendingTasks();
+	}
+
+	@Test
+	public void testSubscribersReceiveThePublishedValues() throws Exception {
+		assertEquals(1, publisher.getSubscriberCount("price"));
+		assertEquals(1, publisher.publish("price", 10));
+		assertEquals(0, publisher.publish("weather", "sunny"));
+		JsonNode notification = sent(channel);
+		assertEquals("price", notification.get("method").textValue());
+		assertEquals(10, notification.get("params").get(0).intValue());
+		assertNull(sent(channel));
+	}
+
+	@Test
+	public void testValuesAreConflatedWhileNotWritable() throws Exception {
+		setWritable(false);
+		publisher.publish("price", "a", 1);
+		publisher.publish("price", "b", 1);
+		publisher.publish("price", "a", 2);
+		publisher.publish("news", "first");
+		publisher.publish("news", "second");
+		assertNull(sent(channel));
+
+		setWritable(true);
+		assertEquals(1, sentValue().intValue());
+		assertEquals(2, sentValue().intValue());
+		assertEquals("second", sentValue().textValue());
+		assertNull(sent(channel));
+	}
+
+	@Test
+	public void testUnsubscribedTopicsAreDiscarded() throws Exception {
+		setWritable(false);
+		publisher.publish("price", 1);
+		publisher.publish("news", "dropped");
+		receive(channel, call(2, "rpc.unsubscribe", "[\"news\"]"));
+		setWritable(true);
+		assertTrue(sent(channel).get("result").isNull());
+		assertEquals(1, sentValue().intValue());
+		assertNull(sent(channel));
+		assertEquals(0, publisher.getSubscriberCount("news"));
+	}
+
+	@Test
+	public void testClosedChannelIsUnsubscribed() throws Exception {
+		channel.close();
+		assertEquals(0, publisher.getSubscriberCount("price"));
+		assertEquals(0, publisher.publish("price", 1));
+	}
+
+	@Test
+	public void testInvalidTopicsAreRejected() throws Exception {
+		receive(channel, call(2, "rpc.subscribe", "[1]"));
+		assertEquals(JsonRpcException.METHOD_PARAMS_INVALID, sentErrorCode(channel));
+	}
+}
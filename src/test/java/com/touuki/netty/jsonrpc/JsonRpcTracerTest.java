@@ -0,0 +1,66 @@
+package com.touuki.netty.jsonrpc;
+
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.MAPPER;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.receive;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.sent;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class JsonRpcTracerTest {
+
+	public interface Service {
+		int add(int a, int b);
+	}
+
+	public static class ServiceImpl implements Service {
+		@Override
+		public int add(int a, int b) {
+			return a + b;
+		}
+	}
+
+	private static final String TRACED_CALL = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"add\",\"params\":[1,2],"
+			+ "\"traceId\":\"abc\"}";
+
+	private static List<JsonRpcTrace> traceCalls(JsonRpcTracer.Builder builder, String... frames) throws Exception {
+		List<JsonRpcTrace> traces = new ArrayList<>();
+		JsonRpcServerHandler handler = new JsonRpcServerHandler(MAPPER, new ServiceImpl(), Service.class);
+		handler.setTracer(builder.listener(traces::add).build());
+		EmbeddedChannel channel = EmbeddedJsonRpc.server(handler);
+		receive(channel, frames);
+		for (int i = 0; i < frames.length; i++) {
+			assertEquals(3, sent(channel).get("result").intValue());
+		}
+		return traces;
+	}
+
+	@Test
+	public void testPropagatedIdNotTracedUnlessSampled() throws Exception {
+		assertTrue(traceCalls(JsonRpcTracer.builder(), TRACED_CALL).isEmpty());
+	}
+
+	@Test
+	public void testPropagatedIdKeptWhenSampled() throws Exception {
+		List<JsonRpcTrace> traces = traceCalls(JsonRpcTracer.builder().samplingRate(1), TRACED_CALL,
+				EmbeddedJsonRpc.call(2, "add", "[1,2]"));
+		assertEquals(2, traces.size());
+		assertEquals("abc", traces.get(0).getTraceId());
+		assertNotEquals("abc", traces.get(1).getTraceId());
+	}
+
+	@Test
+	public void testTrustedPropagatedIdTraced() throws Exception {
+		List<JsonRpcTrace> traces = traceCalls(JsonRpcTracer.builder().trustPropagatedIds(true), TRACED_CALL,
+				EmbeddedJsonRpc.call(2, "add", "[1,2]"));
+		assertEquals(1, traces.size());
+		assertEquals("abc", traces.get(0).getTraceId());
+	}
+}
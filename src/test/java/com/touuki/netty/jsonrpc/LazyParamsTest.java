@@ -0,0 +1,50 @@
+package com.touuki.netty.jsonrpc;
+
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.MAPPER;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.call;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.receive;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.sent;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class LazyParamsTest {
+
+	public interface Service {
+		int sum(Iterator<Integer> values);
+
+		String join(Stream<String> values);
+	}
+
+	public static class ServiceImpl implements Service {
+		@Override
+		public int sum(Iterator<Integer> values) {
+			int sum = 0;
+			while (values.hasNext()) {
+				sum += values.next();
+			}
+			return sum;
+		}
+
+		@Override
+		public String join(Stream<String> values) {
+			return values.map(Objects::toString).collect(Collectors.joining(","));
+		}
+	}
+
+	@Test
+	public void testIteratorAndStreamParams() throws Exception {
+		EmbeddedChannel channel = EmbeddedJsonRpc.server(new JsonRpcServerHandler(MAPPER, new ServiceImpl(),
+				Service.class));
+		receive(channel, call(1, "sum", "[[1,2,3]]"), call(2, "join", "[[\"a\",null,\"b\"]]"));
+		assertEquals(6, sent(channel).get("result").intValue());
+		assertEquals("a,null,b", sent(channel).get("result").textValue());
+	}
+}
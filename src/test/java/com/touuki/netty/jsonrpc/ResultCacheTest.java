@@ -0,0 +1,136 @@
+package com.touuki.netty.jsonrpc;
+
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.MAPPER;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.call;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.receive;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.sent;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.sentErrorCode;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class ResultCacheTest {
+
+	public interface Service {
+		@JsonRpcCacheable
+		int count(Map<String, Object> query);
+
+		@JsonRpcCacheable
+		int fail();
+	}
+
+	public static class ServiceImpl implements Service {
+		final AtomicInteger invocations = new AtomicInteger();
+
+		@Override
+		public int count(Map<String, Object> query) {
+			return invocations.incrementAndGet();
+		}
+
+		@Override
+		public int fail() {
+			invocations.incrementAndGet();
+			throw new IllegalStateException("failed");
+		}
+	}
+
+	@Test
+	public void testHitsAreAnsweredWithoutInvocation() throws Exception {
+		ServiceImpl service = new ServiceImpl();
+		JsonRpcServerHandler handler = new JsonRpcServerHandler(MAPPER, service, Service.class);
+		InMemoryJsonRpcMetrics metrics = new InMemoryJsonRpcMetrics();
+		handler.setMetrics(metrics);
+		EmbeddedChannel channel = EmbeddedJsonRpc.server(handler);
+
+		receive(channel, call(1, "count", "[{\"a\":1,\"b\":[2,{\"c\":3,\"d\":4}]}]"),
+				call(2, "count", "[{\"b\":[2,{\"d\":4,\"c\":3}],\"a\":1}]"), call(3, "count", "[{\"a\":2}]"));
+		assertEquals(1, sent(channel).get("result").intValue());
+		assertEquals(1, sent(channel).get("result").intValue());
+		assertEquals(2, sent(channel).get("result").intValue());
+		assertEquals(2, service.invocations.get());
+		// the hits are calls too
+		assertEquals(3, metrics.getServerMethods().get("count").getCalls());
+		assertEquals(0, metrics.getServerInFlight());
+	}
+
+	@Test
+	public void testHitsAreRateLimited() throws Exception {
+		JsonRpcServerHandler handler = new JsonRpcServerHandler(MAPPER, new ServiceImpl(), Service.class);
+		handler.setAdmissionControl(JsonRpcAdmissionControl.builder().channelRateLimit(0.001, 1).build());
+		EmbeddedChannel channel = EmbeddedJsonRpc.server(handler);
+
+		receive(channel, call(1, "count", "[{}]"), call(2, "count", "[{}]"));
+		assertEquals(1, sent(channel).get("result").intValue());
+		assertEquals(JsonRpcException.TOO_MANY_REQUESTS, sentErrorCode(channel));
+	}
+
+	@Test
+	public void testErrorsAreNotCached() throws Exception {
+		ServiceImpl service = new ServiceImpl();
+		JsonRpcServerHandler handler = new JsonRpcServerHandler(MAPPER, service, Service.class);
+		EmbeddedChannel channel = EmbeddedJsonRpc.server(handler);
+
+		receive(channel, call(1, "fail", "[]"), call(2, "fail", "[]"));
+		assertEquals(JsonRpcException.INVOCATION_ERROR, sentErrorCode(channel));
+		assertEquals(JsonRpcException.INVOCATION_ERROR, sentErrorCode(channel));
+		assertEquals(2, service.invocations.get());
+	}
+
+	@Test
+	public void testConcurrentCallsShareOneInvocation() throws Exception {
+		ServiceImpl service = new ServiceImpl();
+		JsonRpcServerHandler handler = new JsonRpcServerHandler(MAPPER, service, Service.class);
+		List<Runnable> queued = new ArrayList<>();
+		handler.setExecutor(queued::add);
+		EmbeddedChannel first = EmbeddedJsonRpc.server(handler);
+		EmbeddedChannel second = EmbeddedJsonRpc.server(handler);
+
+		receive(first, call(1, "count", "[{\"a\":1}]"));
+		receive(second, call(7, "count", "[{\"a\":1}]"), call(8, "count", "[{\"a\":1}]"));
+		assertEquals(1, queued.size());
+		assertNull(sent(second));
+
+		queued.remove(0).run();
+		assertEquals(1, sent(first).get("result").intValue());
+		// the followers are answered in any order
+		assertEquals(15, sent(second).get("id").intValue() + sent(second).get("id").intValue());
+		assertEquals(1, service.invocations.get());
+	}
+
+	@Test
+	public void testKeysIgnoreTheFieldOrder() throws Exception {
+		assertEquals(ResultCache.keyOf(MAPPER.readTree("[{\"a\":1,\"b\":{\"c\":[1,{\"d\":1,\"e\":2}]}}]")),
+				ResultCache.keyOf(MAPPER.readTree("[{\"b\":{\"c\":[1,{\"e\":2,\"d\":1}]},\"a\":1}]")));
+		assertTrue(!ResultCache.keyOf(MAPPER.readTree("[1,2]")).equals(ResultCache.keyOf(MAPPER.readTree("[2,1]"))));
+		assertTrue(!ResultCache.keyOf(MAPPER.readTree("[\"1\"]")).equals(ResultCache.keyOf(MAPPER.readTree("[1]"))));
+	}
+
+	@Test
+	public void testEntriesAreBoundedAndExpire() throws Exception {
+		ResultCache<String> cache = new ResultCache<>(16, TimeUnit.MILLISECONDS.toNanos(50));
+		for (int i = 0; i < 100; i++) {
+			cache.put("key" + i, "value" + i);
+		}
+		int present = 0;
+		for (int i = 0; i < 100; i++) {
+			if (cache.get("key" + i) != null) {
+				present++;
+			}
+		}
+		assertTrue(present > 0 && present <= 16);
+		assertEquals("value99", cache.get("key99"));
+
+		Thread.sleep(60);
+		assertNull(cache.get("key99"));
+	}
+}
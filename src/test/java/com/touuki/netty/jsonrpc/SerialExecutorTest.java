@@ -0,0 +1,90 @@
+package com.touuki.netty.jsonrpc;
+
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.MAPPER;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.call;
+import static com.touuki.netty.jsonrpc.EmbeddedJsonRpc.receive;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class SerialExecutorTest {
+
+	public interface Service {
+		@JsonRpcMethod(ordered = true)
+		void apply(String update);
+
+		void read(String name);
+	}
+
+	public static class ServiceImpl implements Service {
+		final List<String> invoked = new ArrayList<>();
+
+		@Override
+		public void apply(String update) {
+			invoked.add(update);
+		}
+
+		@Override
+		public void read(String name) {
+			invoked.add(name);
+		}
+	}
+
+	@Test
+	public void testOrderedCallsRunOneByOnePerChannel() throws Exception {
+		ServiceImpl service = new ServiceImpl();
+		JsonRpcServerHandler handler = new JsonRpcServerHandler(MAPPER, service, Service.class);
+		List<Runnable> queued = new ArrayList<>();
+		handler.setExecutor(queued::add);
+		EmbeddedChannel first = EmbeddedJsonRpc.server(handler);
+		EmbeddedChannel second = EmbeddedJsonRpc.server(handler);
+
+		receive(first, call(1, "apply", "[\"a1\"]"), call(2, "apply", "[\"a2\"]"), call(3, "read", "[\"r\"]"),
+				call(4, "apply", "[\"a3\"]"));
+		receive(second, call(1, "apply", "[\"b1\"]"));
+		// one task of each channel is submitted at a time, the unordered call isn't held
+		assertEquals(3, queued.size());
+
+		queued.remove(queued.size() - 1).run();
+		queued.remove(queued.size() - 1).run();
+		assertEquals(Arrays.asList("b1", "r"), service.invoked);
+		while (!queued.isEmpty()) {
+			queued.remove(0).run();
+			assertEquals(queued.isEmpty() ? 0 : 1, queued.size());
+		}
+		assertEquals(Arrays.asList("b1", "r", "a1", "a2", "a3"), service.invoked);
+	}
+
+	@Test
+	public void testOrderCanBeConfiguredByName() throws Exception {
+		ServiceImpl service = new ServiceImpl();
+		JsonRpcServerHandler handler = new JsonRpcServerHandler(MAPPER, service, Service.class);
+		List<Runnable> queued = new ArrayList<>();
+		handler.setExecutor(queued::add);
+		handler.setOrdered("apply", false);
+		handler.setOrdered("read", true);
+		EmbeddedChannel channel = EmbeddedJsonRpc.server(handler);
+
+		receive(channel, call(1, "read", "[\"r1\"]"), call(2, "read", "[\"r2\"]"), call(3, "apply", "[\"a\"]"));
+		assertEquals(2, queued.size());
+	}
+
+	@Test
+	public void testInterruptOfATaskDoesNotLeakToTheNext() {
+		List<Runnable> queued = new ArrayList<>();
+		SerialExecutor executor = new SerialExecutor(queued::add);
+		boolean[] interrupted = new boolean[1];
+		executor.execute(() -> Thread.currentThread().interrupt(), JsonRpcPriority.NORMAL);
+		executor.execute(() -> interrupted[0] = Thread.currentThread().isInterrupted(), JsonRpcPriority.NORMAL);
+		queued.remove(0).run();
+		queued.remove(0).run();
+		assertFalse(interrupted[0]);
+	}
+}